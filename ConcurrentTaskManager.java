@@ -0,0 +1,601 @@
+/* logic-layer */
+package TaskManager;
+
+import Task.Task;
+
+import java.time.LocalDateTime;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+//TaskManager that can be shared between threads (GUI, importers, schedulers, api handlers)
+//writes go through one lock, the list, the indexes and the journal all change together so there is nothing to stripe
+//reads of the whole list are lock-free: they get an immutable TaskView, after a write the next reader takes the lock
+//once to pick up the new version, which only copied the chunks the write touched
+//a snapshot holds its own copies of the tasks, writers never touch them; change tasks only through the manager
+//the reads that take the lock hand out copies made under it as well, a live task could change halfway through
+//being read (an update sets the description and the deadline one after the other)
+//events for the event bus are queued under the lock and published after it is released, so a consumer that is
+//a whole ring behind holds up the next publisher, never the writers or a consumer that reads the manager
+public class ConcurrentTaskManager extends TaskManager {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile TaskView snapshot; //null once a write made it stale
+    private final Queue<QueuedEvent> outbox = new ConcurrentLinkedQueue<>(); //in the order the writes made them
+    private final ReentrantLock publishLock = new ReentrantLock(); //the bus takes one producer at a time
+
+    private static final class QueuedEvent {
+        final TaskEventBus bus;
+        final TaskEvent.Type type;
+        final Task task; //a copy, the task may change again before the event is published
+
+        QueuedEvent(TaskEventBus bus, TaskEvent.Type type, Task task) {
+            this.bus = bus;
+            this.type = type;
+            this.task = task;
+        }
+    }
+
+    public ConcurrentTaskManager() {
+        super();
+    }
+
+    public ConcurrentTaskManager(String fileName, int groupCommitSize, int compactionThreshold) {
+        super(fileName, groupCommitSize, compactionThreshold);
+    }
+
+    public ConcurrentTaskManager(String fileName, int groupCommitSize, int compactionThreshold, boolean columnar) {
+        super(fileName, groupCommitSize, compactionThreshold, columnar);
+    }
+
+    public ConcurrentTaskManager(ShardedTaskStore store) {
+        super(store);
+    }
+
+    //EVENTS
+    @Override
+    void emit(TaskEventBus bus, TaskEvent.Type type, Task task) {
+        outbox.add(new QueuedEvent(bus, type, (task != null) ? TaskCodec.copy(task) : null));
+    }
+
+    //every method releases the lock through here, the last release publishes what its writes queued
+    private void unlock() {
+        lock.unlock();
+        if (!outbox.isEmpty() && !lock.isHeldByCurrentThread()) publishQueued();
+    }
+
+    //one thread publishes at a time; a thread that finds another one at it leaves its events to that one,
+    //which looks at the queue again after it let go
+    private void publishQueued() {
+        while (!outbox.isEmpty() && publishLock.tryLock()) {
+            try {
+                for (QueuedEvent event; (event = outbox.poll()) != null; ) event.bus.publish(event.type, event.task);
+            } finally {
+                publishLock.unlock();
+            }
+        }
+    }
+
+    //LOCK-FREE READS
+    //immutable list of every task, no lock and no copy as long as nothing changed
+    public List<Task> snapshot() {
+        return view().asList();
+    }
+
+    @Override
+    public TaskView view() {
+        TaskView current = snapshot;
+        if (current != null) return current;
+
+        lock.lock();
+        try {
+            if (snapshot == null) snapshot = super.view(); //one update for all waiting readers
+            return snapshot;
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public ArrayList<Task> getAllTasks() {
+        return new ArrayList<>(snapshot());
+    }
+
+    //the live view is not safe to read from other threads, hand out the snapshot instead
+    @Override
+    public List<Task> getTasksView() {
+        return snapshot();
+    }
+
+    @Override
+    protected Iterable<Task> exportSource() {
+        return snapshot(); //exports run without holding up writers
+    }
+
+    //READS UNDER THE LOCK
+    //building a task from the snapshot file writes into the list, so even single lookups take the lock
+    //search goes through here too, one id at a time
+    @Override
+    public Task getTask(long id) {
+        lock.lock();
+        try {
+            Task task = super.getTask(id);
+            return (task != null) ? TaskCodec.copy(task) : null;
+        } finally {
+            unlock();
+        }
+    }
+
+    private static List<Task> copies(List<Task> tasks) {
+        List<Task> copies = new ArrayList<>(tasks.size());
+        for (Task task : tasks) copies.add(TaskCodec.copy(task));
+        return Collections.unmodifiableList(copies);
+    }
+
+    //the live index views are copied since they would change under the caller
+    @Override
+    public List<Task> getCompletedTasks() {
+        return getIndexedTasks("completed");
+    }
+
+    @Override
+    public List<Task> getIncompleteTasks() {
+        return getIndexedTasks("pending");
+    }
+
+    @Override
+    public List<Task> getIndexedTasks(String name) {
+        lock.lock();
+        try {
+            return copies(super.getIndexedTasks(name));
+        } finally {
+            unlock();
+        }
+    }
+
+    //only the page is copied, the http server's completed=true|false lists go through here
+    @Override
+    public List<Task> getIndexedTasks(String name, int offset, int limit) {
+        lock.lock();
+        try {
+            return copies(super.getIndexedTasks(name, offset, limit));
+        } finally {
+            unlock();
+        }
+    }
+
+    //not copied like the index views, a million sorted rows would be a million-element copy per refresh;
+    //every row is read and copied under the lock instead, a row a concurrent delete just took away throws
+    //IndexOutOfBoundsException instead of standing in for another task, the caller refreshes and asks again
+    @Override
+    public List<Task> getSortedView(SortedTaskIndex.Key key, boolean ascending) {
+        List<Task> sorted;
+        lock.lock();
+        try {
+            sorted = super.getSortedView(key, ascending);
+        } finally {
+            unlock();
+        }
+        return new AbstractList<Task>() {
+            @Override
+            public Task get(int rank) {
+                lock.lock();
+                try {
+                    if (rank < 0 || rank >= sorted.size()) throw new IndexOutOfBoundsException("Rank " + rank + " of " + sorted.size());
+                    return TaskCodec.copy(sorted.get(rank));
+                } finally {
+                    unlock();
+                }
+            }
+
+            @Override
+            public int size() {
+                lock.lock();
+                try {
+                    return sorted.size();
+                } finally {
+                    unlock();
+                }
+            }
+        };
+    }
+
+    @Override
+    public int getSortedRank(SortedTaskIndex.Key key, long id) {
+        lock.lock();
+        try {
+            return super.getSortedRank(key, id);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public List<Task> getTasksDueBefore(LocalDateTime time) {
+        lock.lock();
+        try {
+            return super.getTasksDueBefore(time); //copies, every task is looked up through getTask
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public List<Task> getTasksDueBetween(LocalDateTime from, LocalDateTime to) {
+        lock.lock();
+        try {
+            return super.getTasksDueBetween(from, to); //copies, see getTasksDueBefore
+        } finally {
+            unlock();
+        }
+    }
+
+    //search keeps a little state for the next keystroke, so it is not a read
+    @Override
+    public List<Long> searchIds(String query, int limit) {
+        lock.lock();
+        try {
+            return super.searchIds(query, limit);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public DeadlineScheduler getDeadlineScheduler() {
+        lock.lock();
+        try {
+            return super.getDeadlineScheduler();
+        } finally {
+            unlock();
+        }
+    }
+
+    //the first call installs the index; the questions after that lock the statistics, not the manager
+    @Override
+    public TaskStatistics getStatistics() {
+        lock.lock();
+        try {
+            return super.getStatistics();
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public TaskEventBus getEventBus() {
+        lock.lock();
+        try {
+            return super.getEventBus(); //events are published one thread at a time, so the bus keeps its single producer
+        } finally {
+            unlock();
+        }
+    }
+
+    //WRITES
+    @Override
+    public void addTask(Task task) {
+        lock.lock();
+        try {
+            super.addTask(task);
+            snapshot = null;
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public void addTasks(Collection<Task> newTasks) {
+        lock.lock();
+        try {
+            super.addTasks(newTasks);
+            snapshot = null;
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteTaskById(long id) {
+        lock.lock();
+        try {
+            snapshot = null;
+            return super.deleteTaskById(id);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public boolean setCompletedById(long id, boolean completed) {
+        lock.lock();
+        try {
+            snapshot = null;
+            return super.setCompletedById(id, completed);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public boolean markCompleteById(long id) {
+        return setCompletedById(id, true);
+    }
+
+    @Override
+    public boolean updateTaskById(long id, String description, LocalDateTime deadline) {
+        lock.lock();
+        try {
+            snapshot = null;
+            return super.updateTaskById(id, description, deadline);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public void deleteTask(int index) {
+        lock.lock();
+        try {
+            super.deleteTask(index);
+            snapshot = null;
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public void markComplete(int index) {
+        lock.lock();
+        try {
+            super.markComplete(index);
+            snapshot = null;
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public void updateTask(int index, String description, LocalDateTime deadline) {
+        lock.lock();
+        try {
+            super.updateTask(index, description, deadline);
+            snapshot = null;
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public PredicateIndex registerIndex(String name, Predicate<Task> predicate) {
+        lock.lock();
+        try {
+            return super.registerIndex(name, predicate);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public PredicateIndex registerTimedIndex(String name, Predicate<Task> predicate) {
+        lock.lock();
+        try {
+            return super.registerTimedIndex(name, predicate);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public void registerIndex(String name, PredicateIndex index) {
+        lock.lock();
+        try {
+            super.registerIndex(name, index);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public void registerIndex(TaskIndex index) {
+        lock.lock();
+        try {
+            super.registerIndex(index);
+        } finally {
+            unlock();
+        }
+    }
+
+    //BATCHES
+    //readers keep the old snapshot until the whole batch is in
+    @Override
+    int commitBatch(TaskBatch batch) {
+        lock.lock();
+        try {
+            snapshot = null;
+            return super.commitBatch(batch);
+        } finally {
+            unlock();
+        }
+    }
+
+    //HISTORY
+    @Override
+    public void enableHistory(int maxEntries, int maxBytes) {
+        lock.lock();
+        try {
+            super.enableHistory(maxEntries, maxBytes);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public boolean canUndo() {
+        lock.lock();
+        try {
+            return super.canUndo();
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public boolean canRedo() {
+        lock.lock();
+        try {
+            return super.canRedo();
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public boolean undo() {
+        lock.lock();
+        try {
+            snapshot = null;
+            return super.undo();
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public boolean redo() {
+        lock.lock();
+        try {
+            snapshot = null;
+            return super.redo();
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public Task getTaskAt(long id, LocalDateTime time) {
+        lock.lock();
+        try {
+            return super.getTaskAt(id, time);
+        } finally {
+            unlock();
+        }
+    }
+
+    //PERSISTENCE
+    @Override
+    public void saveToFile() {
+        lock.lock();
+        try {
+            super.saveToFile();
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public void loadFromFile() {
+        lock.lock();
+        try {
+            super.loadFromFile();
+            snapshot = null;
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public boolean loadShard(String name) {
+        lock.lock();
+        try {
+            boolean loaded = super.loadShard(name);
+            snapshot = null;
+            return loaded;
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public int loadAllShards() {
+        lock.lock();
+        try {
+            return super.loadAllShards(); //one lock for all, loadShard re-enters it
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public boolean evictShard(String name) {
+        lock.lock();
+        try {
+            boolean evicted = super.evictShard(name);
+            snapshot = null;
+            return evicted;
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public int evictIdleShards(long idleMillis) {
+        lock.lock();
+        try {
+            return super.evictIdleShards(idleMillis);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public void enableArchive() {
+        lock.lock();
+        try {
+            super.enableArchive();
+        } finally {
+            unlock();
+        }
+    }
+
+    //the archive itself is synchronized, queries on it need no lock here
+    @Override
+    public int archiveCompleted(int days) {
+        lock.lock();
+        try {
+            int archived = super.archiveCompleted(days);
+            snapshot = null;
+            return archived;
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public List<String> getShardNames() {
+        lock.lock();
+        try {
+            return super.getShardNames();
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            super.close();
+        } finally {
+            unlock();
+        }
+    }
+
+    //importFromCSV is not overridden: parsing runs without the lock and the bulk insert goes through addTasks
+}
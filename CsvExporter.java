@@ -0,0 +1,149 @@
+/* data-layer */
+package TaskManager;
+
+import Task.DateFormatCache;
+import Task.Task;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.time.LocalDateTime;
+import java.util.function.Predicate;
+
+//csv export that writes rows straight into one reusable byte buffer,
+//same format as Task.toCSV but without String.format or a formatter per row
+//the sink can be a FileChannel or any OutputStream (gzip included), the caller opens and closes it
+public class CsvExporter {
+
+    public static final String HEADER = "Description,Deadline,Completed,Created,CompletionDate";
+
+    public static final Predicate<Task> ALL = task -> true;
+    public static final Predicate<Task> COMPLETED = Task::isCompleted;
+    public static final Predicate<Task> PENDING = task -> !task.isCompleted();
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private WritableByteChannel sink;
+
+    //timestamp cache, rows written close together usually share the same minute,
+    //other minutes come from the shared cache so dates seen before (in the table, an earlier export) are not formatted again
+    private final DateFormatCache dates;
+    private final byte[] minutePrefix = new byte[16]; //dd-MM-yyyy HH:mm
+    private long cachedMinute = Long.MIN_VALUE;
+
+    public CsvExporter() {
+        this(DateFormatCache.SHARED);
+    }
+
+    public CsvExporter(DateFormatCache dates) {
+        this.dates = dates;
+    }
+
+    public int export(Iterable<Task> tasks, Predicate<Task> filter, OutputStream out) throws IOException {
+        return export(tasks, filter, Channels.newChannel(out));
+    }
+
+    //writes the header and every task that passes the filter, returns how many rows were written
+    public int export(Iterable<Task> tasks, Predicate<Task> filter, WritableByteChannel sink) throws IOException {
+        this.sink = sink;
+        buffer.clear();
+        int rows = 0;
+        try {
+            writeAscii(HEADER);
+            put('\n');
+            for (Task task : tasks) {
+                if (!filter.test(task)) continue;
+                writeRow(task);
+                rows++;
+            }
+            drain();
+        } finally {
+            this.sink = null;
+        }
+        return rows;
+    }
+
+    private void writeRow(Task task) throws IOException {
+        put('"');
+        writeEscaped(task.getDescription()); //doubling quotes so importers do not break on them
+        put('"');
+        put(',');
+        if (task.getDeadline() != null) writeDate(task.getDeadline());
+        else writeAscii("No Deadline");
+        put(',');
+        writeAscii(task.isCompleted() ? "Yes" : "No");
+        put(',');
+        writeDate(task.getCreationDate());
+        put(',');
+        if (task.getCompletionDate() != null) writeDate(task.getCompletionDate());
+        else put('-');
+        put('\n');
+    }
+
+    //dd-MM-yyyy HH:mm:ss, the minute part is reused while it does not change
+    private void writeDate(LocalDateTime date) throws IOException {
+        int year = date.getYear();
+        int month = date.getMonthValue();
+        int day = date.getDayOfMonth();
+        int hour = date.getHour();
+        int minute = date.getMinute();
+        long key = ((((long) year * 13 + month) * 32 + day) * 24 + hour) * 60 + minute;
+        if (key != cachedMinute) {
+            String prefix = dates.formatMinute(date, Task.CSV_DATE_PATTERN);
+            if (prefix.length() != minutePrefix.length) { //years past 9999 get a sign and more digits
+                writeAscii(dates.format(date, Task.CSV_DATE_PATTERN));
+                return;
+            }
+            for (int i = 0; i < minutePrefix.length; i++) minutePrefix[i] = (byte) prefix.charAt(i);
+            cachedMinute = key;
+        }
+        if (buffer.remaining() < 19) drain();
+        buffer.put(minutePrefix);
+        int second = date.getSecond();
+        buffer.put((byte) ':');
+        buffer.put((byte) ('0' + second / 10));
+        buffer.put((byte) ('0' + second % 10));
+    }
+
+    private void writeAscii(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) put(s.charAt(i));
+    }
+
+    //utf-8 encoding by hand so no byte[] is made per description
+    private void writeEscaped(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (c == '"') put('"');
+                put(c);
+            } else if (c < 0x800) {
+                put(0xC0 | (c >> 6));
+                put(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                put(0xF0 | (cp >> 18));
+                put(0x80 | ((cp >> 12) & 0x3F));
+                put(0x80 | ((cp >> 6) & 0x3F));
+                put(0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                put('?'); //broken surrogate pair
+            } else {
+                put(0xE0 | (c >> 12));
+                put(0x80 | ((c >> 6) & 0x3F));
+                put(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void put(int b) throws IOException {
+        if (!buffer.hasRemaining()) drain();
+        buffer.put((byte) b);
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) sink.write(buffer);
+        buffer.clear();
+    }
+}
@@ -0,0 +1,246 @@
+/* data-layer */
+package TaskManager;
+
+import Task.Task;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+//streaming csv import for the format written by Task.toCSV
+//one thread splits the input into records with a quote aware tokenizer,
+//the records are turned into tasks in chunks on a fork-join pool and handed over in one bulk insert
+public class CsvImporter {
+
+    static final String DATE_PATTERN = Task.CSV_DATE_PATTERN;
+    static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern(DATE_PATTERN); //made once, not per row
+    private static final int CHUNK_SIZE = 4096; //records per parallel chunk
+    private static final int MAX_REPORTED_REJECTS = 100;
+
+    private final ForkJoinPool pool;
+
+    public CsvImporter() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public CsvImporter(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    //reads every row, parses them in parallel and passes all good tasks to bulkInsert at once
+    public ImportReport importInto(Reader reader, Consumer<List<Task>> bulkInsert) throws IOException {
+        long start = System.nanoTime();
+        RecordReader records = new RecordReader(reader);
+        records.next(); //header
+
+        List<Future<Chunk>> chunks = new ArrayList<>();
+        List<String[]> batch = new ArrayList<>(CHUNK_SIZE);
+        int[] lines = new int[CHUNK_SIZE];
+        String[] record;
+        while ((record = records.next()) != null) {
+            lines[batch.size()] = records.getRecordLine();
+            batch.add(record);
+            if (batch.size() == CHUNK_SIZE) {
+                chunks.add(submit(batch, lines));
+                batch = new ArrayList<>(CHUNK_SIZE);
+                lines = new int[CHUNK_SIZE];
+            }
+        }
+        if (!batch.isEmpty()) {
+            //a file that fits in one chunk is not worth the thread hop
+            chunks.add(chunks.isEmpty() ? CompletableFuture.completedFuture(parseChunk(batch, lines)) : submit(batch, lines));
+        }
+
+        //chunks are joined in file order so the tasks keep the order of the file
+        List<Task> tasks = new ArrayList<>();
+        ImportReport report = new ImportReport();
+        for (Future<Chunk> future : chunks) {
+            Chunk chunk;
+            try {
+                chunk = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("CSV import interrupted");
+            } catch (ExecutionException e) {
+                throw new IOException("CSV import failed", e.getCause());
+            }
+            tasks.addAll(chunk.tasks);
+            report.rowsRead += chunk.rows;
+            report.rejected += chunk.rejects.size();
+            for (String reject : chunk.rejects) {
+                if (report.rejectedRows.size() < MAX_REPORTED_REJECTS) report.rejectedRows.add(reject);
+            }
+        }
+
+        bulkInsert.accept(tasks);
+        report.imported = tasks.size();
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    private Future<Chunk> submit(List<String[]> records, int[] lines) {
+        return pool.submit(() -> parseChunk(records, lines));
+    }
+
+    private static class Chunk {
+        final List<Task> tasks = new ArrayList<>();
+        final List<String> rejects = new ArrayList<>();
+        int rows;
+    }
+
+    private static Chunk parseChunk(List<String[]> records, int[] lines) {
+        Chunk chunk = new Chunk();
+        for (int i = 0; i < records.size(); i++) {
+            chunk.rows++;
+            try {
+                chunk.tasks.add(parseRecord(records.get(i)));
+            } catch (IllegalArgumentException | DateTimeException e) {
+                chunk.rejects.add("line " + lines[i] + ": " + e.getMessage());
+            }
+        }
+        return chunk;
+    }
+
+    //Description,Deadline,Completed,Created[,CompletionDate]
+    static Task parseRecord(String[] fields) {
+        if (fields.length < 4) throw new IllegalArgumentException("expected at least 4 columns, got " + fields.length);
+
+        String deadlineStr = fields[1].trim();
+        LocalDateTime deadline = deadlineStr.equals("No Deadline") ? null : parseDate(deadlineStr);
+        boolean completed = fields[2].trim().equalsIgnoreCase("Yes");
+        LocalDateTime created = parseDate(fields[3].trim());
+
+        Task task = new Task(fields[0], deadline, completed, created);
+        if (completed && fields.length > 4 && !fields[4].trim().equals("-")) {
+            task.restoreHistory(created, null, parseDate(fields[4].trim()));
+        }
+        return task;
+    }
+
+    //hand rolled parser for dd-MM-yyyy HH:mm:ss, anything of a different shape goes to the formatter
+    static LocalDateTime parseDate(String s) {
+        if (s.length() == 19 && s.charAt(2) == '-' && s.charAt(5) == '-' && s.charAt(10) == ' '
+                && s.charAt(13) == ':' && s.charAt(16) == ':') {
+            int day = digits(s, 0, 2);
+            int month = digits(s, 3, 5);
+            int year = digits(s, 6, 10);
+            int hour = digits(s, 11, 13);
+            int minute = digits(s, 14, 16);
+            int second = digits(s, 17, 19);
+            if ((day | month | year | hour | minute | second) >= 0) {
+                return LocalDateTime.of(year, month, day, hour, minute, second);
+            }
+        }
+        return LocalDateTime.parse(s, DATE_FORMAT);
+    }
+
+    private static int digits(String s, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9) return -1;
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    //RFC 4180 tokenizer working char by char over a buffered reader
+    //quoted fields may contain commas, doubled quotes and line breaks
+    static class RecordReader {
+        private final Reader reader;
+        private final char[] buffer = new char[1 << 16];
+        private int position;
+        private int limit;
+        private int line = 1;
+        private int recordLine;
+        private final StringBuilder field = new StringBuilder();
+        private final List<String> fields = new ArrayList<>();
+
+        RecordReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        //line number where the last returned record started
+        int getRecordLine() {
+            return recordLine;
+        }
+
+        //returns the next record or null at the end of the input
+        String[] next() throws IOException {
+            fields.clear();
+            field.setLength(0);
+            recordLine = line;
+            boolean inQuotes = false;
+            boolean sawAnything = false;
+
+            while (true) {
+                int c = read();
+                if (c == -1) {
+                    if (!sawAnything) return null;
+                    fields.add(field.toString());
+                    return fields.toArray(new String[0]);
+                }
+                sawAnything = true;
+
+                if (inQuotes) {
+                    if (c == '"') {
+                        if (peek() == '"') {
+                            read();
+                            field.append('"');
+                        } else {
+                            inQuotes = false;
+                        }
+                    } else {
+                        if (c == '\n') line++;
+                        field.append((char) c);
+                    }
+                } else if (c == '"') {
+                    inQuotes = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\r' || c == '\n') {
+                    if (c == '\r' && peek() == '\n') read();
+                    line++;
+                    if (fields.isEmpty() && field.length() == 0) { //blank line
+                        recordLine = line;
+                        sawAnything = false;
+                        continue;
+                    }
+                    fields.add(field.toString());
+                    return fields.toArray(new String[0]);
+                } else {
+                    field.append((char) c);
+                }
+            }
+        }
+
+        private int read() throws IOException {
+            if (position == limit && !fill()) return -1;
+            return buffer[position++];
+        }
+
+        private int peek() throws IOException {
+            if (position == limit && !fill()) return -1;
+            return buffer[position];
+        }
+
+        private boolean fill() throws IOException {
+            int n = reader.read(buffer, 0, buffer.length);
+            if (n <= 0) return false;
+            position = 0;
+            limit = n;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/* data-layer */
+package Task;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+//formatted dates by (minute, pattern), shared by the table, Task.toCSV and the csv exporter
+//a list has few distinct minutes compared to its dates (bulk adds, imports, one deadline for many tasks),
+//so most dates are an array lookup instead of a DateTimeFormatter run
+//only whole minutes are cached: a pattern ending in ":ss" caches everything before the seconds and appends them,
+//any other pattern with seconds or smaller fields is formatted every time
+//the table is two-way set associative with a used bit per entry, so the entry that was not read since the last
+//miss in its set goes first (second chance, close to lru), entries are immutable apart from that bit
+//and are swapped in without a lock: the edt and an export thread at worst both format the same minute once
+public final class DateFormatCache {
+
+    public static final DateFormatCache SHARED = new DateFormatCache(8192);
+
+    private static final int MAX_PATTERNS = 64; //the pattern number is the low bits of the key
+
+    //a pattern and how it is cached, made once per pattern string
+    private static final class Layout {
+        final String pattern;
+        final int id;
+        final DateTimeFormatter minutes; //null when nothing can be cached
+        final DateTimeFormatter full;
+        final boolean appendSeconds;
+
+        Layout(int id, String pattern) {
+            this.pattern = pattern;
+            this.id = id;
+            this.full = DateTimeFormatter.ofPattern(pattern);
+            this.appendSeconds = pattern.endsWith(":ss") && minuteOnly(pattern.substring(0, pattern.length() - 3));
+            if (appendSeconds) minutes = DateTimeFormatter.ofPattern(pattern.substring(0, pattern.length() - 3));
+            else minutes = minuteOnly(pattern) ? full : null;
+        }
+
+        //no letter for seconds, fractions or nanos outside quotes
+        private static boolean minuteOnly(String pattern) {
+            boolean quoted = false;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '\'') quoted = !quoted;
+                else if (!quoted && (c == 's' || c == 'S' || c == 'n' || c == 'N' || c == 'A')) return false;
+            }
+            return true;
+        }
+    }
+
+    private static final class Entry {
+        final long key;
+        final String text;
+        boolean used; //read since it went in or since the last miss in its set, racy on purpose
+
+        Entry(long key, String text) {
+            this.key = key;
+            this.text = text;
+        }
+    }
+
+    private final Map<String, Layout> layouts = new ConcurrentHashMap<>();
+    private Layout lastLayout; //callers use one or two patterns, this skips the map; immutable so a stale read is fine
+    private final Entry[] table;
+    private final int setMask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder uncached = new LongAdder();
+
+    //capacity is rounded up to a power of two
+    public DateFormatCache(int capacity) {
+        if (capacity < 2) throw new IllegalArgumentException("capacity below 2");
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        table = new Entry[size];
+        setMask = size / 2 - 1;
+    }
+
+    //null stays null, callers pick their own placeholder ("-", "No Deadline")
+    public String format(LocalDateTime date, String pattern) {
+        if (date == null) return null;
+        Layout layout = layout(pattern);
+        if (layout.minutes == null) {
+            uncached.increment();
+            return date.format(layout.full);
+        }
+        String prefix = minute(date, layout);
+        if (!layout.appendSeconds) return prefix;
+        int second = date.getSecond();
+        return prefix + ':' + (char) ('0' + second / 10) + (char) ('0' + second % 10);
+    }
+
+    //the part of the pattern before ":ss" for this minute, for callers that write the seconds themselves
+    public String formatMinute(LocalDateTime date, String pattern) {
+        Layout layout = layout(pattern);
+        if (!layout.appendSeconds) throw new IllegalArgumentException(pattern + " does not end in :ss");
+        return minute(date, layout);
+    }
+
+    private String minute(LocalDateTime date, Layout layout) {
+        long epochMinute = date.toLocalDate().toEpochDay() * 1440 + date.getHour() * 60 + date.getMinute();
+        long key = epochMinute * MAX_PATTERNS + layout.id;
+        int first = (int) (mix(key) & setMask) << 1;
+        Entry[] table = this.table;
+        Entry a = table[first];
+        if (a != null && a.key == key) return hit(a);
+        Entry b = table[first + 1];
+        if (b != null && b.key == key) return hit(b);
+
+        misses.increment();
+        Entry entry = new Entry(key, date.withSecond(0).withNano(0).format(layout.minutes));
+        //second chance: the way that was not read goes, the other one has to be read again to stay
+        if (a == null || (!a.used && b != null)) {
+            table[first] = entry;
+            if (b != null) b.used = false;
+        } else {
+            table[first + 1] = entry;
+            a.used = false;
+        }
+        return entry.text;
+    }
+
+    private String hit(Entry entry) {
+        hits.increment();
+        if (!entry.used) entry.used = true;
+        return entry.text;
+    }
+
+    private Layout layout(String pattern) {
+        Layout layout = lastLayout;
+        if (layout != null && layout.pattern.equals(pattern)) return layout;
+        layout = layouts.get(pattern);
+        if (layout == null) {
+            synchronized (layouts) {
+                if (layouts.size() >= MAX_PATTERNS && !layouts.containsKey(pattern)) {
+                    throw new IllegalStateException("More than " + MAX_PATTERNS + " date patterns");
+                }
+                layout = layouts.computeIfAbsent(pattern, p -> new Layout(layouts.size(), p));
+            }
+        }
+        lastLayout = layout;
+        return layout;
+    }
+
+    //neighbouring minutes should spread over the sets
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        return key ^ (key >>> 33);
+    }
+
+    //STATS
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    //patterns with seconds in the middle or fractions, never cached
+    public long getUncached() {
+        return uncached.sum();
+    }
+
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return (total == 0) ? 0 : h / (double) total;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Entry entry : table) {
+            if (entry != null) size++;
+        }
+        return size;
+    }
+
+    public int capacity() {
+        return table.length;
+    }
+
+    public void clear() {
+        Arrays.fill(table, null);
+        hits.reset();
+        misses.reset();
+        uncached.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("dates cached %d, hits %d, misses %d (%.1f%%)", size(), getHits(), getMisses(), getHitRate() * 100);
+    }
+}
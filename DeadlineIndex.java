@@ -0,0 +1,143 @@
+/* data-layer */
+package TaskManager;
+
+import Task.Task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+
+//open tasks ordered by deadline in a skip list keyed by (epoch millis, id), completed tasks are left out
+//range queries like "due before X" cost O(log n + k) instead of a scan of the whole list
+//the skip list is concurrent so the deadline scheduler thread can read it while the manager changes it
+public class DeadlineIndex implements TaskIndex {
+
+    //one entry of the index, ordered by deadline and then id so equal deadlines do not clash
+    static final class Key implements Comparable<Key> {
+        final long deadline;
+        final long id;
+
+        Key(long deadline, long id) {
+            this.deadline = deadline;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int c = Long.compare(deadline, other.deadline);
+            return (c != 0) ? c : Long.compare(id, other.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).deadline == deadline && ((Key) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(deadline) * 31 + Long.hashCode(id);
+        }
+    }
+
+    private final ConcurrentSkipListSet<Key> keys = new ConcurrentSkipListSet<>();
+    private Key[] bySlot = new Key[16]; //current key of every slot so a change can find the old entry
+    private int slotCount;
+    private Consumer<Key> onInsert; //the scheduler listens for new deadlines
+
+    @Override
+    public void taskAdded(int slot, Task task) {
+        ensureSlots(slot + 1);
+        slotCount = Math.max(slotCount, slot + 1);
+        put(slot, task.getId(), deadlineOf(task));
+    }
+
+    @Override
+    public void taskChanged(int slot, Task task) {
+        Key old = bySlot[slot];
+        long deadline = deadlineOf(task);
+        if ((old == null) ? deadline == TaskCodec.NO_DATE : old.deadline == deadline) return;
+        if (old != null) keys.remove(old);
+        bySlot[slot] = null;
+        put(slot, task.getId(), deadline);
+    }
+
+    @Override
+    public void taskRemoved(int slot) {
+        Key old = bySlot[slot];
+        if (old != null) keys.remove(old);
+        bySlot[slot] = null;
+    }
+
+    @Override
+    public void slotsSwept(BitSet removed) {
+        int kept = 0;
+        for (int i = 0; i < slotCount; i++) {
+            if (!removed.get(i)) bySlot[kept++] = bySlot[i];
+        }
+        Arrays.fill(bySlot, kept, slotCount, null);
+        slotCount = kept;
+    }
+
+    @Override
+    public void rebuild(TaskList tasks) {
+        keys.clear();
+        bySlot = new Key[Math.max(16, tasks.size())];
+        slotCount = tasks.size();
+        for (int i = 0; i < tasks.size(); i++) {
+            if (!tasks.isCompletedAt(i)) put(i, tasks.idAt(i), tasks.deadlineMillisAt(i));
+        }
+    }
+
+    //completed tasks have nothing left to be due for
+    private static long deadlineOf(Task task) {
+        return task.isCompleted() ? TaskCodec.NO_DATE : TaskCodec.toMillis(task.getDeadline());
+    }
+
+    private void put(int slot, long id, long deadline) {
+        if (deadline == TaskCodec.NO_DATE) return;
+        Key key = new Key(deadline, id);
+        bySlot[slot] = key;
+        keys.add(key);
+        if (onInsert != null) onInsert.accept(key);
+    }
+
+    private void ensureSlots(int capacity) {
+        if (capacity > bySlot.length) bySlot = Arrays.copyOf(bySlot, Math.max(capacity, bySlot.length * 2));
+    }
+
+    //QUERIES
+    //ids of the tasks due in [from, to), ordered by deadline
+    public List<Long> dueBetween(long fromMillis, long toMillis) {
+        List<Long> ids = new ArrayList<>();
+        if (fromMillis >= toMillis) return ids;
+        for (Key key : range(fromMillis, toMillis)) {
+            ids.add(key.id);
+        }
+        return ids;
+    }
+
+    public List<Long> dueBefore(long toMillis) {
+        return dueBetween(Long.MIN_VALUE + 1, toMillis); //MIN_VALUE is the no deadline marker
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    //FOR THE SCHEDULER
+    NavigableSet<Key> range(long fromMillis, long toMillis) {
+        return keys.subSet(new Key(fromMillis, Long.MIN_VALUE), true, new Key(toMillis, Long.MIN_VALUE), false);
+    }
+
+    boolean contains(Key key) {
+        return keys.contains(key);
+    }
+
+    void setOnInsert(Consumer<Key> onInsert) {
+        this.onInsert = onInsert;
+    }
+}
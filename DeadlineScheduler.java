@@ -0,0 +1,134 @@
+/* data-layer */
+package TaskManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+//fires an event when a task reaches its deadline, using one hashed timer wheel instead of one timer per task
+//the wheel only holds the next wheelSize ticks, deadlines further away stay in the deadline index
+//and are pulled into the wheel one tick at a time as the horizon moves forward
+//changed or removed deadlines are not taken out of the wheel, they are checked against the index when they fire
+//a tick's bucket fires once that tick is over, so no deadline fires before it is reached (at most a tick late)
+public class DeadlineScheduler {
+
+    public interface Listener {
+        //called on the scheduler thread
+        void deadlineReached(long taskId, LocalDateTime deadline);
+    }
+
+    public static final long DEFAULT_TICK_MILLIS = 1000;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private final DeadlineIndex index;
+    private final long tickMillis;
+    private final int wheelSize;
+    private final List<List<DeadlineIndex.Key>> wheel;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "todo-deadline-scheduler");
+        t.setDaemon(true);
+        return t;
+    });
+    private ScheduledFuture<?> ticking;
+    private long currentTick; //last tick that was processed, always one that is over, guarded by this
+
+    public DeadlineScheduler(DeadlineIndex index) {
+        this(index, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+    }
+
+    public DeadlineScheduler(DeadlineIndex index, long tickMillis, int wheelSize) {
+        if (tickMillis < 1 || wheelSize < 2) throw new IllegalArgumentException("tick must be >= 1 ms and the wheel >= 2 buckets");
+        this.index = index;
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.wheel = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) wheel.add(new ArrayList<>());
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    //deadlines that already passed before start are not fired, they are simply overdue
+    public synchronized void start() {
+        if (ticking != null) return;
+        long now = nowMillis();
+        currentTick = now / tickMillis - 1; //the tick now is in still has to fire the rest of its deadlines
+        for (int i = 0; i < wheelSize; i++) wheel.get(i).clear();
+        long horizon = (currentTick + wheelSize) * tickMillis;
+        for (DeadlineIndex.Key key : index.range(now, horizon)) bucket(key.deadline / tickMillis).add(key);
+
+        index.setOnInsert(this::offer);
+        ticking = timer.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (ticking == null) return;
+        ticking.cancel(false);
+        ticking = null;
+        index.setOnInsert(null);
+    }
+
+    //a deadline was added or changed, only the ones inside the horizon go into the wheel;
+    //one in the tick that was just processed (it passed while being set) fires with the next tick,
+    //older ones are simply overdue, like at start, so editing an overdue task does not fire it again
+    private synchronized void offer(DeadlineIndex.Key key) {
+        if (ticking == null) return;
+        long tick = key.deadline / tickMillis;
+        if (tick < currentTick || tick > currentTick + wheelSize - 1) return;
+        bucket(Math.max(tick, currentTick + 1)).add(key);
+    }
+
+    //catches up every tick that passed, a late timer just processes several buckets at once
+    private void advance() {
+        Set<DeadlineIndex.Key> due = new LinkedHashSet<>(); //a key can reach a bucket twice when it is added during a pull
+        synchronized (this) {
+            long nowTick = nowMillis() / tickMillis;
+            while (currentTick + 1 < nowTick) { //only ticks that are over
+                currentTick++;
+                List<DeadlineIndex.Key> bucket = bucket(currentTick);
+                due.addAll(bucket);
+                bucket.clear();
+
+                //the tick that just came into range gets pulled out of the index
+                long entering = currentTick + wheelSize - 1;
+                for (DeadlineIndex.Key key : index.range(entering * tickMillis, (entering + 1) * tickMillis)) {
+                    bucket(entering).add(key);
+                }
+            }
+        }
+        for (DeadlineIndex.Key key : due) {
+            if (!index.contains(key)) continue; //deadline changed, task completed or deleted
+            LocalDateTime deadline = TaskCodec.fromMillis(key.deadline);
+            for (Listener listener : listeners) {
+                try {
+                    listener.deadlineReached(key.id, deadline);
+                } catch (RuntimeException e) {
+                    e.printStackTrace(); //one bad listener must not stop the wheel
+                }
+            }
+        }
+    }
+
+    //deadlines are stored as local time counted like utc, so "now" has to be counted the same way
+    private static long nowMillis() {
+        return TaskCodec.toMillis(LocalDateTime.now());
+    }
+
+    private List<DeadlineIndex.Key> bucket(long tick) {
+        return wheel.get((int) Math.floorMod(tick, (long) wheelSize));
+    }
+}
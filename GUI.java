@@ -2,73 +2,75 @@
 package GUI;
 
 import Task.Task;
+import TaskManager.ConcurrentTaskManager;
+import TaskManager.CsvExporter;
+import TaskManager.ImportReport;
+import TaskManager.SortedTaskIndex;
 import TaskManager.TaskManager;
+import TaskManager.TaskStatistics;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 
 public class GUI extends JFrame {
 
     private TaskManager taskManager;
     private JTable taskTable;
-    private DefaultTableModel table; //allowing dynamic update to table data
+    private TaskTableModel table; //reads the rows from the task manager, updates itself on every change
+    private int sortColumn = -1; //column the table is sorted by, -1 for insertion order
+    private boolean sortAscending;
+
+    private static final int SEARCH_DELAY_MILLIS = 150;
+    private static final int SEARCH_LIMIT = 1000;
 
     public GUI() {
-        taskManager = new TaskManager();
+        taskManager = new ConcurrentTaskManager(); //file work runs on background threads
         taskManager.loadFromFile();
+        taskManager.enableHistory();
+        taskManager.enableArchive(); //deleted tasks are kept in the archive instead of being dropped
+
+        //timings show up in jconsole under ToDoList, -Dtodolist.metrics.dumpSeconds=60 also prints them to the console
+        taskManager.getMetrics().registerMBean("gui");
+        long dumpSeconds = Long.getLong("todolist.metrics.dumpSeconds", 0);
+        if (dumpSeconds > 0) taskManager.getMetrics().startDump(System.out, dumpSeconds);
 
         setUpFrame();
         setUpMenuBar();
         setUpTable();
+        setUpSearch();
         setUpButtons();
 
-        refreshTable(); //this loads the tasks into the table
+        //reminders come from the scheduler thread, the dialog has to go through the EDT
+        taskManager.getDeadlineScheduler().addListener((id, deadline) ->
+                SwingUtilities.invokeLater(() -> showDeadlineReached(id)));
 
         pack();
         setVisible(true);
     }
 
-    private DateTimeFormatter dateFormater = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
-
     private void setUpFrame() {
         setTitle("TODO List");
         setSize(800, 500);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
-    }
 
-    //clears table and fills it using the logic layer so it is always synced
-    private void refreshTable() {
-        table.setRowCount(0); //clears the ui
-
-        for (Task task : taskManager.getAllTasks()) {
-
-            table.addRow(createTableRow(task));
+        //flush whatever is still waiting in the journal before the window goes away
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosing(java.awt.event.WindowEvent e) {
+                taskManager.close();
             }
-        }
+        });
+    }
 
-//HELPER METHOD to makes a single task into a table row
-    private Object[] createTableRow(Task task) {
-        String deadlineStr = (task.getDeadline() != null)
-                ? task.getDeadline().format(dateFormater)
-                : "No Deadline";
-
-
-        Object[] row = {
-                task.getDescription(),
-                deadlineStr,
-                task.isCompleted() ? "Done" : "Not Done",
-                task.getCreationDate().format(dateFormater),
-                task.getModificationDate().format(dateFormater),
-                task.getCompletionDate() != null ? //only showing completion date if it exists
-                        task.getCompletionDate().format(dateFormater) : "-",
-                task.getDeletionDate() != null ?
-                        task.getDeletionDate().format(dateFormater) : "-"
-        };
-        return row;
+    private void showDeadlineReached(long id) {
+        Task task = taskManager.getTask(id);
+        if (task == null || task.isCompleted()) return;
+        JOptionPane.showMessageDialog(this, "Deadline reached: " + task.getDescription());
     }
 
     private void addTask() {
@@ -87,7 +89,6 @@ public class GUI extends JFrame {
             }
             Task newTask = new Task(description, deadline);
             taskManager.addTask(newTask);
-            refreshTable();
 
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, "Invalid number for days!");
@@ -101,58 +102,81 @@ public class GUI extends JFrame {
             return;
         }
 
-        Task task = taskManager.getAllTasks().get(selectedRow);
+        Task task = table.getTaskAt(selectedRow);
+        if (task == null) return; //deleted meanwhile, the table refreshes
 
         String newDescription = JOptionPane.showInputDialog(this,
                 "Edit description:", task.getDescription());
         if (newDescription == null || newDescription.trim().isEmpty()) return;
 
 
-        taskManager.updateTask(selectedRow, newDescription, task.getDeadline());
-        refreshTable();
+        taskManager.updateTaskById(task.getId(), newDescription, task.getDeadline());
     }
 
+    //one task goes straight through, several selected rows go through one batch and one table refresh
     private void deleteTask() {
-        int selectedRow = taskTable.getSelectedRow();
-        if (selectedRow == -1) {
+        List<Long> ids = selectedIds();
+        if (ids.isEmpty()) {
             JOptionPane.showMessageDialog(this, "Please select a task to delete");
             return;
         }
 
-            taskManager.deleteTask(selectedRow);
-            refreshTable();
-
+        if (ids.size() == 1) taskManager.deleteTaskById(ids.get(0));
+        else taskManager.beginBatch().delete(ids).commit();
     }
 
     private void markComplete() {
-        int selectedRow = taskTable.getSelectedRow();
-        if (selectedRow == -1) {
+        List<Long> ids = selectedIds();
+        if (ids.isEmpty()) {
             JOptionPane.showMessageDialog(this, "Please select a task!");
             return;
         }
 
-        taskManager.markComplete(selectedRow);
-        refreshTable();
+        if (ids.size() == 1) taskManager.markCompleteById(ids.get(0));
+        else taskManager.beginBatch().setCompleted(ids, true).commit();
+    }
+
+    private void deleteCompletedTasks() {
+        int deleted = taskManager.beginBatch().deleteWhere(Task::isCompleted).commit();
+        JOptionPane.showMessageDialog(this, "Deleted " + deleted + " completed tasks");
+    }
+
+    //compressing and writing the archive can take a while for a big list, so it runs in an IoWorker
+    private void archiveCompletedTasks() {
+        String daysStr = JOptionPane.showInputDialog(this, "Archive tasks completed more than how many days ago?", "30");
+        if (daysStr == null || daysStr.trim().isEmpty()) return;
+        int days;
+        try {
+            days = Integer.parseInt(daysStr.trim());
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Invalid number for days!");
+            return;
+        }
+        new IoWorker<Integer>(this, "Archive", false, progress -> taskManager.archiveCompleted(days),
+                archived -> JOptionPane.showMessageDialog(this, "Archived " + archived + " completed tasks\n"
+                        + taskManager.getArchive().size() + " tasks in the archive")).start();
+    }
+
+    //ids are read before anything changes, the rows move once the first task is gone
+    private List<Long> selectedIds() {
+        List<Long> ids = new ArrayList<>();
+        for (int row : taskTable.getSelectedRows()) {
+            Task task = table.getTaskAt(row);
+            if (task != null) ids.add(task.getId());
+        }
+        return ids;
     }
 
     private void showAllTasks(){
-        refreshTable();
+        table.showAll();
     }
 
     private void showCompletedTasks(){
-        table.setRowCount(0);
-        for (Task task : taskManager.getCompletedTasks()) {
-            Object[] row = createTableRow(task);
-            table.addRow(row);
-        }
+        table.showFiltered(taskManager::getCompletedTasks);
     }
 
     private void showPendingTasks(){
-        table.setRowCount(0);
-        for (Task task : taskManager.getIncompleteTasks()) {
-            Object[] row = createTableRow(task);
-            table.addRow(row);
-        }
+        table.showFiltered(taskManager::getIncompleteTasks);
     }
 
     private void setUpMenuBar() {
@@ -169,22 +193,23 @@ public class GUI extends JFrame {
         JMenuItem viewCompleted = new JMenuItem("View Completed");
         JMenuItem viewPending = new JMenuItem("View Pending");
 
-        loadItem.addActionListener(e -> {
+        //file actions run in an IoWorker, the table reloads itself from the change event when they are done
+        loadItem.addActionListener(e -> new IoWorker<Void>(this, "Load", false, progress -> {
             taskManager.loadFromFile();
+            return null;
+        }, done -> JOptionPane.showMessageDialog(this, "Loaded from file successfully")).start());
 
-            refreshTable();
-            JOptionPane.showMessageDialog(null, "Loaded from file successfully");
-        });
-
-        saveItem.addActionListener(e -> {
+        saveItem.addActionListener(e -> new IoWorker<Void>(this, "Save", false, progress -> {
             taskManager.saveToFile();
-            JOptionPane.showMessageDialog(null, "Saved to file successfully");
+            return null;
+        }, done -> JOptionPane.showMessageDialog(this, "Saved to file successfully")).start());
 
-        });
 
 
-
-        exitItem.addActionListener(e -> System.exit(0));
+        exitItem.addActionListener(e -> {
+            taskManager.close();
+            System.exit(0);
+        });
 
         exportItem.addActionListener(e -> {
             JFileChooser fileChooser = new JFileChooser();
@@ -194,14 +219,17 @@ public class GUI extends JFrame {
             if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
                 java.io.File file = fileChooser.getSelectedFile();
 
-                if (!file.getName().toLowerCase().endsWith(".csv")) {
+                String name = file.getName().toLowerCase();
+                if (!name.endsWith(".csv") && !name.endsWith(".csv.gz")) {
                     file = new java.io.File(file.getParent(), file.getName() + ".csv");
                 }
 
-                taskManager.exportUsingCSV(file);
-                JOptionPane.showMessageDialog(this,
-                        "Exported " + taskManager.getAllTasks().size() + " tasks to:\n" +
-                                file.getAbsolutePath());
+                java.io.File target = file;
+                new IoWorker<Integer>(this, "Export", true,
+                        progress -> taskManager.exportUsingCSV(target, CsvExporter.ALL, progress),
+                        exported -> JOptionPane.showMessageDialog(this,
+                                "Exported " + exported + " tasks to:\n" +
+                                        target.getAbsolutePath())).start();
             }
         });
 
@@ -211,10 +239,11 @@ public class GUI extends JFrame {
 
             if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
                 java.io.File file = fileChooser.getSelectedFile();
-                taskManager.importFromCSV(file);
-                refreshTable();
-                JOptionPane.showMessageDialog(this,
-                        "Imported " + taskManager.getAllTasks().size() + " tasks from CSV!");
+                new IoWorker<ImportReport>(this, "Import", true,
+                        progress -> taskManager.importFromCSV(file, progress),
+                        report -> JOptionPane.showMessageDialog(this,
+                                "Imported " + report.getImported() + " tasks from CSV!" +
+                                        (report.getRejected() > 0 ? "\n" + report.getRejected() + " rows were rejected" : ""))).start();
             }
         });
 
@@ -232,16 +261,52 @@ public class GUI extends JFrame {
         JMenuItem removeItem = new JMenuItem("Remove Task");
         JMenuItem editItem = new JMenuItem("Edit Task");
         JMenuItem completeItem = new JMenuItem("Mark Complete");
+        JMenuItem deleteCompletedItem = new JMenuItem("Delete Completed");
+        JMenuItem archiveItem = new JMenuItem("Archive Completed...");
+        JMenuItem undoItem = new JMenuItem("Undo");
+        JMenuItem redoItem = new JMenuItem("Redo");
+        undoItem.setAccelerator(KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_Z, Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
+        redoItem.setAccelerator(KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_Y, Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
+
+        //the table follows through the change events like for any other edit
+        undoItem.addActionListener(e -> {
+            if (!taskManager.undo()) Toolkit.getDefaultToolkit().beep();
+        });
+        redoItem.addActionListener(e -> {
+            if (!taskManager.redo()) Toolkit.getDefaultToolkit().beep();
+        });
+
+        //only enabled when there is something to undo or redo
+        editMenu.addMenuListener(new javax.swing.event.MenuListener() {
+            public void menuSelected(javax.swing.event.MenuEvent e) {
+                undoItem.setEnabled(taskManager.canUndo());
+                redoItem.setEnabled(taskManager.canRedo());
+            }
+            public void menuDeselected(javax.swing.event.MenuEvent e) {
+                undoItem.setEnabled(true); //keep the shortcuts working while the menu is closed
+                redoItem.setEnabled(true);
+            }
+            public void menuCanceled(javax.swing.event.MenuEvent e) {
+                menuDeselected(null);
+            }
+        });
 
         addItem.addActionListener(e -> addTask());
         editItem.addActionListener(e -> editTask());
         removeItem.addActionListener(e -> deleteTask());
         completeItem.addActionListener(e -> markComplete());
+        deleteCompletedItem.addActionListener(e -> deleteCompletedTasks());
+        archiveItem.addActionListener(e -> archiveCompletedTasks());
 
         editMenu.add(addItem);
         editMenu.add(removeItem);
         editMenu.add(editItem);
         editMenu.add(completeItem);
+        editMenu.add(deleteCompletedItem);
+        editMenu.add(archiveItem);
+        editMenu.addSeparator();
+        editMenu.add(undoItem);
+        editMenu.add(redoItem);
 
         menuBar.add(fileMenu);
         menuBar.add(editMenu);
@@ -251,21 +316,67 @@ public class GUI extends JFrame {
 
     }
 
-    //defines column headers using defaultTableModel
+    //column headers and formatting live in TaskTableModel
     private void setUpTable() {
-        String[] columns = {"Description", "Deadline", "Completed", "Created", "Modified", "Completed Date", "Deleted"};
-
-        table = new DefaultTableModel(columns, 0);
+        table = new TaskTableModel(taskManager);
 
 
     taskTable =new JTable(table);
-    taskTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+    taskTable.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION); //delete and complete work on every selected row
+
+    //clicking a date header sorts by it, again reverses it, any other header goes back to insertion order
+    taskTable.getTableHeader().addMouseListener(new java.awt.event.MouseAdapter() {
+        @Override
+        public void mouseClicked(java.awt.event.MouseEvent e) {
+            sortBy(taskTable.columnAtPoint(e.getPoint()));
+        }
+    });
 
     JScrollPane scrollPane = new JScrollPane(taskTable);
 
     add(scrollPane, BorderLayout.CENTER);
 }
 
+    private void sortBy(int column) {
+        SortedTaskIndex.Key key = TaskTableModel.sortKeyOf(column);
+        if (key == null) {
+            sortColumn = -1;
+            table.showAll();
+            return;
+        }
+        sortAscending = (column != sortColumn) || !sortAscending;
+        sortColumn = column;
+        table.showSorted(key, sortAscending);
+    }
+
+    //search as you type, waits for a short pause in typing so a fast typist does not run a query per key
+    private void setUpSearch() {
+        JPanel searchPanel = new JPanel(new BorderLayout(5, 0));
+        JTextField searchField = new JTextField();
+        Timer searchDelay = new Timer(SEARCH_DELAY_MILLIS, e -> search(searchField.getText()));
+        searchDelay.setRepeats(false);
+
+        searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { searchDelay.restart(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { searchDelay.restart(); }
+            public void changedUpdate(javax.swing.event.DocumentEvent e) { searchDelay.restart(); }
+        });
+
+        searchPanel.add(new JLabel("Search:"), BorderLayout.WEST);
+        searchPanel.add(searchField, BorderLayout.CENTER);
+        searchPanel.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        add(searchPanel, BorderLayout.NORTH);
+    }
+
+    //the results stay live, the model asks for them again after every change
+    private void search(String query) {
+        if (query.trim().isEmpty()) {
+            table.showAll();
+        } else {
+            table.showFiltered(() -> taskManager.search(query, SEARCH_LIMIT));
+        }
+    }
+
     private void setUpButtons() {
         JPanel buttonPanel = new JPanel();
 
@@ -277,6 +388,7 @@ public class GUI extends JFrame {
         JButton showAll = new JButton("All");
         JButton showCompleted = new JButton("Completed");
         JButton showPending = new JButton("Pending");
+        JButton statsButton = new JButton("Stats");
 
         addButton.addActionListener(e -> addTask());
         editButton.addActionListener(e -> editTask());
@@ -285,6 +397,7 @@ public class GUI extends JFrame {
         showAll.addActionListener(e -> showAllTasks());
         showCompleted.addActionListener(e -> showCompletedTasks());
         showPending.addActionListener(e -> showPendingTasks());
+        statsButton.addActionListener(e -> showStatistics());
 
         buttonPanel.add(addButton);
         buttonPanel.add(editButton);
@@ -293,10 +406,58 @@ public class GUI extends JFrame {
         buttonPanel.add(showAll);
         buttonPanel.add(showCompleted);
         buttonPanel.add(showPending);
+        buttonPanel.add(statsButton);
 
         add(buttonPanel, BorderLayout.SOUTH);
     }
 
+    //every number is O(1) to ask for, so the panel just asks again every second while it is open
+    private void showStatistics() {
+        TaskStatistics statistics = taskManager.getStatistics();
+        JDialog dialog = new JDialog(this, "Statistics", false);
+        JPanel panel = new JPanel(new GridLayout(0, 2, 10, 4));
+        panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        String[] names = {"Tasks", "Completed", "Pending", "Overdue", "Created today", "Completed today",
+                "Completed last 7 days", "Completed last 30 days", "Time to complete (avg)",
+                "Time to complete (median)", "Time to complete (90%)"};
+        JLabel[] values = new JLabel[names.length];
+        for (int i = 0; i < names.length; i++) {
+            values[i] = new JLabel();
+            panel.add(new JLabel(names[i]));
+            panel.add(values[i]);
+        }
+
+        Runnable refresh = () -> {
+            LocalDate today = LocalDate.now();
+            values[0].setText(String.valueOf(statistics.total()));
+            values[1].setText(String.format("%d (%.1f%%)", statistics.completed(), statistics.completionRate() * 100));
+            values[2].setText(String.valueOf(statistics.pending()));
+            values[3].setText(String.valueOf(statistics.overdue()));
+            values[4].setText(String.valueOf(statistics.createdOn(today)));
+            values[5].setText(String.valueOf(statistics.completedOn(today)));
+            values[6].setText(String.valueOf(statistics.completedInLast(7)));
+            values[7].setText(String.valueOf(statistics.completedInLast(30)));
+            values[8].setText(TaskStatistics.format(statistics.averageTimeToComplete()));
+            values[9].setText(TaskStatistics.format(statistics.timeToCompletePercentile(50)));
+            values[10].setText(TaskStatistics.format(statistics.timeToCompletePercentile(90)));
+        };
+        refresh.run();
+        Timer timer = new Timer(1000, e -> refresh.run());
+        timer.start();
+        dialog.addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosed(java.awt.event.WindowEvent e) {
+                timer.stop();
+            }
+        });
+
+        dialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+        dialog.add(panel);
+        dialog.pack();
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+    }
+
 
     public static void main(String[] args) {
 
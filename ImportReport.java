@@ -0,0 +1,33 @@
+/* data-layer */
+package TaskManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+//summary of one csv import, how many rows went in, which ones were rejected and how fast it was
+public class ImportReport {
+
+    int rowsRead;
+    int imported;
+    int rejected;
+    long elapsedNanos;
+    final List<String> rejectedRows = new ArrayList<>(); //first rejects with line number and reason
+
+    //GETTERS
+    public int getRowsRead() {return rowsRead;}
+    public int getImported() {return imported;}
+    public int getRejected() {return rejected;}
+    public List<String> getRejectedRows() {return Collections.unmodifiableList(rejectedRows);}
+    public long getElapsedMillis() {return elapsedNanos / 1_000_000;}
+
+    public double getRowsPerSecond() {
+        return (elapsedNanos > 0) ? rowsRead * 1_000_000_000.0 / elapsedNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Imported %d of %d rows (%d rejected) in %d ms, %.0f rows/s",
+                imported, rowsRead, rejected, getElapsedMillis(), getRowsPerSecond());
+    }
+}
@@ -0,0 +1,24 @@
+/* data-layer */
+package TaskManager;
+
+//lets a long file operation report how far it got and lets the caller stop it
+//progress is counted in bytes of the file on disk, total is -1 when it is not known up front (exports)
+public interface IoProgress {
+
+    IoProgress NONE = new IoProgress() {
+        @Override
+        public void progress(long bytesDone, long bytesTotal) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    //called from the thread doing the work, often, keep it cheap
+    void progress(long bytesDone, long bytesTotal);
+
+    //checked between blocks, once it returns true the operation stops with an InterruptedIOException
+    boolean isCancelled();
+}
@@ -0,0 +1,112 @@
+/* presentation-layer */
+package GUI;
+
+import TaskManager.IoProgress;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+//runs one file operation (load, save, import, export) off the EDT with a small progress window
+//the operation reports bytes through IoProgress, the window reads them on a timer so the EDT is not flooded
+//the table does not need anything from here, it updates itself from the one change event the operation fires
+class IoWorker<T> extends SwingWorker<T, Void> implements IoProgress {
+
+    interface Operation<T> {
+        T run(IoProgress progress) throws Exception;
+    }
+
+    private static final int REFRESH_MILLIS = 200;
+
+    private final Operation<T> operation;
+    private final Consumer<T> onDone;
+    private final JDialog dialog;
+    private final JProgressBar bar = new JProgressBar();
+    private final JLabel status = new JLabel(" ");
+    private final Timer refresh;
+
+    private volatile long bytesDone;
+    private volatile long bytesTotal = -1;
+    private long startNanos;
+
+    IoWorker(JFrame owner, String title, boolean cancellable, Operation<T> operation, Consumer<T> onDone) {
+        this.operation = operation;
+        this.onDone = onDone;
+
+        dialog = new JDialog(owner, title, false);
+        dialog.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+        bar.setIndeterminate(true);
+        JButton cancelButton = new JButton("Cancel");
+        cancelButton.setEnabled(cancellable);
+        cancelButton.addActionListener(e -> cancel(true));
+
+        JPanel panel = new JPanel(new BorderLayout(8, 8));
+        panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        panel.add(bar, BorderLayout.NORTH);
+        panel.add(status, BorderLayout.CENTER);
+        panel.add(cancelButton, BorderLayout.EAST);
+        dialog.add(panel);
+        dialog.setSize(380, 110);
+        dialog.setLocationRelativeTo(owner);
+
+        refresh = new Timer(REFRESH_MILLIS, e -> showProgress());
+    }
+
+    //must be called on the EDT
+    void start() {
+        startNanos = System.nanoTime();
+        dialog.setVisible(true);
+        refresh.start();
+        execute();
+    }
+
+    @Override
+    protected T doInBackground() throws Exception {
+        return operation.run(this);
+    }
+
+    @Override
+    public void progress(long done, long total) {
+        bytesDone = done;
+        bytesTotal = total;
+    }
+
+    //isCancelled() comes from SwingWorker, cancel(true) also interrupts the worker thread
+
+    private void showProgress() {
+        long done = bytesDone;
+        long total = bytesTotal;
+        double seconds = Math.max((System.nanoTime() - startNanos) / 1e9, 0.001);
+        double mbPerSecond = done / seconds / (1024 * 1024);
+        if (total > 0) {
+            bar.setIndeterminate(false);
+            bar.setValue((int) Math.min(100, done * 100 / total));
+            status.setText(String.format("%.1f of %.1f MB, %.1f MB/s", mb(done), mb(total), mbPerSecond));
+        } else if (done > 0) {
+            status.setText(String.format("%.1f MB, %.1f MB/s", mb(done), mbPerSecond));
+        }
+    }
+
+    private static double mb(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    @Override
+    protected void done() {
+        refresh.stop();
+        dialog.dispose();
+        Component owner = dialog.getOwner();
+        try {
+            onDone.accept(get());
+        } catch (CancellationException e) {
+            JOptionPane.showMessageDialog(owner, dialog.getTitle() + " cancelled");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            JOptionPane.showMessageDialog(owner, dialog.getTitle() + " failed: " + e.getCause().getMessage());
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/* presentation-layer */
+package Server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+//streaming json encoder, writes utf-8 straight into its own byte buffer and hands it to the stream when full
+//a list of a million tasks goes out in 64 KB pieces, nothing is built up as a String or a tree first
+//commas are tracked per nesting level, so callers only say what comes next
+final class JsonWriter implements Closeable {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[] NULL = "null".getBytes();
+    private static final byte[] TRUE = "true".getBytes();
+    private static final byte[] FALSE = "false".getBytes();
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position;
+
+    private boolean[] hasValue = new boolean[8]; //per nesting level, a value was written so the next one needs a comma
+    private int depth;
+    private boolean afterName;
+
+    JsonWriter(OutputStream out) {
+        this(out, 1 << 16);
+    }
+
+    JsonWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[bufferSize];
+    }
+
+    //STRUCTURE
+    JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    JsonWriter name(String name) throws IOException {
+        separate();
+        string(name);
+        put((byte) ':');
+        afterName = true;
+        return this;
+    }
+
+    private JsonWriter open(char bracket) throws IOException {
+        separate();
+        put((byte) bracket);
+        if (++depth == hasValue.length) hasValue = Arrays.copyOf(hasValue, depth * 2);
+        hasValue[depth] = false;
+        return this;
+    }
+
+    private JsonWriter close(char bracket) throws IOException {
+        depth--;
+        put((byte) bracket);
+        return this;
+    }
+
+    //comma before every value of an array or object except the first, none right after a name
+    private void separate() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (hasValue[depth]) put((byte) ',');
+        hasValue[depth] = true;
+    }
+
+    //VALUES
+    JsonWriter value(String value) throws IOException {
+        separate();
+        if (value == null) put(NULL);
+        else string(value);
+        return this;
+    }
+
+    JsonWriter value(long value) throws IOException {
+        separate();
+        if (value == Long.MIN_VALUE) {
+            put(Long.toString(value).getBytes());
+            return this;
+        }
+        if (value < 0) {
+            put((byte) '-');
+            value = -value;
+        }
+        if (buffer.length - position < 20) flush();
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) digits++;
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += digits;
+        return this;
+    }
+
+    JsonWriter value(boolean value) throws IOException {
+        separate();
+        put(value ? TRUE : FALSE);
+        return this;
+    }
+
+    //ISO-8601 as "2030-01-31T09:00:00" or "2030-01-31T09:00:00.250", written digit by digit,
+    //LocalDateTime.toString() would build two Strings per date and a list has three dates per task
+    JsonWriter value(LocalDateTime date) throws IOException {
+        separate();
+        if (date == null) {
+            put(NULL);
+            return this;
+        }
+        int year = date.getYear();
+        if (year < 0 || year > 9999) {
+            string(date.toString());
+            return this;
+        }
+        if (buffer.length - position < 26) flush();
+        buffer[position++] = '"';
+        digits(year, 4);
+        buffer[position++] = '-';
+        digits(date.getMonthValue(), 2);
+        buffer[position++] = '-';
+        digits(date.getDayOfMonth(), 2);
+        buffer[position++] = 'T';
+        digits(date.getHour(), 2);
+        buffer[position++] = ':';
+        digits(date.getMinute(), 2);
+        buffer[position++] = ':';
+        digits(date.getSecond(), 2);
+        int millis = date.getNano() / 1_000_000;
+        if (millis != 0) {
+            buffer[position++] = '.';
+            digits(millis, 3);
+        }
+        buffer[position++] = '"';
+        return this;
+    }
+
+    private void digits(int value, int width) {
+        for (int i = position + width - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += width;
+    }
+
+    JsonWriter nullValue() throws IOException {
+        separate();
+        put(NULL);
+        return this;
+    }
+
+    //quoted and escaped, ascii is copied as is, everything else is encoded to utf-8 by hand
+    private void string(String s) throws IOException {
+        put((byte) '"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (buffer.length - position < 12) flush(); //room for the longest form of one char
+            if (c >= 0x20 && c < 0x80) {
+                if (c == '"' || c == '\\') buffer[position++] = '\\';
+                buffer[position++] = (byte) c;
+            } else if (c < 0x20) {
+                buffer[position++] = '\\';
+                switch (c) {
+                    case '\n': buffer[position++] = 'n'; break;
+                    case '\r': buffer[position++] = 'r'; break;
+                    case '\t': buffer[position++] = 't'; break;
+                    default:
+                        buffer[position++] = 'u';
+                        buffer[position++] = '0';
+                        buffer[position++] = '0';
+                        buffer[position++] = HEX[c >> 4];
+                        buffer[position++] = HEX[c & 0xF];
+                }
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, s.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | (code >> 18));
+                buffer[position++] = (byte) (0x80 | ((code >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((code >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (code & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer[position++] = '?'; //half of a pair, not valid utf-8
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        put((byte) '"');
+    }
+
+    //BUFFER
+    private void put(byte b) throws IOException {
+        if (position == buffer.length) flush();
+        buffer[position++] = b;
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        if (buffer.length - position < bytes.length) flush();
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+}
@@ -1,13 +1,8 @@
-//TIP To <b>Run</b> code, press <shortcut actionId="Run"/> or
-// click the <icon src="AllIcons.Actions.Execute"/> icon in the gutter.
-void main() {
-    //TIP Press <shortcut actionId="ShowIntentionActions"/> with your caret at the highlighted text
-    // to see how IntelliJ IDEA suggests fixing it.
-    IO.println(String.format("Hello and welcome!"));
-
-    for (int i = 1; i <= 5; i++) {
-        //TIP Press <shortcut actionId="Debug"/> to start debugging your code. We have set one <icon src="AllIcons.Debugger.Db_set_breakpoint"/> breakpoint
-        // for you, but you can always add more by pressing <shortcut actionId="ToggleLineBreakpoint"/>.
-        IO.println("i = " + i);
-    }
+//headless batch mode, reads task commands from stdin or files and answers on stdout, see Cli.TaskCli for the commands
+//  javac -d out $(ls *.java | grep -v Tests.java) && java -cp out Main [--file todo.ser] [--batch 4096] [command file ...] < commands.txt
+//this file is a compact source file (java 25), on an older jdk leave it out of javac and start Cli.TaskCli instead:
+//  javac -d out $(ls *.java | grep -v -e Tests.java -e Main.java) && java -cp out Cli.TaskCli [--file todo.ser] ...
+//the window is GUI.GUI, the http front end Server.TaskServer
+void main(String[] args) {
+    System.exit(Cli.TaskCli.run(args));
 }
@@ -0,0 +1,166 @@
+/* data-layer */
+package TaskManager;
+
+import Task.Task;
+
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+//index of every task that matches a predicate, kept as a bitset over the list slots
+//used for completed/pending and can be registered for anything else
+//a predicate is only checked when a task changes, not when the clock moves; time based ones (overdue, due today)
+//are registered with TaskManager.registerTimedIndex, which checks them again before they are read
+//a fenwick tree over the match counts of blocks of 512 slots gives the n-th match in O(log n) plus a scan of one block,
+//so get(i) on a view is random access instead of a walk over the bitset
+public class PredicateIndex implements TaskIndex {
+
+    private static final int BLOCK_BITS = 9; //512 slots per block
+
+    private final Predicate<Task> predicate;
+    protected final BitSet slots = new BitSet();
+    protected int count; //cardinality, kept so size() is O(1)
+    private int version; //bumped on every change so views know their cursor is stale
+    private int[] tree = new int[2]; //fenwick over the matches per block, 1-based, length a power of two + 1
+
+    public PredicateIndex(Predicate<Task> predicate) {
+        this.predicate = predicate;
+    }
+
+    @Override
+    public void taskAdded(int slot, Task task) {
+        update(slot, predicate.test(task));
+    }
+
+    @Override
+    public void taskChanged(int slot, Task task) {
+        update(slot, predicate.test(task));
+    }
+
+    @Override
+    public void taskRemoved(int slot) {
+        update(slot, false);
+    }
+
+    @Override
+    public void slotsSwept(BitSet removed) {
+        BitSet moved = new BitSet(slots.length());
+        int shift = 0;
+        int next = removed.nextSetBit(0);
+        for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+            while (next >= 0 && next < slot) {
+                shift++;
+                next = removed.nextSetBit(next + 1);
+            }
+            moved.set(slot - shift);
+        }
+        slots.clear();
+        slots.or(moved);
+        rebuildTree();
+        version++;
+    }
+
+    @Override
+    public void rebuild(TaskList tasks) {
+        slots.clear();
+        count = 0;
+        for (int i = 0; i < tasks.size(); i++) {
+            if (matches(tasks, i)) slots.set(i);
+        }
+        count = slots.cardinality();
+        rebuildTree();
+        version++;
+    }
+
+    //overridden when the answer can be read without building the task
+    protected boolean matches(TaskList tasks, int slot) {
+        return predicate.test(tasks.get(slot));
+    }
+
+    protected void update(int slot, boolean match) {
+        if (slots.get(slot) == match) return;
+        slots.set(slot, match);
+        count += match ? 1 : -1;
+        int block = (slot >> BLOCK_BITS) + 1;
+        if (block >= tree.length) rebuildTree(); //grown past the tree, the new bit is counted by the rebuild
+        else for (int i = block; i < tree.length; i += i & -i) tree[i] += match ? 1 : -1;
+        version++;
+    }
+
+    //O(blocks + matches), after a sweep or a rebuild and when the slots outgrow the tree
+    private void rebuildTree() {
+        int blocks = (slots.length() >> BLOCK_BITS) + 1;
+        int[] fresh = new int[Math.max(2, Integer.highestOneBit(blocks * 2 - 1) + 1)];
+        for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) fresh[(slot >> BLOCK_BITS) + 1]++;
+        for (int i = 1; i < fresh.length; i++) {
+            int parent = i + (i & -i);
+            if (parent < fresh.length) fresh[parent] += fresh[i];
+        }
+        tree = fresh;
+    }
+
+    //slot of the match at position index, 0 <= index < count
+    private int select(int index) {
+        int block = 0;
+        int remaining = index;
+        for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+            int next = block + step;
+            if (next < tree.length && tree[next] <= remaining) {
+                block = next;
+                remaining -= tree[next];
+            }
+        }
+        int slot = slots.nextSetBit(block << BLOCK_BITS);
+        for (; remaining > 0; remaining--) slot = slots.nextSetBit(slot + 1);
+        return slot;
+    }
+
+    public int size() {
+        beforeRead();
+        return count;
+    }
+
+    //called before every read of the index or its views, for an index that has to catch up with the clock first
+    protected void beforeRead() {
+    }
+
+    //read-only live view, costs O(result) to walk and O(log n) per get, copies nothing
+    public List<Task> view(IntFunction<Task> slotToTask) {
+        return new View(slotToTask);
+    }
+
+    private class View extends AbstractList<Task> implements RandomAccess {
+        private final IntFunction<Task> slotToTask;
+        //remembers the last position so walking the view in order is one nextSetBit per step
+        private int lastIndex = -1;
+        private int lastSlot = -1;
+        private int seenVersion;
+
+        View(IntFunction<Task> slotToTask) {
+            this.slotToTask = slotToTask;
+        }
+
+        @Override
+        public Task get(int index) {
+            beforeRead();
+            if (index < 0 || index >= count) throw new IndexOutOfBoundsException("Index " + index + " of " + count);
+            int slot;
+            if (seenVersion == version && index == lastIndex) slot = lastSlot;
+            else if (seenVersion == version && lastIndex >= 0 && index == lastIndex + 1) slot = slots.nextSetBit(lastSlot + 1);
+            else slot = select(index);
+            lastIndex = index;
+            lastSlot = slot;
+            seenVersion = version;
+            return slotToTask.apply(slot);
+        }
+
+        @Override
+        public int size() {
+            beforeRead();
+            return count;
+        }
+    }
+}
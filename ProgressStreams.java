@@ -0,0 +1,100 @@
+/* data-layer */
+package TaskManager;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+//stream wrappers that count the bytes going through them for an IoProgress
+//they sit right on the file, under gzip, so the count matches the file size
+final class ProgressStreams {
+
+    private ProgressStreams() {
+    }
+
+    private static void check(IoProgress progress) throws InterruptedIOException {
+        if (progress.isCancelled() || Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("cancelled");
+        }
+    }
+
+    static InputStream counting(InputStream in, long total, IoProgress progress) {
+        return (progress == IoProgress.NONE) ? in : new In(in, total, progress);
+    }
+
+    static WritableByteChannel counting(WritableByteChannel out, IoProgress progress) {
+        return (progress == IoProgress.NONE) ? out : new Out(out, progress);
+    }
+
+    private static final class In extends FilterInputStream {
+        private final long total;
+        private final IoProgress progress;
+        private long done;
+
+        In(InputStream in, long total, IoProgress progress) {
+            super(in);
+            this.total = total;
+            this.progress = progress;
+        }
+
+        @Override
+        public int read() throws IOException {
+            check(progress);
+            int b = super.read();
+            if (b >= 0) progress.progress(++done, total);
+            return b;
+        }
+
+        //readers above pull whole buffers, so this is once per block and not per byte
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            check(progress);
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                done += n;
+                progress.progress(done, total);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            done += skipped;
+            return skipped;
+        }
+    }
+
+    private static final class Out implements WritableByteChannel {
+        private final WritableByteChannel out;
+        private final IoProgress progress;
+        private long done;
+
+        Out(WritableByteChannel out, IoProgress progress) {
+            this.out = out;
+            this.progress = progress;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            check(progress);
+            int n = out.write(src);
+            done += n;
+            progress.progress(done, -1);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return out.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
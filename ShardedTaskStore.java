@@ -0,0 +1,328 @@
+/* data-layer */
+package TaskManager;
+
+import Task.Task;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+//task storage split over several files in one folder: pending tasks in one shard, completed tasks in one shard
+//per month they were completed in, plus a small text manifest with the name and task count of every shard
+//every shard is a snapshot + journal of its own (TaskJournal), so changes are journaled into the shard the task
+//belongs to and a save only syncs the shards that changed
+//a manager opened on a store starts with just the pending shard, completed months are loaded when asked for
+//and can be evicted again, they are always on disk so an evicted shard loses nothing
+public class ShardedTaskStore {
+
+    public static final String PENDING = "pending";
+    private static final String DONE_PREFIX = "done-";
+    private static final String MANIFEST = "manifest.txt";
+    private static final String SUFFIX = ".ser";
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    private static final class Shard {
+        final String name;
+        final TaskJournal journal;
+        int count; //tasks in the shard, from the manifest until the shard is loaded
+        long maxId; //highest id ever stored in the shard, new ids have to stay above the shards that are not loaded
+        boolean opened; //the journal knows its last sequence number and can take new records
+        boolean loaded; //every task of the shard is in the manager
+        boolean dirty; //journal records that were not synced yet
+        boolean batching; //the journal holds its records back until the batch ends
+        long lastUsed;
+
+        Shard(String name, TaskJournal journal) {
+            this.name = name;
+            this.journal = journal;
+        }
+    }
+
+    private final File directory;
+    private final int groupCommitSize;
+    private final int compactionThreshold;
+    private final Map<String, Shard> shards = new TreeMap<>();
+    private int maxLoaded = Integer.MAX_VALUE; //completed shards held in memory at once, the pending shard is not counted
+    private int batchDepth;
+    private TaskMetrics metrics = TaskMetrics.UNATTACHED;
+
+    public ShardedTaskStore(File directory) {
+        this(directory, TaskJournal.DEFAULT_GROUP_COMMIT, TaskJournal.DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    public ShardedTaskStore(File directory, int groupCommitSize, int compactionThreshold) {
+        this.directory = directory;
+        this.groupCommitSize = groupCommitSize;
+        this.compactionThreshold = compactionThreshold;
+        if (!directory.isDirectory() && !directory.mkdirs()) throw new RuntimeException("Can not create " + directory);
+        readManifest();
+        shard(PENDING);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    //SHARD KEYS
+    //which shard a task belongs to, depends only on completed and the completion month
+    public static String shardOf(Task task) {
+        if (!task.isCompleted()) return PENDING;
+        LocalDateTime when = (task.getCompletionDate() != null) ? task.getCompletionDate() : task.getCreationDate();
+        return (when != null) ? DONE_PREFIX + when.format(MONTH) : DONE_PREFIX + "unknown";
+    }
+
+    public List<String> shardNames() {
+        return new ArrayList<>(shards.keySet());
+    }
+
+    public int taskCount(String name) {
+        Shard shard = shards.get(name);
+        return (shard != null) ? shard.count : 0;
+    }
+
+    public boolean isLoaded(String name) {
+        Shard shard = shards.get(name);
+        return shard != null && shard.loaded;
+    }
+
+    public void setMaxLoadedShards(int maxLoaded) {
+        if (maxLoaded < 1) throw new IllegalArgumentException("at least one shard has to fit");
+        this.maxLoaded = maxLoaded;
+    }
+
+    private Shard shard(String name) {
+        Shard shard = shards.get(name);
+        if (shard == null) {
+            shard = new Shard(name, new TaskJournal(new File(directory, name + SUFFIX), groupCommitSize, compactionThreshold));
+            shard.journal.setMetrics(metrics);
+            shards.put(name, shard);
+        }
+        return shard;
+    }
+
+    void setMetrics(TaskMetrics metrics) {
+        this.metrics = metrics;
+        for (Shard shard : shards.values()) shard.journal.setMetrics(metrics);
+    }
+
+    //LOADING
+    //tasks of one shard straight from its snapshot and journal, unknown shards are empty
+    TaskList load(String name) {
+        Shard shard = shard(name);
+        TaskList tasks = open(shard);
+        shard.loaded = true;
+        shard.lastUsed = System.nanoTime();
+        return tasks;
+    }
+
+    //a journal has to recover before it takes records, otherwise its sequence numbers start over below the snapshot's
+    private TaskList open(Shard shard) {
+        TaskList tasks = shard.journal.recover();
+        if (tasks == null) {
+            tasks = new TaskList();
+            shard.journal.writeSnapshot(tasks); //from here on its changes go to the journal
+        }
+        shard.opened = true;
+        shard.count = tasks.size();
+        for (int i = 0; i < tasks.size(); i++) shard.maxId = Math.max(shard.maxId, tasks.idAt(i));
+        return tasks;
+    }
+
+    //every shard is treated as not loaded, the manager is about to replace its tasks
+    void unloadAll() {
+        for (Shard shard : shards.values()) shard.loaded = false;
+    }
+
+    //completed shards that should go to make room, least recently used first
+    List<String> overLimit() {
+        List<Shard> loaded = new ArrayList<>();
+        for (Shard shard : shards.values()) {
+            if (shard.loaded && !shard.name.equals(PENDING)) loaded.add(shard);
+        }
+        loaded.sort((a, b) -> Long.compare(a.lastUsed, b.lastUsed));
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < loaded.size() - maxLoaded; i++) names.add(loaded.get(i).name);
+        return names;
+    }
+
+    //loaded completed shards not used for longer than idleMillis
+    List<String> idle(long idleMillis) {
+        long now = System.nanoTime();
+        List<String> names = new ArrayList<>();
+        for (Shard shard : shards.values()) {
+            if (shard.loaded && !shard.name.equals(PENDING) && (now - shard.lastUsed) / 1_000_000 > idleMillis) names.add(shard.name);
+        }
+        return names;
+    }
+
+    //the manager dropped the tasks of the shard, what is on disk stays
+    void evicted(String name) {
+        Shard shard = shards.get(name);
+        if (shard == null) return;
+        shard.journal.sync();
+        shard.dirty = false;
+        shard.loaded = false;
+    }
+
+    //JOURNALING, one record into the shard the task is in
+    void logAdd(Task task) {
+        Shard shard = touch(shardOf(task));
+        shard.journal.logAdd(task);
+        shard.count++;
+        shard.maxId = Math.max(shard.maxId, task.getId());
+    }
+
+    void logUpdate(Task task) {
+        touch(shardOf(task)).journal.logUpdate(task);
+    }
+
+    void logDelete(Task task) {
+        Shard shard = touch(shardOf(task));
+        shard.journal.logDelete(task.getId());
+        shard.count--;
+    }
+
+    //the task may have changed shard (completed, reopened, undone), from = shardOf(task) before the change
+    //the add goes first, a crash in between leaves the task in both shards and loading keeps the newer copy
+    void logMove(String from, Task task) {
+        String to = shardOf(task);
+        if (to.equals(from)) {
+            touch(to).journal.logComplete(task);
+            return;
+        }
+        Shard target = touch(to);
+        target.journal.logAdd(task);
+        target.count++;
+        target.maxId = Math.max(target.maxId, task.getId());
+        Shard source = touch(from);
+        source.journal.logDelete(task.getId());
+        source.count--;
+    }
+
+    //a task went into a shard that is not loaded, e.g. completed this month: the shard is opened, not loaded,
+    //its other tasks stay on disk and loading it later skips the ones the manager already has
+    private Shard touch(String name) {
+        Shard shard = shard(name);
+        if (!shard.opened) open(shard);
+        shard.dirty = true;
+        shard.lastUsed = System.nanoTime();
+        if (batchDepth > 0 && !shard.batching) {
+            shard.journal.beginBatch();
+            shard.batching = true;
+        }
+        return shard;
+    }
+
+    //every shard touched inside the batch writes its records in one go when it ends
+    void beginBatch() {
+        batchDepth++;
+    }
+
+    void endBatch() {
+        if (batchDepth == 0 || --batchDepth > 0) return;
+        for (Shard shard : shards.values()) {
+            if (!shard.batching) continue;
+            shard.batching = false;
+            shard.journal.endBatch();
+        }
+    }
+
+    //SAVING
+    //syncs only the shards with unsynced records, then the manifest, returns how many shards were written
+    int save() {
+        int written = 0;
+        for (Shard shard : shards.values()) {
+            if (!shard.dirty) continue;
+            shard.journal.sync();
+            shard.dirty = false;
+            written++;
+        }
+        if (written > 0) writeManifest();
+        return written;
+    }
+
+    void close() {
+        save();
+        for (Shard shard : shards.values()) shard.journal.close();
+    }
+
+    //MANIFEST
+    //one line per shard: name, task count, highest id; only a hint for listing shards without opening them
+    //the highest id is what keeps new ids away from the shards that are not loaded, so a shard missing from the
+    //manifest or changed after it was written (a crash or a restart without save) is opened to read its ids
+    private void readManifest() {
+        File manifest = new File(directory, MANIFEST);
+        long written = manifest.exists() ? manifest.lastModified() : Long.MIN_VALUE;
+        Set<String> listed = new HashSet<>();
+        if (manifest.exists()) {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), StandardCharsets.UTF_8))) {
+                for (String line; (line = in.readLine()) != null; ) {
+                    String[] fields = line.split("\t");
+                    if (fields.length < 2 || fields[0].isEmpty()) continue;
+                    Shard shard = shard(fields[0]);
+                    shard.count = Integer.parseInt(fields[1]);
+                    if (fields.length > 2) shard.maxId = Long.parseLong(fields[2]);
+                    listed.add(shard.name);
+                }
+            } catch (IOException | NumberFormatException e) {
+                e.printStackTrace(); //fall back to the files below
+                listed.clear();
+            }
+        }
+        String[] files = directory.list();
+        if (files == null) return;
+        Set<String> stale = new TreeSet<>();
+        for (String file : files) {
+            int end = file.indexOf(SUFFIX);
+            if (end <= 0 || file.startsWith(".")) continue;
+            String name = file.substring(0, end);
+            shard(name);
+            //same second counts as newer, file times can be that coarse
+            if (!listed.contains(name) || new File(directory, file).lastModified() >= written) stale.add(name);
+        }
+        stale.remove(PENDING); //always loaded before the manager hands out ids
+        for (String name : stale) {
+            Shard shard = shards.get(name);
+            if (!shard.opened) open(shard);
+        }
+    }
+
+    private void writeManifest() {
+        File manifest = new File(directory, MANIFEST);
+        File tmp = new File(directory, MANIFEST + ".tmp");
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            for (Shard shard : shards.values()) out.write(shard.name + "\t" + Math.max(0, shard.count) + "\t" + shard.maxId + "\n");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        try {
+            Files.move(tmp.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //highest id in any shard, loaded or not
+    public long maxId() {
+        long max = 0;
+        for (Shard shard : shards.values()) max = Math.max(max, shard.maxId);
+        return max;
+    }
+
+    public Map<String, Integer> manifest() {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (Shard shard : shards.values()) counts.put(shard.name, shard.count);
+        return Collections.unmodifiableMap(counts);
+    }
+}
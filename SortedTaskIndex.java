@@ -0,0 +1,329 @@
+/* data-layer */
+package TaskManager;
+
+import Task.Task;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.Function;
+
+//every task ordered by one of its dates, kept in an order-statistic tree so a sorted table never sorts:
+//an add, change or delete costs O(log n) and the task at a rank (a table row) is found in O(log n)
+//the tree is a treap in parallel arrays (key, id, slot, children, subtree size), no object per task,
+//ordered by (date, id) so equal dates keep a stable order; tasks without the date come last
+public class SortedTaskIndex implements TaskIndex {
+
+    public enum Key {
+        DEADLINE(Task::getDeadline),
+        CREATED(Task::getCreationDate),
+        MODIFIED(Task::getModificationDate),
+        COMPLETED(Task::getCompletionDate);
+
+        private final Function<Task, LocalDateTime> date;
+
+        Key(Function<Task, LocalDateTime> date) {
+            this.date = date;
+        }
+
+        long millisOf(Task task) {
+            return TaskCodec.toMillis(date.apply(task));
+        }
+    }
+
+    private static final int NIL = -1;
+
+    private final Key key;
+
+    //NODES, node n is the tree entry of one task
+    private long[] keys = new long[16]; //date millis, a missing date is stored as MAX_VALUE so it sorts last
+    private long[] ids = new long[16];
+    private int[] slots = new int[16];
+    private int[] left = new int[16];
+    private int[] right = new int[16];
+    private int[] counts = new int[16]; //nodes in the subtree
+    private int[] priorities = new int[16];
+    private int nodeCount; //nodes ever handed out, freed ones go on the free list
+    private int free = NIL; //freed nodes chained through left
+    private int root = NIL;
+    private int seed = 0x2545F491;
+
+    private int[] bySlot = new int[16]; //node of every slot, NIL for none
+    private int slotCount;
+
+    public SortedTaskIndex(Key key) {
+        this.key = key;
+        Arrays.fill(bySlot, NIL);
+    }
+
+    public Key getKey() {
+        return key;
+    }
+
+    //TASKINDEX HOOKS
+    @Override
+    public void taskAdded(int slot, Task task) {
+        ensureSlots(slot + 1);
+        slotCount = Math.max(slotCount, slot + 1);
+        insert(slot, task.getId(), sortable(key.millisOf(task)));
+    }
+
+    //only moves in the tree when the date changed, e.g. a description edit keeps the deadline
+    @Override
+    public void taskChanged(int slot, Task task) {
+        int node = bySlot[slot];
+        long millis = sortable(key.millisOf(task));
+        if (node != NIL && keys[node] == millis) return;
+        if (node != NIL) remove(node);
+        insert(slot, task.getId(), millis);
+    }
+
+    @Override
+    public void taskRemoved(int slot) {
+        int node = bySlot[slot];
+        if (node == NIL) return;
+        remove(node);
+        bySlot[slot] = NIL;
+    }
+
+    //slots move down but the order does not change, only the slot numbers in the nodes
+    @Override
+    public void slotsSwept(BitSet removed) {
+        int kept = 0;
+        for (int i = 0; i < slotCount; i++) {
+            if (removed.get(i)) continue;
+            int node = bySlot[i];
+            bySlot[kept] = node;
+            if (node != NIL) slots[node] = kept;
+            kept++;
+        }
+        Arrays.fill(bySlot, kept, slotCount, NIL);
+        slotCount = kept;
+    }
+
+    //dates straight from the snapshot or the columns, no task is built
+    @Override
+    public void rebuild(TaskList tasks) {
+        root = NIL;
+        free = NIL;
+        nodeCount = 0;
+        slotCount = tasks.size();
+        bySlot = new int[Math.max(16, tasks.size())];
+        Arrays.fill(bySlot, NIL);
+        ensureNodes(tasks.size());
+        int[] order = new int[tasks.size()];
+        for (int i = 0; i < tasks.size(); i++) {
+            int node = newNode(i, tasks.idAt(i), sortable(tasks.dateMillisAt(i, key)));
+            bySlot[i] = node;
+            order[i] = node;
+        }
+        root = build(sort(order));
+    }
+
+    //nodes in key order, bottom-up merge sort on the node numbers so no key object is made per task
+    private int[] sort(int[] order) {
+        int[] from = order;
+        int[] to = new int[order.length];
+        for (int width = 1; width < order.length; width *= 2) {
+            for (int lo = 0; lo < order.length; lo += 2 * width) {
+                int mid = Math.min(lo + width, order.length);
+                int hi = Math.min(lo + 2 * width, order.length);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) to[k++] = (compare(keys[from[j]], ids[from[j]], from[i]) < 0) ? from[j++] : from[i++];
+                while (i < mid) to[k++] = from[i++];
+                while (j < hi) to[k++] = from[j++];
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        return from;
+    }
+
+    //treap from sorted nodes in O(n): the right spine sits on a stack, a node takes over the nodes of lower priority
+    private int build(int[] sorted) {
+        int[] spine = new int[sorted.length];
+        int top = 0;
+        for (int node : sorted) {
+            int last = NIL;
+            while (top > 0 && priorities[spine[top - 1]] < priorities[node]) last = spine[--top];
+            left[node] = last;
+            if (top > 0) right[spine[top - 1]] = node;
+            spine[top++] = node;
+        }
+        int tree = (top > 0) ? spine[0] : NIL;
+        if (tree != NIL) counted(tree);
+        return tree;
+    }
+
+    private int counted(int node) {
+        if (node == NIL) return 0;
+        counts[node] = counted(left[node]) + counted(right[node]) + 1;
+        return counts[node];
+    }
+
+    private static long sortable(long millis) {
+        return (millis == TaskCodec.NO_DATE) ? Long.MAX_VALUE : millis;
+    }
+
+    //QUERIES
+    public int size() {
+        return (root == NIL) ? 0 : counts[root];
+    }
+
+    //slot of the task at this rank, 0 is the earliest date
+    public int slotAt(int rank) {
+        if (rank < 0 || rank >= size()) throw new IndexOutOfBoundsException("Rank " + rank + " of " + size());
+        int node = root;
+        while (true) {
+            int before = count(left[node]);
+            if (rank < before) {
+                node = left[node];
+            } else if (rank == before) {
+                return slots[node];
+            } else {
+                rank -= before + 1;
+                node = right[node];
+            }
+        }
+    }
+
+    //rank of the task in a slot, -1 if the slot holds no task
+    public int rankOfSlot(int slot) {
+        if (slot < 0 || slot >= slotCount || bySlot[slot] == NIL) return -1;
+        int target = bySlot[slot];
+        long k = keys[target];
+        long id = ids[target];
+        int rank = 0;
+        int node = root;
+        while (node != NIL) {
+            int c = compare(k, id, node);
+            if (c < 0) {
+                node = left[node];
+            } else if (c == 0) {
+                return rank + count(left[node]);
+            } else {
+                rank += count(left[node]) + 1;
+                node = right[node];
+            }
+        }
+        return -1;
+    }
+
+    //TREAP
+    private void insert(int slot, long id, long millis) {
+        int node = newNode(slot, id, millis);
+        bySlot[slot] = node;
+        root = insert(root, node);
+    }
+
+    private int insert(int tree, int node) {
+        if (tree == NIL) return node;
+        if (priorities[node] > priorities[tree]) {
+            split(tree, keys[node], ids[node]);
+            left[node] = splitLeft;
+            right[node] = splitRight;
+            return update(node);
+        }
+        if (compare(keys[node], ids[node], tree) < 0) left[tree] = insert(left[tree], node);
+        else right[tree] = insert(right[tree], node);
+        return update(tree);
+    }
+
+    private int splitLeft, splitRight; //results of split, no pair object per call
+
+    //splitLeft gets the nodes before (millis, id), splitRight the rest
+    private void split(int tree, long millis, long id) {
+        if (tree == NIL) {
+            splitLeft = splitRight = NIL;
+            return;
+        }
+        if (compare(millis, id, tree) > 0) {
+            split(right[tree], millis, id);
+            right[tree] = splitLeft;
+            splitLeft = update(tree);
+        } else {
+            split(left[tree], millis, id);
+            left[tree] = splitRight;
+            splitRight = update(tree);
+        }
+    }
+
+    private void remove(int node) {
+        root = remove(root, node);
+        left[node] = free;
+        free = node;
+    }
+
+    private int remove(int tree, int node) {
+        if (tree == node) return merge(left[tree], right[tree]);
+        if (compare(keys[node], ids[node], tree) < 0) left[tree] = remove(left[tree], node);
+        else right[tree] = remove(right[tree], node);
+        return update(tree);
+    }
+
+    private int merge(int a, int b) {
+        if (a == NIL) return b;
+        if (b == NIL) return a;
+        if (priorities[a] > priorities[b]) {
+            right[a] = merge(right[a], b);
+            return update(a);
+        }
+        left[b] = merge(a, left[b]);
+        return update(b);
+    }
+
+    private int compare(long millis, long id, int node) {
+        int c = Long.compare(millis, keys[node]);
+        return (c != 0) ? c : Long.compare(id, ids[node]);
+    }
+
+    private int update(int node) {
+        counts[node] = count(left[node]) + count(right[node]) + 1;
+        return node;
+    }
+
+    private int count(int node) {
+        return (node == NIL) ? 0 : counts[node];
+    }
+
+    private int newNode(int slot, long id, long millis) {
+        int node;
+        if (free != NIL) {
+            node = free;
+            free = left[node];
+        } else {
+            ensureNodes(nodeCount + 1);
+            node = nodeCount++;
+        }
+        keys[node] = millis;
+        ids[node] = id;
+        slots[node] = slot;
+        left[node] = right[node] = NIL;
+        counts[node] = 1;
+        seed ^= seed << 13; //xorshift, the priorities only have to be spread out, not secure
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        priorities[node] = seed;
+        return node;
+    }
+
+    private void ensureNodes(int capacity) {
+        if (capacity <= keys.length) return;
+        int length = Math.max(capacity, keys.length + (keys.length >> 1));
+        keys = Arrays.copyOf(keys, length);
+        ids = Arrays.copyOf(ids, length);
+        slots = Arrays.copyOf(slots, length);
+        left = Arrays.copyOf(left, length);
+        right = Arrays.copyOf(right, length);
+        counts = Arrays.copyOf(counts, length);
+        priorities = Arrays.copyOf(priorities, length);
+    }
+
+    private void ensureSlots(int capacity) {
+        if (capacity <= bySlot.length) return;
+        int old = bySlot.length;
+        bySlot = Arrays.copyOf(bySlot, Math.max(capacity, old * 2));
+        Arrays.fill(bySlot, old, bySlot.length, NIL);
+    }
+}
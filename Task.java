@@ -3,7 +3,6 @@ package Task;
 
 import java.io.Serializable;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 
 //using serializable so we can allow whole object to be saved to a binary file
@@ -11,6 +10,7 @@ public class Task implements Serializable {
 
     private static final long serialVersionUID = 1L; //version number handling for saving and loading data(1L ->VERSION01)
 
+    private long id; //stable id handed out by the TaskManager, 0 until the task is added
     private String description;
     private LocalDateTime deadline;
     private boolean completed;
@@ -37,7 +37,15 @@ public class Task implements Serializable {
         this.completionDate = null;
     }
 
+    //FOR LOADING FROM FILE - puts the history dates back exactly as they were saved
+    public void restoreHistory(LocalDateTime modificationDate, LocalDateTime deletionDate, LocalDateTime completionDate) {
+        this.modificationDate = modificationDate;
+        this.deletionDate = deletionDate;
+        this.completionDate = completionDate;
+    }
+
     //GETTERS
+    public long getId() {return id;}
     public String getDescription() {return description;}
     public LocalDateTime getDeadline() {return deadline;}
     public boolean isCompleted() {return completed;}
@@ -48,6 +56,9 @@ public class Task implements Serializable {
 
 
     //SETTERS
+    public void setId(long id) {
+        this.id = id; //only the TaskManager should call this, the id is not a modification
+    }
     public void setDescription(String description) {
         this.description = description;
         updateModificationDate(); //since we keep a history of the modifications
@@ -85,22 +96,27 @@ public class Task implements Serializable {
 
 
     //FOR CSV FILE
+    public static final String CSV_DATE_PATTERN = "dd-MM-yyyy HH:mm:ss";
+
     public String toCSV(){
-        DateTimeFormatter fmt = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss");
-        String deadline01 = (deadline != null) ? deadline.format(fmt) : "No Deadline";
-        String compDate = (completionDate != null) ? completionDate.format(fmt) : "-";
+        DateFormatCache dates = DateFormatCache.SHARED; //no formatter per call, most dates share their minute with another task
+        //through the getters so subclasses that keep their data elsewhere export the same way
+        LocalDateTime deadline = getDeadline();
+        LocalDateTime completionDate = getCompletionDate();
+        String deadline01 = (deadline != null) ? dates.format(deadline, CSV_DATE_PATTERN) : "No Deadline";
+        String compDate = (completionDate != null) ? dates.format(completionDate, CSV_DATE_PATTERN) : "-";
 
         return String.format("\"%s\",%s,%s,%s,%s", //for ignoring quotes to prevent parsing errors
-                description.replace("\"",  "\"\""),
+                getDescription().replace("\"",  "\"\""),
                 deadline01,
-                completed ? "Yes" : "No",
-                creationDate.format(fmt),
+                isCompleted() ? "Yes" : "No",
+                dates.format(getCreationDate(), CSV_DATE_PATTERN),
                 compDate);
     }
 
 
     @Override
     public String toString() {
-        return description;
+        return getDescription();
     }
 }
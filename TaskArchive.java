@@ -0,0 +1,561 @@
+/* data-layer */
+package TaskManager;
+
+import Task.Task;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+//cold tier for tasks that left the working set: completed long ago, or deleted
+//tasks are appended in blocks of up to BLOCK_TASKS, each block deflated on its own and written to the end of the
+//current segment file, a segment is closed once it passes the size limit and never written again
+//the sparse index keeps one entry per block (segment, offset, id range, date range) in memory and in index.dat,
+//so a query decompresses only the blocks whose ranges match; every block header carries the same entry,
+//a lost or torn index.dat is rebuilt from the segments
+//nothing is ever rewritten: an archived task that comes back and is archived again is just in two blocks,
+//get(id) returns the newest copy
+//tasks waiting for their block are in pending.log, forced before append returns, so a task is on disk in the
+//archive before the caller journals it away; a task that comes back gets a marker in restored.dat instead,
+//its copies archived before the marker are skipped from then on
+public class TaskArchive {
+
+    static final int BLOCK_TASKS = 512;
+    static final long DEFAULT_SEGMENT_BYTES = 8L << 20;
+
+    private static final int MAGIC = 0x54444152; //"TDAR"
+    //magic, raw length, compressed length, count, min id, max id, min date, max date, crc
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 8 + 8 + 8 + 8 + 4;
+    private static final String INDEX = "index.dat";
+    private static final String PENDING_LOG = "pending.log";
+    private static final String RESTORED = "restored.dat";
+    private static final int CACHED_BLOCKS = 8;
+
+    //one block, the sparse index entry
+    private static final class Block {
+        final int segment;
+        final long offset; //of the header in the segment
+        final int rawLength, compressedLength, count;
+        final long minId, maxId;
+        final long minDate, maxDate; //archive dates (completion or deletion), TaskCodec millis
+        long first; //position of its first task among everything ever archived, set when it is added
+
+        Block(int segment, long offset, int rawLength, int compressedLength, int count,
+              long minId, long maxId, long minDate, long maxDate) {
+            this.segment = segment;
+            this.offset = offset;
+            this.rawLength = rawLength;
+            this.compressedLength = compressedLength;
+            this.count = count;
+            this.minId = minId;
+            this.maxId = maxId;
+            this.minDate = minDate;
+            this.maxDate = maxDate;
+        }
+    }
+
+    private final File directory;
+    private final long segmentBytes;
+    private final List<Block> blocks = new ArrayList<>();
+    private final List<Task> pending = new ArrayList<>(); //appended but not yet in a block, also in pending.log
+    private FileChannel pendingLog; //opened on the first append
+    private long pendingLogSize;
+    private final Map<Long, Long> restored = new HashMap<>(); //id -> position, copies before it came back
+    private FileChannel restoredLog;
+    private int segment; //the one being appended to
+    private long segmentSize;
+    private FileChannel channel; //of the current segment, opened on the first write
+    private DataOutputStream index;
+    private long archived; //tasks in blocks
+    private long compressedBytes;
+    private long rawBytes;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    //decompressed blocks, a query that looks up several ids of the same month decompresses it once
+    private final Map<Block, List<Task>> cache = new LinkedHashMap<Block, List<Task>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Block, List<Task>> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
+    };
+
+    public TaskArchive(File directory) {
+        this(directory, DEFAULT_SEGMENT_BYTES);
+    }
+
+    public TaskArchive(File directory, long segmentBytes) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        if (!directory.isDirectory() && !directory.mkdirs()) throw new RuntimeException("Can not create " + directory);
+        open();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    //the date a task is archived under: deleted tasks by their deletion, the rest by their completion
+    static long archiveDate(Task task) {
+        LocalDateTime date = (task.getDeletionDate() != null) ? task.getDeletionDate() : task.getCompletionDate();
+        return TaskCodec.toMillis((date != null) ? date : task.getCreationDate());
+    }
+
+    //WRITING
+    //the task is copied and logged, it stays in memory until its block is full or flush is called
+    public synchronized void append(Task task) {
+        appendAll(Collections.singletonList(task));
+    }
+
+    //one forced write to pending.log for all of them, every full block on the way is written out
+    public synchronized void appendAll(List<Task> tasks) {
+        int logged = pending.size();
+        for (Task task : tasks) {
+            pending.add(TaskCodec.copy(task));
+            if (pending.size() >= BLOCK_TASKS) {
+                writeBlock();
+                logged = 0;
+            }
+        }
+        if (logged < pending.size()) logPending(pending.subList(logged, pending.size()));
+    }
+
+    //the archived copies of the task before now no longer count, get and the queries skip them;
+    //for a task that is back in the list, so it is not in the list and the archive at the same time
+    public synchronized void unarchive(long id) {
+        long position = archived + pending.size();
+        restored.put(id, position);
+        try {
+            if (restoredLog == null) {
+                restoredLog = FileChannel.open(new File(directory, RESTORED).toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            ByteBuffer record = ByteBuffer.allocate(16).putLong(id).putLong(position);
+            record.flip();
+            while (record.hasRemaining()) restoredLog.write(record);
+            restoredLog.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private boolean isLive(long id, long position) {
+        Long from = restored.get(id);
+        return from == null || position >= from;
+    }
+
+    //record layout: length, crc32, the task
+    private void logPending(List<Task> tasks) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(tasks.size() * 80);
+            DataOutputStream out = new DataOutputStream(bytes);
+            ByteArrayOutputStream record = new ByteArrayOutputStream(80);
+            for (Task task : tasks) {
+                record.reset();
+                TaskCodec.writeTask(new DataOutputStream(record), task);
+                CRC32 crc = new CRC32();
+                crc.update(record.toByteArray());
+                out.writeInt(record.size());
+                out.writeInt((int) crc.getValue());
+                record.writeTo(out);
+            }
+            if (pendingLog == null) {
+                pendingLog = FileChannel.open(new File(directory, PENDING_LOG).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                pendingLogSize = pendingLog.size();
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) pendingLog.write(buffer, pendingLogSize + buffer.position());
+            pendingLog.force(false);
+            pendingLogSize += buffer.limit();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //writes the partial block and forces everything to disk
+    public synchronized void flush() {
+        if (!pending.isEmpty()) writeBlock();
+        try {
+            if (channel != null) channel.force(false);
+            if (index != null) index.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void writeBlock() {
+        try {
+            ByteArrayOutputStream raw = new ByteArrayOutputStream(pending.size() * 64);
+            DataOutputStream out = new DataOutputStream(raw);
+            long minId = Long.MAX_VALUE, maxId = Long.MIN_VALUE, minDate = Long.MAX_VALUE, maxDate = Long.MIN_VALUE;
+            for (Task task : pending) {
+                TaskCodec.writeTask(out, task);
+                long date = archiveDate(task);
+                minId = Math.min(minId, task.getId());
+                maxId = Math.max(maxId, task.getId());
+                minDate = Math.min(minDate, date);
+                maxDate = Math.max(maxDate, date);
+            }
+            byte[] bytes = raw.toByteArray();
+            byte[] compressed = deflate(bytes);
+            CRC32 crc = new CRC32();
+            crc.update(compressed);
+
+            if (segmentSize >= segmentBytes) rollSegment();
+            FileChannel ch = channel();
+            long offset = segmentSize;
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + compressed.length);
+            buffer.putInt(MAGIC).putInt(bytes.length).putInt(compressed.length).putInt(pending.size())
+                    .putLong(minId).putLong(maxId).putLong(minDate).putLong(maxDate).putInt((int) crc.getValue())
+                    .put(compressed).flip();
+            while (buffer.hasRemaining()) ch.write(buffer, offset + buffer.position());
+            ch.force(false); //the block is on disk before its tasks leave pending.log
+            segmentSize += buffer.limit();
+
+            Block block = new Block(segment, offset, bytes.length, compressed.length, pending.size(), minId, maxId, minDate, maxDate);
+            writeIndexEntry(block);
+            add(block);
+            pending.clear();
+            if (pendingLog != null) {
+                pendingLog.truncate(0);
+                pendingLogSize = 0;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private byte[] deflate(byte[] bytes) {
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 3 + 64);
+        byte[] chunk = new byte[1 << 14];
+        while (!deflater.finished()) out.write(chunk, 0, deflater.deflate(chunk));
+        return out.toByteArray();
+    }
+
+    private void add(Block block) {
+        block.first = archived;
+        blocks.add(block);
+        archived += block.count;
+        compressedBytes += block.compressedLength;
+        rawBytes += block.rawLength;
+    }
+
+    //SEGMENTS
+    private File segmentFile(int number) {
+        return new File(directory, String.format("segment-%06d.arc", number));
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(segmentFile(segment).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            segmentSize = channel.size();
+        }
+        return channel;
+    }
+
+    private void rollSegment() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+            channel = null;
+        }
+        segment++;
+        segmentSize = 0;
+    }
+
+    //INDEX
+    private void writeIndexEntry(Block block) throws IOException {
+        if (index == null) {
+            index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(directory, INDEX), true)));
+        }
+        index.writeInt(block.segment);
+        index.writeLong(block.offset);
+        index.writeInt(block.rawLength);
+        index.writeInt(block.compressedLength);
+        index.writeInt(block.count);
+        index.writeLong(block.minId);
+        index.writeLong(block.maxId);
+        index.writeLong(block.minDate);
+        index.writeLong(block.maxDate);
+    }
+
+    //index.dat first, then every segment is checked against it: blocks written after the last good index entry
+    //(a crash between the block and its entry) are picked up from their headers, a torn block at the end is cut off
+    private void open() {
+        List<Block> indexed = new ArrayList<>();
+        File indexFile = new File(directory, INDEX);
+        if (indexFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+                while (true) {
+                    indexed.add(new Block(in.readInt(), in.readLong(), in.readInt(), in.readInt(), in.readInt(),
+                            in.readLong(), in.readLong(), in.readLong(), in.readLong()));
+                }
+            } catch (EOFException end) {
+                //a torn last entry is dropped, the scan below finds its block again
+            } catch (IOException e) {
+                e.printStackTrace();
+                indexed.clear();
+            }
+        }
+
+        int known = 0;
+        boolean rewrite = false;
+        for (int number = 0; segmentFile(number).exists(); number++) {
+            segment = number;
+            long offset = 0;
+            long length = segmentFile(number).length();
+            while (known < indexed.size() && indexed.get(known).segment == number) {
+                Block block = indexed.get(known++);
+                if (block.offset != offset || offset + HEADER_SIZE + block.compressedLength > length) { //never made it to disk
+                    rewrite = true;
+                    while (known < indexed.size() && indexed.get(known).segment == number) known++;
+                    break;
+                }
+                add(block);
+                offset += HEADER_SIZE + block.compressedLength;
+            }
+            try (FileChannel ch = FileChannel.open(segmentFile(number).toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                while (offset < length) {
+                    Block block = readHeader(ch, number, offset, length);
+                    if (block == null) { //torn write, the tasks in it were never reported as archived
+                        ch.truncate(offset);
+                        break;
+                    }
+                    add(block);
+                    rewrite = true;
+                    offset += HEADER_SIZE + block.compressedLength;
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            segmentSize = offset;
+        }
+        if (rewrite || known < indexed.size()) rewriteIndex();
+        readPendingLog();
+        readRestored();
+    }
+
+    //the tasks that never made it into a block; if the crash came after their block was written but before the
+    //log was emptied, they are that last block and are not taken twice
+    private void readPendingLog() {
+        File file = new File(directory, PENDING_LOG);
+        if (!file.exists()) return;
+        List<Task> logged = new ArrayList<>();
+        long good = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int length = in.readInt();
+                int crc = in.readInt();
+                if (length < 0 || length > file.length()) break;
+                byte[] record = new byte[length];
+                in.readFully(record);
+                CRC32 check = new CRC32();
+                check.update(record);
+                if ((int) check.getValue() != crc) break;
+                logged.add(TaskCodec.readTask(new DataInputStream(new ByteArrayInputStream(record))));
+                good += 8 + length;
+            }
+        } catch (EOFException end) {
+            //a torn last record was never reported as archived
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (!logged.isEmpty() && !blocks.isEmpty() && sameTasks(read(blocks.get(blocks.size() - 1)), logged)) {
+            logged.clear();
+            good = 0;
+        }
+        pending.addAll(logged);
+        try {
+            pendingLog = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+            pendingLog.truncate(good);
+            pendingLogSize = good;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean sameTasks(List<Task> block, List<Task> logged) {
+        if (block.size() != logged.size()) return false;
+        for (int i = 0; i < block.size(); i++) {
+            if (block.get(i).getId() != logged.get(i).getId()) return false;
+        }
+        return true;
+    }
+
+    private void readRestored() {
+        File file = new File(directory, RESTORED);
+        if (!file.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) restored.put(in.readLong(), in.readLong());
+        } catch (EOFException end) {
+            //a torn last marker was never reported
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Block readHeader(FileChannel ch, int number, long offset, long length) throws IOException {
+        if (length - offset < HEADER_SIZE) return null;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && ch.read(header, offset + header.position()) > 0) { }
+        header.flip();
+        if (header.getInt() != MAGIC) return null;
+        int rawLength = header.getInt();
+        int compressedLength = header.getInt();
+        int count = header.getInt();
+        Block block = new Block(number, offset, rawLength, compressedLength, count,
+                header.getLong(), header.getLong(), header.getLong(), header.getLong());
+        int crc = header.getInt();
+        if (length - offset - HEADER_SIZE < compressedLength) return null;
+        ByteBuffer body = ByteBuffer.allocate(compressedLength);
+        while (body.hasRemaining() && ch.read(body, offset + HEADER_SIZE + body.position()) > 0) { }
+        CRC32 check = new CRC32();
+        check.update(body.array());
+        return ((int) check.getValue() == crc) ? block : null;
+    }
+
+    private void rewriteIndex() {
+        File indexFile = new File(directory, INDEX);
+        File tmp = new File(directory, INDEX + ".tmp");
+        List<Block> all = new ArrayList<>(blocks);
+        try {
+            index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            for (Block block : all) writeIndexEntry(block);
+            index.close();
+            index = null;
+            java.nio.file.Files.move(tmp.toPath(), indexFile.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //READING
+    private List<Task> read(Block block) {
+        List<Task> tasks = cache.get(block);
+        if (tasks != null) return tasks;
+        byte[] compressed = new byte[block.compressedLength];
+        try (FileChannel ch = FileChannel.open(segmentFile(block.segment).toPath(), StandardOpenOption.READ)) {
+            ByteBuffer body = ByteBuffer.wrap(compressed);
+            while (body.hasRemaining() && ch.read(body, block.offset + HEADER_SIZE + body.position()) > 0) { }
+            Inflater inflater = new Inflater();
+            byte[] raw = new byte[block.rawLength];
+            try {
+                inflater.setInput(compressed);
+                int done = 0;
+                while (done < raw.length && !inflater.finished()) done += inflater.inflate(raw, done, raw.length - done);
+            } finally {
+                inflater.end();
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+            tasks = new ArrayList<>(block.count);
+            for (int i = 0; i < block.count; i++) tasks.add(TaskCodec.readTask(in));
+        } catch (IOException | DataFormatException e) {
+            throw new RuntimeException("Archive block at " + block.offset + " of segment " + block.segment + " is damaged", e);
+        }
+        cache.put(block, tasks);
+        return tasks;
+    }
+
+    //newest archived copy of the task, null if it was never archived; copies, changing them changes nothing
+    //null as well for a task that came back after its last archiving
+    public synchronized Task get(long id) {
+        for (int i = pending.size() - 1; i >= 0; i--) {
+            if (pending.get(i).getId() == id) return isLive(id, archived + i) ? TaskCodec.copy(pending.get(i)) : null;
+        }
+        for (int b = blocks.size() - 1; b >= 0; b--) {
+            Block block = blocks.get(b);
+            if (id < block.minId || id > block.maxId) continue; //the sparse index rules out most blocks
+            List<Task> tasks = read(block);
+            for (int i = tasks.size() - 1; i >= 0; i--) {
+                if (tasks.get(i).getId() == id) return isLive(id, block.first + i) ? TaskCodec.copy(tasks.get(i)) : null;
+            }
+        }
+        return null;
+    }
+
+    //tasks completed or deleted in [from, to), oldest block first
+    public synchronized List<Task> archivedBetween(LocalDateTime from, LocalDateTime to) {
+        long start = TaskCodec.toMillis(from);
+        long end = TaskCodec.toMillis(to);
+        return query(start, end, task -> {
+            long date = archiveDate(task);
+            return date >= start && date < end;
+        }, Integer.MAX_VALUE);
+    }
+
+    //every archived task that passes the filter, up to limit
+    public synchronized List<Task> search(Predicate<Task> filter, int limit) {
+        return query(Long.MIN_VALUE, Long.MAX_VALUE, filter, limit);
+    }
+
+    private List<Task> query(long from, long to, Predicate<Task> filter, int limit) {
+        List<Task> found = new ArrayList<>();
+        for (Block block : blocks) {
+            if (found.size() >= limit) return found;
+            if (block.maxDate < from || block.minDate >= to) continue;
+            List<Task> tasks = read(block);
+            for (int i = 0; i < tasks.size() && found.size() < limit; i++) {
+                Task task = tasks.get(i);
+                if (isLive(task.getId(), block.first + i) && filter.test(task)) found.add(TaskCodec.copy(task));
+            }
+        }
+        for (int i = 0; i < pending.size() && found.size() < limit; i++) {
+            Task task = pending.get(i);
+            if (isLive(task.getId(), archived + i) && filter.test(task)) found.add(TaskCodec.copy(task));
+        }
+        return found;
+    }
+
+    //STATS
+    public synchronized long size() {
+        return archived + pending.size();
+    }
+
+    public synchronized int blockCount() {
+        return blocks.size();
+    }
+
+    public synchronized int segmentCount() {
+        return blocks.isEmpty() ? 0 : segment + 1;
+    }
+
+    public synchronized long compressedBytes() {
+        return compressedBytes;
+    }
+
+    public synchronized long rawBytes() {
+        return rawBytes;
+    }
+
+    public synchronized void close() {
+        flush();
+        try {
+            if (channel != null) channel.close();
+            if (index != null) index.close();
+            if (pendingLog != null) pendingLog.close();
+            if (restoredLog != null) restoredLog.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+        index = null;
+        pendingLog = null;
+        restoredLog = null;
+        deflater.end();
+    }
+}
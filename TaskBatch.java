@@ -0,0 +1,128 @@
+/* logic-layer */
+package TaskManager;
+
+import Task.Task;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+//many changes applied as one: taskManager.beginBatch().completeWhere(...).deleteWhere(...).commit()
+//nothing happens until commit, then every operation runs in order with deletes swept out in one pass,
+//the journal written with one fsync and listeners told once through batchCommitted()
+//on a ConcurrentTaskManager the whole commit holds the write lock, readers see all of it or none of it
+public class TaskBatch {
+
+    private interface Operation {
+        int apply(TaskManager manager); //returns how many tasks it touched
+    }
+
+    private final TaskManager manager;
+    private final List<Operation> operations = new ArrayList<>();
+    private int[] touched; //per operation, filled by the commit
+    private boolean committed;
+
+    TaskBatch(TaskManager manager) {
+        this.manager = manager;
+    }
+
+    //BY ID
+    public TaskBatch add(Task task) {
+        return queue(m -> {
+            m.addTask(task);
+            return 1;
+        });
+    }
+
+    public TaskBatch update(long id, String description, LocalDateTime deadline) {
+        return queue(m -> m.updateTaskById(id, description, deadline) ? 1 : 0);
+    }
+
+    public TaskBatch setCompleted(Collection<Long> ids, boolean completed) {
+        List<Long> copy = new ArrayList<>(ids);
+        return queue(m -> {
+            int touched = 0;
+            for (long id : copy) if (m.setCompletedById(id, completed)) touched++;
+            return touched;
+        });
+    }
+
+    public TaskBatch delete(Collection<Long> ids) {
+        List<Long> copy = new ArrayList<>(ids);
+        return queue(m -> {
+            int touched = 0;
+            for (long id : copy) if (m.deleteTaskById(id)) touched++;
+            return touched;
+        });
+    }
+
+    //BY PREDICATE, tested against the tasks as they are when the operation runs
+    public TaskBatch completeWhere(Predicate<Task> filter) {
+        return queue(m -> {
+            int touched = 0;
+            for (long id : m.idsWhere(filter.and(task -> !task.isCompleted()))) {
+                if (m.setCompletedById(id, true)) touched++;
+            }
+            return touched;
+        });
+    }
+
+    public TaskBatch deleteWhere(Predicate<Task> filter) {
+        return queue(m -> {
+            int touched = 0;
+            for (long id : m.idsWhere(filter)) if (m.deleteTaskById(id)) touched++;
+            return touched;
+        });
+    }
+
+    //new deadline = reschedule(old deadline), e.g. d -> d.plusDays(7), tasks without a deadline get reschedule(null)
+    public TaskBatch rescheduleWhere(Predicate<Task> filter, UnaryOperator<LocalDateTime> reschedule) {
+        return queue(m -> {
+            int touched = 0;
+            for (long id : m.idsWhere(filter)) {
+                Task task = m.getTask(id);
+                if (m.updateTaskById(id, task.getDescription(), reschedule.apply(task.getDeadline()))) touched++;
+            }
+            return touched;
+        });
+    }
+
+    private TaskBatch queue(Operation operation) {
+        if (committed) throw new IllegalStateException("Batch was already committed");
+        operations.add(operation);
+        return this;
+    }
+
+    public int size() {
+        return operations.size();
+    }
+
+    //applies everything, returns how many tasks were touched in total
+    //an operation that throws stops the batch, the ones before it stay applied
+    public int commit() {
+        if (committed) throw new IllegalStateException("Batch was already committed");
+        committed = true;
+        return manager.commitBatch(this);
+    }
+
+    //how many tasks operation number index (in the order they were queued) touched, -1 if it never ran
+    //because the batch is not committed yet or an earlier operation threw
+    public int getTouched(int index) {
+        return (touched != null) ? touched[index] : -1;
+    }
+
+    int applyAll(TaskManager target) {
+        touched = new int[operations.size()];
+        Arrays.fill(touched, -1);
+        int total = 0;
+        for (int i = 0; i < operations.size(); i++) {
+            touched[i] = operations.get(i).apply(target);
+            total += touched[i];
+        }
+        return total;
+    }
+}
@@ -0,0 +1,24 @@
+/* data-layer */
+package TaskManager;
+
+import Task.Task;
+
+//gets told about every change so views can update the rows that changed instead of reloading everything
+//positions are in the same order as getTasksView(), deleted tasks already left out
+public interface TaskChangeListener {
+
+    void tasksAdded(int firstPosition, int lastPosition);
+
+    void taskUpdated(int position, Task task);
+
+    //position the task had right before it was deleted
+    void taskDeleted(int position, Task task);
+
+    //the whole list was replaced, e.g. by loadFromFile
+    void tasksReloaded();
+
+    //a TaskBatch changed any number of tasks at once, positions are not given, re-read what is shown
+    default void batchCommitted() {
+        tasksReloaded();
+    }
+}
@@ -0,0 +1,429 @@
+/* presentation-layer */
+package Cli;
+
+import Task.Task;
+import TaskManager.CsvExporter;
+import TaskManager.TaskBatch;
+import TaskManager.TaskJournal;
+import TaskManager.TaskManager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+//headless command line front end for scripts and cron jobs, one command per line, one answer line per command:
+//  add <deadline|-> <description>              added <id>
+//  update <id> <deadline|-> <description>      updated <id> | missing <id>
+//  complete <id>, reopen <id>, delete <id>     completed/reopened/deleted <id> | missing <id>
+//  query [all|pending|completed|overdue] [limit]   a line per task (id, completed, deadline, description, tab separated),
+//  search <words>                                  then "end <count>"
+//  export <file.csv[.gz]> [all|pending|completed]  exported <rows>
+//  stats                                           stats <TaskStatistics.toString()>
+//deadlines like 2030-01-31T09:00, "-" for none; empty lines and lines starting with # are skipped
+//a line that makes no sense is answered with "error <line number>: <why>" and the rest goes on
+//changes are applied as TaskBatches of up to batchSize commands, one journal flush per batch instead of per
+//command; a query, export or stats commits what came before it first, so it sees every earlier line
+//pipelined: a reader thread parses the next batch while the current one is committed and answered,
+//a batch is also handed over early when the input has nothing more ready, so a slow pipe still gets its answers
+public class TaskCli {
+
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    private static final Pattern SPACES = Pattern.compile("\\s+"); //String.split would compile it again for every line
+    private static final List<Command> END = new ArrayList<>(); //marks the end of the input in the queue
+
+    private final TaskManager manager;
+    private final int batchSize;
+    private int errors;
+    private long commands;
+
+    public TaskCli(TaskManager manager, int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize below 1");
+        this.manager = manager;
+        this.batchSize = batchSize;
+    }
+
+    //COMMANDS
+    private enum Kind { ADD, UPDATE, COMPLETE, REOPEN, DELETE, QUERY, SEARCH, EXPORT, STATS, ERROR }
+
+    //one parsed line
+    private static final class Command {
+        final Kind kind;
+        final long line;
+        long id;
+        LocalDateTime deadline;
+        String text; //description, query words, query name or file name; the message for ERROR
+        int limit = Integer.MAX_VALUE;
+        Predicate<Task> filter = CsvExporter.ALL; //what an EXPORT writes
+        Task task; //the task an ADD queued, its id is known after the commit
+
+        Command(Kind kind, long line) {
+            this.kind = kind;
+            this.line = line;
+        }
+
+        boolean isChange() {
+            return kind.ordinal() <= Kind.DELETE.ordinal();
+        }
+    }
+
+    //null for lines to skip, an ERROR command for a bad one
+    private static Command parse(String input, long line) {
+        String text = input.strip();
+        if (text.isEmpty() || text.startsWith("#")) return null;
+        String[] words = SPACES.split(text, 2);
+        String rest = (words.length > 1) ? words[1] : "";
+        try {
+            switch (words[0].toLowerCase()) {
+                case "add": {
+                    Command command = new Command(Kind.ADD, line);
+                    String[] parts = split(rest, 2, "add <deadline|-> <description>");
+                    command.deadline = parseDeadline(parts[0]);
+                    command.text = parts[1];
+                    return command;
+                }
+                case "update": {
+                    Command command = new Command(Kind.UPDATE, line);
+                    String[] parts = split(rest, 3, "update <id> <deadline|-> <description>");
+                    command.id = parseId(parts[0]);
+                    command.deadline = parseDeadline(parts[1]);
+                    command.text = parts[2];
+                    return command;
+                }
+                case "complete": return withId(Kind.COMPLETE, line, rest);
+                case "reopen": return withId(Kind.REOPEN, line, rest);
+                case "delete": return withId(Kind.DELETE, line, rest);
+                case "query": {
+                    Command command = new Command(Kind.QUERY, line);
+                    String[] parts = rest.isEmpty() ? new String[0] : SPACES.split(rest);
+                    if (parts.length > 2) throw new IllegalArgumentException("Use query [all|pending|completed|overdue] [limit]");
+                    command.text = (parts.length > 0) ? parts[0].toLowerCase() : "all";
+                    if (!List.of("all", "pending", "completed", "overdue").contains(command.text)) {
+                        throw new IllegalArgumentException("Unknown query " + parts[0]);
+                    }
+                    if (parts.length > 1) command.limit = (int) Math.min(Integer.MAX_VALUE, parseId(parts[1]));
+                    return command;
+                }
+                case "search": {
+                    if (rest.isEmpty()) throw new IllegalArgumentException("Use search <words>");
+                    Command command = new Command(Kind.SEARCH, line);
+                    command.text = rest;
+                    return command;
+                }
+                case "export": {
+                    Command command = new Command(Kind.EXPORT, line);
+                    String[] parts = rest.isEmpty() ? new String[0] : SPACES.split(rest);
+                    if (parts.length < 1 || parts.length > 2) throw new IllegalArgumentException("Use export <file> [all|pending|completed]");
+                    command.text = parts[0];
+                    if (parts.length > 1) command.filter = exportFilter(parts[1]);
+                    return command;
+                }
+                case "stats": return new Command(Kind.STATS, line);
+                default: throw new IllegalArgumentException("Unknown command " + words[0]);
+            }
+        } catch (IllegalArgumentException e) {
+            Command error = new Command(Kind.ERROR, line);
+            error.text = e.getMessage();
+            return error;
+        }
+    }
+
+    private static Command withId(Kind kind, long line, String rest) {
+        Command command = new Command(kind, line);
+        command.id = parseId(rest);
+        return command;
+    }
+
+    private static String[] split(String text, int count, String usage) {
+        String[] parts = SPACES.split(text, count);
+        if (parts.length < count || parts[count - 1].isEmpty()) throw new IllegalArgumentException("Use " + usage);
+        return parts;
+    }
+
+    private static long parseId(String text) {
+        try {
+            long value = Long.parseLong(text.strip());
+            if (value < 0) throw new IllegalArgumentException("Negative number " + text);
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad number: " + text);
+        }
+    }
+
+    private static LocalDateTime parseDeadline(String text) {
+        if (text.equals("-")) return null;
+        try {
+            return LocalDateTime.parse(text);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Bad date " + text + ", expected e.g. 2030-01-31T09:00 or -");
+        }
+    }
+
+    private static Predicate<Task> exportFilter(String text) {
+        switch (text.toLowerCase()) {
+            case "all": return CsvExporter.ALL;
+            case "pending": return CsvExporter.PENDING;
+            case "completed": return CsvExporter.COMPLETED;
+            default: throw new IllegalArgumentException("Unknown export filter " + text);
+        }
+    }
+
+    //RUNNING
+    //reads every command from in and answers on out, returns how many lines of this input were errors
+    public int run(Reader in, Writer out) throws IOException {
+        int errorsBefore = errors; //errors counts every run, the caller sums the runs
+        BlockingQueue<List<Command>> parsed = new ArrayBlockingQueue<>(2); //the reader stays at most two batches ahead
+        BufferedReader reader = (in instanceof BufferedReader) ? (BufferedReader) in : new BufferedReader(in, 1 << 16);
+        IOException[] readFailure = new IOException[1];
+        Thread parser = new Thread(() -> {
+            try {
+                List<Command> chunk = new ArrayList<>();
+                long line = 0;
+                String text;
+                while ((text = reader.readLine()) != null) {
+                    Command command = parse(text, ++line);
+                    if (command != null) chunk.add(command);
+                    if (chunk.size() >= batchSize || (!chunk.isEmpty() && !reader.ready())) {
+                        parsed.put(chunk);
+                        chunk = new ArrayList<>();
+                    }
+                }
+                if (!chunk.isEmpty()) parsed.put(chunk);
+            } catch (IOException e) {
+                readFailure[0] = e;
+            } catch (InterruptedException e) {
+                return; //the answering side gave up, nobody is waiting for the rest
+            }
+            try {
+                parsed.put(END);
+            } catch (InterruptedException ignored) {
+            }
+        }, "todo-cli-reader");
+        parser.setDaemon(true);
+        parser.start();
+
+        BufferedWriter writer = (out instanceof BufferedWriter) ? (BufferedWriter) out : new BufferedWriter(out, 1 << 16);
+        try {
+            List<Command> chunk;
+            while ((chunk = parsed.take()) != END) {
+                apply(chunk, writer);
+                writer.flush(); //answers leave once per batch, not once per line
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            parser.interrupt();
+        }
+        if (readFailure[0] != null) throw readFailure[0];
+        return errors - errorsBefore;
+    }
+
+    private void apply(List<Command> chunk, BufferedWriter out) throws IOException {
+        TaskBatch batch = manager.beginBatch();
+        List<Command> queued = new ArrayList<>();
+        for (Command command : chunk) {
+            commands++;
+            if (command.isChange() || command.kind == Kind.ERROR) { //a bad line is answered in its place, it does not end the batch
+                if (command.isChange()) queue(batch, command);
+                queued.add(command);
+                continue;
+            }
+            if (!queued.isEmpty()) {
+                commit(batch, queued, out);
+                batch = manager.beginBatch();
+                queued.clear();
+            }
+            try {
+                answer(command, out);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                error(out, command.line, String.valueOf(e.getMessage()));
+            }
+        }
+        if (!queued.isEmpty()) commit(batch, queued, out);
+    }
+
+    private static void queue(TaskBatch batch, Command command) {
+        switch (command.kind) {
+            case ADD:
+                command.task = new Task(command.text, command.deadline);
+                batch.add(command.task);
+                break;
+            case UPDATE: batch.update(command.id, command.text, command.deadline); break;
+            case COMPLETE: batch.setCompleted(List.of(command.id), true); break;
+            case REOPEN: batch.setCompleted(List.of(command.id), false); break;
+            default: batch.delete(List.of(command.id)); break;
+        }
+    }
+
+    //one journal flush for everything queued; an operation that threw stops the batch, it and the ones after it are errors
+    //queued bad lines get their error in between, in input order
+    private void commit(TaskBatch batch, List<Command> queued, BufferedWriter out) throws IOException {
+        String failure = null;
+        try {
+            if (batch.size() > 0) batch.commit();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            failure = String.valueOf(e.getMessage());
+        }
+        int operation = 0;
+        for (Command command : queued) {
+            if (command.kind == Kind.ERROR) {
+                error(out, command.line, command.text);
+                continue;
+            }
+            int touched = batch.getTouched(operation++);
+            if (touched < 0) {
+                error(out, command.line, (failure != null) ? "not applied, " + failure : "not applied");
+            } else if (command.kind == Kind.ADD) {
+                out.write("added " + command.task.getId());
+                out.newLine();
+            } else {
+                out.write(((touched > 0) ? pastTense(command.kind) : "missing") + " " + command.id);
+                out.newLine();
+            }
+        }
+    }
+
+    private static String pastTense(Kind kind) {
+        switch (kind) {
+            case UPDATE: return "updated";
+            case COMPLETE: return "completed";
+            case REOPEN: return "reopened";
+            default: return "deleted";
+        }
+    }
+
+    private void answer(Command command, BufferedWriter out) throws IOException {
+        switch (command.kind) {
+            case QUERY: writeTasks(querySource(command.text), command.limit, out); break;
+            case SEARCH: writeTasks(manager.search(command.text, Integer.MAX_VALUE), Integer.MAX_VALUE, out); break;
+            case EXPORT:
+                out.write("exported " + manager.exportUsingCSV(new File(command.text), command.filter));
+                out.newLine();
+                break;
+            case STATS:
+                out.write("stats " + manager.getStatistics());
+                out.newLine();
+                break;
+            default: error(out, command.line, command.text); break;
+        }
+    }
+
+    //the view and the index lists are read as they are, no copy
+    private Iterable<Task> querySource(String which) {
+        switch (which) {
+            case "pending": return manager.getIncompleteTasks();
+            case "completed": return manager.getCompletedTasks();
+            case "overdue": return manager.getOverdueTasks();
+            default: return manager.view();
+        }
+    }
+
+    private static void writeTasks(Iterable<Task> tasks, int limit, BufferedWriter out) throws IOException {
+        int count = 0;
+        for (Task task : tasks) {
+            if (count == limit) break;
+            out.write(Long.toString(task.getId()));
+            out.write('\t');
+            out.write(task.isCompleted() ? "done" : "open");
+            out.write('\t');
+            out.write((task.getDeadline() != null) ? task.getDeadline().toString() : "-");
+            out.write('\t');
+            out.write(oneLine(task.getDescription()));
+            out.newLine();
+            count++;
+        }
+        out.write("end " + count);
+        out.newLine();
+    }
+
+    //a tab or line break in a description would break the columns
+    private static String oneLine(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\t' || c == '\n' || c == '\r') return text.replaceAll("[\t\r\n]", " ");
+        }
+        return text;
+    }
+
+    private void error(BufferedWriter out, long line, String message) throws IOException {
+        errors++;
+        out.write("error " + line + ": " + message);
+        out.newLine();
+    }
+
+    public long getCommandCount() {
+        return commands;
+    }
+
+    //the same as Main, for jdks that cannot compile Main's compact source file
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    //java -cp out Main [--file todo.ser] [--batch 4096] [command file ...], no file or "-" reads stdin, see Main for the build
+    //exit status 1 if any line was an error, 2 if the arguments or the input could not be read
+    public static int run(String[] args) {
+        String file = "todo.ser";
+        int batchSize = DEFAULT_BATCH_SIZE;
+        List<String> inputs = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--file") && i + 1 < args.length) file = args[++i];
+                else if (args[i].equals("--batch") && i + 1 < args.length) batchSize = Integer.parseInt(args[++i]);
+                else if (args[i].startsWith("--")) throw new IllegalArgumentException("Unknown option " + args[i]);
+                else inputs.add(args[i]);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: [--file todo.ser] [--batch " + DEFAULT_BATCH_SIZE + "] [command file ...]");
+            return 2;
+        }
+        if (inputs.isEmpty()) inputs.add("-");
+
+        boolean existed = new File(file).exists();
+        TaskManager manager = new TaskManager(file, TaskJournal.DEFAULT_GROUP_COMMIT, TaskJournal.DEFAULT_COMPACTION_THRESHOLD);
+        manager.loadFromFile(); //the snapshot is mapped, tasks are only built when a command needs them
+        if (!existed) manager.saveToFile(); //from here on every batch goes to the journal
+        TaskCli cli = new TaskCli(manager, batchSize);
+        Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        long start = System.nanoTime();
+        int errors = 0;
+        try {
+            for (String input : inputs) {
+                if (input.equals("-")) {
+                    errors += cli.run(new InputStreamReader(System.in, StandardCharsets.UTF_8), out);
+                    continue;
+                }
+                try (Reader in = new InputStreamReader(new FileInputStream(input), StandardCharsets.UTF_8)) {
+                    errors += cli.run(in, out);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read commands: " + e.getMessage());
+            return 2;
+        } finally {
+            manager.close();
+        }
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        System.err.printf("%d commands in %d ms (%d/s), %d errors%n", cli.getCommandCount(), millis,
+                cli.getCommandCount() * 1000 / millis, errors);
+        return (errors > 0) ? 1 : 0;
+    }
+}
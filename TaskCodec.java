@@ -0,0 +1,77 @@
+/* data-layer */
+package TaskManager;
+
+import Task.Task;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+//compact binary form of a single task, shared by the journal and the snapshot
+//dates are stored as epoch millis instead of whole LocalDateTime objects
+final class TaskCodec {
+
+    static final long NO_DATE = Long.MIN_VALUE; //marker for a null date
+
+    private TaskCodec() {}
+
+    //the description is an int length and its utf-8 bytes, writeUTF stops at 64 KB and a longer one is valid input
+    static void writeTask(DataOutput out, Task task) throws IOException {
+        out.writeLong(task.getId());
+        writeText(out, task.getDescription());
+        out.writeLong(toMillis(task.getDeadline()));
+        out.writeBoolean(task.isCompleted());
+        out.writeLong(toMillis(task.getCreationDate()));
+        out.writeLong(toMillis(task.getModificationDate()));
+        out.writeLong(toMillis(task.getDeletionDate()));
+        out.writeLong(toMillis(task.getCompletionDate()));
+    }
+
+    static Task readTask(DataInput in) throws IOException {
+        long id = in.readLong();
+        String description = readText(in);
+        LocalDateTime deadline = fromMillis(in.readLong());
+        boolean completed = in.readBoolean();
+        LocalDateTime created = fromMillis(in.readLong());
+
+        Task task = new Task(description, deadline, completed, created);
+        task.restoreHistory(fromMillis(in.readLong()), fromMillis(in.readLong()), fromMillis(in.readLong()));
+        task.setId(id);
+        return task;
+    }
+
+    static void writeText(DataOutput out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readText(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Negative text length " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //detached copy with the same id and history, e.g. of a flyweight view that is about to change
+    static Task copy(Task task) {
+        Task copy = new Task(task.getDescription(), task.getDeadline(), task.isCompleted(), task.getCreationDate());
+        copy.restoreHistory(task.getModificationDate(), task.getDeletionDate(), task.getCompletionDate());
+        copy.setId(task.getId());
+        return copy;
+    }
+
+    static long toMillis(LocalDateTime date) {
+        return (date != null) ? date.toInstant(ZoneOffset.UTC).toEpochMilli() : NO_DATE;
+    }
+
+    static LocalDateTime fromMillis(long millis) {
+        if (millis == NO_DATE) return null;
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000L),
+                (int) Math.floorMod(millis, 1000L) * 1_000_000, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,345 @@
+/* data-layer */
+package TaskManager;
+
+import Task.Task;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.BitSet;
+
+//struct-of-arrays task storage: one long[] per timestamp (epoch millis, TaskCodec.NO_DATE for none),
+//a BitSet for completed and the descriptions as utf-8 in one byte heap, equal descriptions stored once
+//a row number stays valid until the list releases the row, released rows are handed out again by the next appends,
+//so deleting and adding tasks does not grow the columns; the task list maps its slots to rows the same way it
+//maps them to snapshot rows, a flyweight kept past the release of its row reads whatever task reuses it
+//descriptions are counted by the rows using them; once the unused ones take up more than half the heap
+//the heap is packed again, so editing and deleting tasks does not grow it forever
+//a row costs ~56 bytes plus its description instead of a Task with five LocalDateTime objects
+final class TaskColumns {
+
+    private long[] ids = new long[16];
+    private long[] deadlines = new long[16];
+    private long[] created = new long[16];
+    private long[] modified = new long[16];
+    private long[] deleted = new long[16];
+    private long[] completedAt = new long[16];
+    private int[] descriptions = new int[16]; //index into the distinct descriptions, -1 for a released row
+    private final BitSet completed = new BitSet();
+    private int size;
+    private int[] free = new int[16]; //released rows, the next appends take them first
+    private int freeCount;
+
+    //description pool: distinct descriptions as (offset, length) into the byte heap
+    private byte[] heap = new byte[1 << 10];
+    private int heapSize;
+    private int[] offsets = new int[16];
+    private int[] lengths = new int[16];
+    private int[] hashes = new int[16];
+    private int[] refs = new int[16]; //rows using each description, 0 = garbage until the next pack or reuse
+    private int distinct;
+    private int garbage; //heap bytes of descriptions no row uses
+    private int[] table = new int[32]; //open addressing, distinct index + 1, 0 = empty
+
+    //rows in use, released ones are not counted
+    int size() {
+        return size - freeCount;
+    }
+
+    //copies the task into a new row and returns the row
+    int append(Task task) {
+        int row = newRow();
+        write(row, task);
+        return row;
+    }
+
+    //straight from a snapshot record, the description bytes are pooled without becoming a String
+    int appendRaw(long id, byte[] description, long deadline, boolean isCompleted,
+                  long createdMillis, long modifiedMillis, long deletedMillis, long completedMillis) {
+        int row = newRow();
+        ids[row] = id;
+        descriptions[row] = pool(description);
+        refs[descriptions[row]]++;
+        deadlines[row] = deadline;
+        completed.set(row, isCompleted);
+        created[row] = createdMillis;
+        modified[row] = modifiedMillis;
+        deleted[row] = deletedMillis;
+        completedAt[row] = completedMillis;
+        return row;
+    }
+
+    //overwrites a row with the state of the task
+    void write(int row, Task task) {
+        if (task instanceof ColumnTask && ((ColumnTask) task).isRow(this, row)) return;
+        ids[row] = task.getId();
+        setDescription(row, task.getDescription());
+        deadlines[row] = TaskCodec.toMillis(task.getDeadline());
+        completed.set(row, task.isCompleted());
+        created[row] = TaskCodec.toMillis(task.getCreationDate());
+        modified[row] = TaskCodec.toMillis(task.getModificationDate());
+        deleted[row] = TaskCodec.toMillis(task.getDeletionDate());
+        completedAt[row] = TaskCodec.toMillis(task.getCompletionDate());
+    }
+
+    //flyweight over one row, nothing is copied
+    Task view(int row) {
+        return new ColumnTask(this, row);
+    }
+
+    private int newRow() {
+        if (freeCount > 0) {
+            int row = free[--freeCount];
+            descriptions[row] = -1;
+            return row;
+        }
+        if (size == ids.length) {
+            int grown = size + (size >> 1);
+            ids = Arrays.copyOf(ids, grown);
+            deadlines = Arrays.copyOf(deadlines, grown);
+            created = Arrays.copyOf(created, grown);
+            modified = Arrays.copyOf(modified, grown);
+            deleted = Arrays.copyOf(deleted, grown);
+            completedAt = Arrays.copyOf(completedAt, grown);
+            descriptions = Arrays.copyOf(descriptions, grown);
+        }
+        descriptions[size] = -1;
+        return size++;
+    }
+
+    //the row left the list, its description is no longer held by it; the row reads as empty until it is reused
+    void release(int row) {
+        unref(descriptions[row]);
+        descriptions[row] = -1;
+        if (freeCount == free.length) free = Arrays.copyOf(free, freeCount * 2);
+        free[freeCount++] = row;
+    }
+
+    //COLUMN ACCESS
+    long id(int row) {return ids[row];}
+    long deadline(int row) {return deadlines[row];}
+    boolean isCompleted(int row) {return completed.get(row);}
+    long created(int row) {return created[row];}
+    long modified(int row) {return modified[row];}
+    long deleted(int row) {return deleted[row];}
+    long completedAt(int row) {return completedAt[row];}
+
+    String description(int row) {
+        int d = descriptions[row];
+        if (d < 0) return "";
+        return new String(heap, offsets[d], lengths[d], StandardCharsets.UTF_8);
+    }
+
+    void setId(int row, long id) {ids[row] = id;}
+    void setDeadline(int row, long millis) {deadlines[row] = millis;}
+    void setCompleted(int row, boolean value) {completed.set(row, value);}
+    void setModified(int row, long millis) {modified[row] = millis;}
+    void setDeleted(int row, long millis) {deleted[row] = millis;}
+    void setCompletedAt(int row, long millis) {completedAt[row] = millis;}
+
+    //the old description stays in the heap while other rows use it
+    void setDescription(int row, String description) {
+        int d = pool(description.getBytes(StandardCharsets.UTF_8));
+        refs[d]++;
+        unref(descriptions[row]); //read after pool, a pack in there renumbers it
+        descriptions[row] = d;
+    }
+
+    private void unref(int d) {
+        if (d < 0) return;
+        if (--refs[d] == 0) garbage += lengths[d];
+    }
+
+    //DESCRIPTION POOL
+    private int pool(byte[] bytes) {
+        int hash = Arrays.hashCode(bytes);
+        int mask = table.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int entry = table[i];
+            if (entry == 0) break;
+            int d = entry - 1;
+            if (hashes[d] == hash && Arrays.equals(heap, offsets[d], offsets[d] + lengths[d], bytes, 0, bytes.length)) {
+                if (refs[d] == 0) garbage -= lengths[d]; //used again before the heap was packed
+                return d;
+            }
+        }
+        return addDistinct(bytes, hash);
+    }
+
+    //the caller counts the new description's first use
+    private int addDistinct(byte[] bytes, int hash) {
+        if (heapSize + bytes.length > heap.length && garbage > 0) {
+            pack(); //rather than growing over descriptions nobody uses
+        }
+        if (heapSize + bytes.length > heap.length) {
+            long grown = Math.max((long) heapSize + bytes.length, (long) heap.length * 2);
+            if (grown > Integer.MAX_VALUE - 8) throw new IllegalStateException("Description heap is full");
+            heap = Arrays.copyOf(heap, (int) grown);
+        }
+        System.arraycopy(bytes, 0, heap, heapSize, bytes.length);
+
+        if (distinct == offsets.length) {
+            int grown = distinct * 2;
+            offsets = Arrays.copyOf(offsets, grown);
+            lengths = Arrays.copyOf(lengths, grown);
+            hashes = Arrays.copyOf(hashes, grown);
+            refs = Arrays.copyOf(refs, grown);
+        }
+        int d = distinct++;
+        offsets[d] = heapSize;
+        lengths[d] = bytes.length;
+        hashes[d] = hash;
+        refs[d] = 0;
+        heapSize += bytes.length;
+
+        if (distinct * 4 > table.length * 3) {
+            table = new int[table.length * 2];
+            for (int i = 0; i < distinct; i++) insert(i);
+        } else {
+            insert(d);
+        }
+        return d;
+    }
+
+    //packs the heap once more than half of it is garbage, O(rows + heap), called after the list swept its deletes
+    void packIfSparse() {
+        if (garbage > heapSize / 2) pack();
+    }
+
+    //drops the unused descriptions, renumbers the rest and moves their bytes together
+    private void pack() {
+        int[] renumbered = new int[distinct];
+        byte[] packed = new byte[Math.max(1 << 10, heapSize - garbage)];
+        int kept = 0;
+        int packedSize = 0;
+        for (int d = 0; d < distinct; d++) {
+            if (refs[d] == 0) {
+                renumbered[d] = -1;
+                continue;
+            }
+            System.arraycopy(heap, offsets[d], packed, packedSize, lengths[d]);
+            offsets[kept] = packedSize;
+            lengths[kept] = lengths[d];
+            hashes[kept] = hashes[d];
+            refs[kept] = refs[d];
+            packedSize += lengths[d];
+            renumbered[d] = kept++;
+        }
+        for (int row = 0; row < size; row++) {
+            if (descriptions[row] >= 0) descriptions[row] = renumbered[descriptions[row]];
+        }
+        heap = packed;
+        heapSize = packedSize;
+        distinct = kept;
+        garbage = 0;
+        Arrays.fill(table, 0);
+        for (int d = 0; d < distinct; d++) insert(d);
+    }
+
+    private void insert(int d) {
+        int mask = table.length - 1;
+        int i = hashes[d] & mask;
+        while (table[i] != 0) i = (i + 1) & mask;
+        table[i] = d + 1;
+    }
+
+    //flyweight task, every getter reads the columns and every setter writes them
+    //LocalDateTime objects are built on each call and never kept
+    static final class ColumnTask extends Task {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient TaskColumns columns;
+        private final int row;
+
+        ColumnTask(TaskColumns columns, int row) {
+            super(null, null, false, null);
+            this.columns = columns;
+            this.row = row;
+        }
+
+        boolean isRow(TaskColumns columns, int row) {
+            return this.columns == columns && this.row == row;
+        }
+
+        @Override public long getId() {return columns.id(row);}
+        @Override public String getDescription() {return columns.description(row);}
+        @Override public LocalDateTime getDeadline() {return TaskCodec.fromMillis(columns.deadline(row));}
+        @Override public boolean isCompleted() {return columns.isCompleted(row);}
+        @Override public LocalDateTime getCreationDate() {return TaskCodec.fromMillis(columns.created(row));}
+        @Override public LocalDateTime getModificationDate() {return TaskCodec.fromMillis(columns.modified(row));}
+        @Override public LocalDateTime getDeletionDate() {return TaskCodec.fromMillis(columns.deleted(row));}
+        @Override public LocalDateTime getCompletionDate() {return TaskCodec.fromMillis(columns.completedAt(row));}
+
+        @Override
+        public void setId(long id) {
+            columns.setId(row, id);
+        }
+
+        @Override
+        public void setDescription(String description) {
+            columns.setDescription(row, description);
+            updateModificationDate();
+        }
+
+        @Override
+        public void setDeadline(LocalDateTime deadline) {
+            columns.setDeadline(row, TaskCodec.toMillis(deadline));
+            updateModificationDate();
+        }
+
+        @Override
+        public void setCompleted(boolean completed) {
+            columns.setCompleted(row, completed);
+            columns.setCompletedAt(row, completed ? TaskCodec.toMillis(LocalDateTime.now()) : TaskCodec.NO_DATE);
+            updateModificationDate();
+        }
+
+        @Override
+        public void setDeletionDate(LocalDateTime deletionDate) {
+            columns.setDeleted(row, TaskCodec.toMillis(deletionDate));
+            updateModificationDate();
+        }
+
+        @Override
+        public void setCompleteDate(LocalDateTime deletionDate) {
+            setDeletionDate(deletionDate); //same as Task, this one sets the deletion date too
+        }
+
+        @Override
+        public void restoreHistory(LocalDateTime modificationDate, LocalDateTime deletionDate, LocalDateTime completionDate) {
+            columns.setModified(row, TaskCodec.toMillis(modificationDate));
+            columns.setDeleted(row, TaskCodec.toMillis(deletionDate));
+            columns.setCompletedAt(row, TaskCodec.toMillis(completionDate));
+        }
+
+        @Override
+        public void updateModificationDate() {
+            columns.setModified(row, TaskCodec.toMillis(LocalDateTime.now()));
+        }
+
+        //two views of the same row are the same task
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ColumnTask && ((ColumnTask) o).isRow(columns, row);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(columns) * 31 + row;
+        }
+
+        @Override
+        public String toString() {
+            return getDescription();
+        }
+
+        //serialized as a plain Task, the columns do not travel with it
+        private Object writeReplace() {
+            Task copy = new Task(getDescription(), getDeadline(), isCompleted(), getCreationDate());
+            copy.restoreHistory(getModificationDate(), getDeletionDate(), getCompletionDate());
+            copy.setId(getId());
+            return copy;
+        }
+    }
+}
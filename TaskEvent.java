@@ -0,0 +1,87 @@
+/* data-layer */
+package TaskManager;
+
+import Task.Task;
+
+import java.time.LocalDateTime;
+
+//one change as it goes through the TaskEventBus, a slot of the ring that is reused once every consumer has seen it
+//the fields are copied out of the task when the event is published, so consumers never read the task list
+//valid only inside onEvent, keep toTask() or the values themselves if they are needed later
+public final class TaskEvent {
+
+    public enum Type {
+        ADDED,
+        UPDATED, //description or deadline changed, or the task was marked not completed again
+        COMPLETED,
+        DELETED,
+        RELOADED //the whole list was replaced, the task fields are empty
+    }
+
+    private long sequence;
+    private Type type;
+    private long taskId;
+    private String description;
+    private long deadline; //TaskCodec millis
+    private boolean completed;
+
+    TaskEvent() {
+    }
+
+    void set(long sequence, Type type, Task task) {
+        this.sequence = sequence;
+        this.type = type;
+        if (task == null) {
+            taskId = 0;
+            description = null;
+            deadline = TaskCodec.NO_DATE;
+            completed = false;
+        } else {
+            taskId = task.getId();
+            description = task.getDescription();
+            deadline = TaskCodec.toMillis(task.getDeadline());
+            completed = task.isCompleted();
+        }
+    }
+
+    //position in the stream of every event the bus has published, starts at 0 and has no gaps
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTaskId() {
+        return taskId;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public LocalDateTime getDeadline() {
+        return TaskCodec.fromMillis(deadline);
+    }
+
+    public long getDeadlineMillis() {
+        return deadline;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    //a detached copy of the task as the event saw it, only the fields the event carries
+    public Task toTask() {
+        Task task = new Task(description, getDeadline(), completed, null);
+        task.setId(taskId);
+        return task;
+    }
+
+    @Override
+    public String toString() {
+        return sequence + " " + type + " " + taskId;
+    }
+}
@@ -0,0 +1,206 @@
+/* data-layer */
+package TaskManager;
+
+import Task.Task;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+//publish/subscribe for task changes, built like a disruptor: one ring of preallocated TaskEvent slots,
+//one producer at a time (the manager, or the thread ConcurrentTaskManager lets publish) and one thread per consumer
+//publishing copies the task fields into the next slot and moves the cursor, nothing is allocated and nothing is locked
+//each consumer reads every slot up to the cursor in one go and gets told which event ends the batch,
+//so a slow consumer catches up in big batches instead of paying per event
+//the producer only waits when the slowest consumer is a whole ring behind, that is the backpressure
+public class TaskEventBus implements AutoCloseable {
+
+    public interface Consumer {
+        //called on the subscription's own thread, endOfBatch = no more events are waiting right now
+        void onEvent(TaskEvent event, boolean endOfBatch) throws Exception;
+    }
+
+    public static final int DEFAULT_RING_SIZE = 1 << 14;
+
+    private static final int SPINS = 200;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final TaskEvent[] ring;
+    private final int mask;
+    private final AtomicLong cursor = new AtomicLong(-1); //last published sequence
+    private long next; //next sequence to publish, producer only
+    private long gate = -1; //slowest consumer as last seen by the producer, producer only
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    public TaskEventBus() {
+        this(DEFAULT_RING_SIZE);
+    }
+
+    //ringSize is rounded up to a power of two so the slot is sequence & mask
+    public TaskEventBus(int ringSize) {
+        if (ringSize < 2) throw new IllegalArgumentException("ring size must be at least 2");
+        int size = Integer.highestOneBit(ringSize - 1) << 1;
+        ring = new TaskEvent[size];
+        for (int i = 0; i < size; i++) ring[i] = new TaskEvent();
+        mask = size - 1;
+    }
+
+    //the consumer sees every event published from now on
+    public Subscription subscribe(String name, Consumer consumer) {
+        Subscription subscription = new Subscription(name, consumer, cursor.get());
+        subscriptions.add(subscription);
+        subscription.thread.start();
+        return subscription;
+    }
+
+    //publishing is skipped altogether while nobody listens
+    boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    //PRODUCER, one thread at a time
+    void publish(TaskEvent.Type type, Task task) {
+        long sequence = next++;
+        long wrapPoint = sequence - ring.length;
+        if (wrapPoint > gate) {
+            //the slot is still needed by a consumer that is a whole ring behind, wait for it
+            int idle = 0;
+            while (wrapPoint > (gate = slowest(sequence - 1))) idle = idle(idle);
+        }
+        ring[(int) (sequence & mask)].set(sequence, type, task);
+        cursor.set(sequence);
+        for (Subscription subscription : subscriptions) {
+            if (subscription.sleeping) LockSupport.unpark(subscription.thread);
+        }
+    }
+
+    private long slowest(long fallback) {
+        long min = fallback;
+        for (Subscription subscription : subscriptions) min = Math.min(min, subscription.sequence.get());
+        return min;
+    }
+
+    //spin, then yield, then park for a little longer each time
+    private static int idle(int idle) {
+        if (idle < SPINS) Thread.onSpinWait();
+        else if (idle < SPINS * 2) Thread.yield();
+        else LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(idle - SPINS * 2, 13)));
+        return idle + 1;
+    }
+
+    public long publishedCount() {
+        return cursor.get() + 1;
+    }
+
+    //waits until every consumer has handled everything published so far, false on timeout
+    public boolean drain(long timeoutMillis) {
+        long target = cursor.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (Subscription subscription : subscriptions) {
+            int idle = 0;
+            while (subscription.running && subscription.sequence.get() < target) {
+                if (System.nanoTime() > deadline) return false;
+                idle = idle(idle);
+            }
+        }
+        return true;
+    }
+
+    //lets every consumer finish what is already published, then stops their threads
+    @Override
+    public void close() {
+        drain(TimeUnit.SECONDS.toMillis(5));
+        for (Subscription subscription : subscriptions) subscription.close();
+    }
+
+    //one consumer with its own thread and its own position in the ring
+    public final class Subscription implements AutoCloseable {
+
+        private final String name;
+        private final Consumer consumer;
+        private final AtomicLong sequence; //last event handled
+        private final Thread thread;
+        private volatile boolean running = true;
+        private volatile boolean sleeping;
+        private volatile long batches;
+        private volatile long failures;
+
+        private Subscription(String name, Consumer consumer, long start) {
+            this.name = name;
+            this.consumer = consumer;
+            this.sequence = new AtomicLong(start);
+            this.thread = new Thread(this::run, "todo-events-" + name);
+            thread.setDaemon(true);
+        }
+
+        private void run() {
+            int idle = 0;
+            while (running) {
+                long available = cursor.get();
+                long from = sequence.get() + 1;
+                if (available < from) {
+                    idle = waitFor(from, idle);
+                    continue;
+                }
+                idle = 0;
+                for (long s = from; s <= available; s++) {
+                    try {
+                        consumer.onEvent(ring[(int) (s & mask)], s == available);
+                    } catch (Exception e) {
+                        failures++; //one bad event does not stop the stream
+                        e.printStackTrace();
+                    }
+                }
+                batches++;
+                sequence.set(available); //the slots are free for the producer again
+            }
+        }
+
+        //short spin for bursts, then sleep until the producer unparks us
+        private int waitFor(long from, int idle) {
+            if (idle < SPINS) {
+                Thread.onSpinWait();
+                return idle + 1;
+            }
+            sleeping = true;
+            if (cursor.get() < from && running) LockSupport.parkNanos(this, MAX_PARK_NANOS);
+            sleeping = false;
+            return idle + 1;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        //sequence of the last event this consumer finished
+        public long getSequence() {
+            return sequence.get();
+        }
+
+        //how many times the consumer woke up to a batch, handled events / batches = average batch size
+        public long getBatches() {
+            return batches;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        //stops the thread after the batch it is in, the producer no longer waits for this consumer
+        @Override
+        public void close() {
+            running = false;
+            subscriptions.remove(this);
+            LockSupport.unpark(thread);
+            if (Thread.currentThread() != thread) {
+                try {
+                    thread.join(TimeUnit.SECONDS.toMillis(5));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
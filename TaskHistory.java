@@ -0,0 +1,611 @@
+/* data-layer */
+package TaskManager;
+
+import Task.Task;
+
+import java.io.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+//every change to a task as a small encoded delta: old and new value of only the fields that changed,
+//the whole task only for adds and deletes
+//the newest deltas sit in a ring buffer bounded by entry count and bytes, that is the undo/redo window,
+//when it is full the oldest entry falls out of it, so memory stays bounded no matter how much is edited
+//the deltas recorded between beginGroup and endGroup (a batch) share one ring entry, so they are undone and
+//redone together as one step
+//every delta (undo and redo included, as their own inverse deltas) is also appended to a log file next to the
+//task file, that log is the timeline used for point-in-time reconstruction; it is forced to disk after every step
+//the log rolls over into numbered segments (file.1, file.2, ...) of SEGMENT_BYTES, only the newest SEGMENTS_KEPT
+//stay, so the timeline reaches back that far and no further (retainedSince); an index of where each task's
+//deltas sit in the segments is built from them once and kept up to date, so a point-in-time read decodes only
+//the deltas of that task
+//a step larger than maxBytes does not fit the window: it is only logged and ends everything before it in the window
+final class TaskHistory {
+
+    static final int DEFAULT_MAX_ENTRIES = 4096;
+    static final int DEFAULT_MAX_BYTES = 1 << 20;
+    static final long SEGMENT_BYTES = 16L << 20;
+    static final int SEGMENTS_KEPT = 8;
+
+    static final byte OP_ADD = 1;
+    static final byte OP_DELETE = 2;
+    static final byte OP_CHANGE = 3;
+    private static final byte OP_GROUP = 4; //only in the ring: count, then every entry of the group length-prefixed
+
+    //fields in the change mask
+    private static final int DESCRIPTION = 1;
+    private static final int DEADLINE = 2;
+    private static final int COMPLETED = 4;
+
+    //decoded form of one entry
+    static final class Delta {
+        byte op;
+        long time; //TaskCodec millis
+        long id;
+        Task task; //ADD: the task as added, DELETE: the task as it was deleted
+        int mask;
+        String oldDescription, newDescription;
+        long oldDeadline, newDeadline;
+        boolean oldCompleted, newCompleted;
+        long oldCompletedAt, newCompletedAt;
+        long oldModified, newModified;
+
+        //puts the old (undo) or new (redo) values of a change back on the task
+        void applyTo(Task target, boolean old) {
+            if ((mask & DESCRIPTION) != 0) target.setDescription(old ? oldDescription : newDescription);
+            if ((mask & DEADLINE) != 0) target.setDeadline(TaskCodec.fromMillis(old ? oldDeadline : newDeadline));
+            if ((mask & COMPLETED) != 0) target.setCompleted(old ? oldCompleted : newCompleted);
+            long completedAt = ((mask & COMPLETED) != 0) ? (old ? oldCompletedAt : newCompletedAt)
+                    : TaskCodec.toMillis(target.getCompletionDate());
+            target.restoreHistory(TaskCodec.fromMillis(old ? oldModified : newModified),
+                    target.getDeletionDate(), TaskCodec.fromMillis(completedAt));
+        }
+
+        //the delta that takes the change back, stamped with the time it was taken back
+        Delta inverse(long now) {
+            Delta inverse = new Delta();
+            inverse.op = (op == OP_ADD) ? OP_DELETE : (op == OP_DELETE) ? OP_ADD : OP_CHANGE;
+            inverse.time = now;
+            inverse.id = id;
+            inverse.task = task;
+            inverse.mask = mask;
+            inverse.oldDescription = newDescription;
+            inverse.newDescription = oldDescription;
+            inverse.oldDeadline = newDeadline;
+            inverse.newDeadline = oldDeadline;
+            inverse.oldCompleted = newCompleted;
+            inverse.newCompleted = oldCompleted;
+            inverse.oldCompletedAt = newCompletedAt;
+            inverse.newCompletedAt = oldCompletedAt;
+            inverse.oldModified = newModified;
+            inverse.newModified = oldModified;
+            return inverse;
+        }
+    }
+
+    //state of a task right before a change, compared with the state after it
+    static final class Before {
+        final String description;
+        final long deadline;
+        final boolean completed;
+        final long completedAt;
+        final long modified;
+
+        Before(Task task) {
+            description = task.getDescription();
+            deadline = TaskCodec.toMillis(task.getDeadline());
+            completed = task.isCompleted();
+            completedAt = TaskCodec.toMillis(task.getCompletionDate());
+            modified = TaskCodec.toMillis(task.getModificationDate());
+        }
+    }
+
+    private final File logFile;
+    private final int maxEntries;
+    private final int maxBytes;
+
+    private final byte[][] ring;
+    private int head; //oldest entry
+    private int count; //entries in the ring
+    private int cursor; //entries [0, cursor) are applied, [cursor, count) were undone and can be redone
+    private int ringBytes;
+    private List<byte[]> group; //entries of the open group, null outside one
+
+    private final long segmentBytes;
+    private FileOutputStream logFileOut; //for forcing the log
+    private DataOutputStream log; //opened on the first change
+    private long logSize; //bytes in the current segment
+    private int segment; //number the current segment gets when it rolls over
+    private Map<Long, Offsets> offsets; //id -> where its deltas are, built with the first write or read of the log
+    private long retainedSince = Long.MIN_VALUE; //time of the oldest delta left once a segment was dropped, MIN_VALUE while none was
+
+    //positions of one task's deltas, segment in the high bits and offset in the segment in the low 40
+    private static final class Offsets {
+        long[] at = new long[2];
+        int size;
+
+        void add(long position) {
+            if (size == at.length) at = Arrays.copyOf(at, size * 2);
+            at[size++] = position;
+        }
+
+        //forgets the positions in one segment, returns how many are left
+        int drop(int number) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if ((int) (at[i] >>> 40) != number) at[kept++] = at[i];
+            }
+            size = kept;
+            return kept;
+        }
+    }
+    private final ByteArrayOutputStream scratch = new ByteArrayOutputStream();
+    private final DataOutputStream scratchOut = new DataOutputStream(scratch);
+    private final CRC32 crc = new CRC32();
+
+    TaskHistory(File logFile, int maxEntries, int maxBytes) {
+        this(logFile, maxEntries, maxBytes, SEGMENT_BYTES);
+    }
+
+    TaskHistory(File logFile, int maxEntries, int maxBytes, long segmentBytes) {
+        if (maxEntries < 1 || maxBytes < 1) throw new IllegalArgumentException("history limits must be positive");
+        this.logFile = logFile;
+        this.segmentBytes = segmentBytes;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ring = new byte[maxEntries][];
+    }
+
+    //RECORDING
+    void recordAdd(Task task) {
+        record(whole(OP_ADD, task));
+    }
+
+    void recordDelete(Task task) {
+        record(whole(OP_DELETE, task));
+    }
+
+    void recordChange(Before before, Task after) {
+        Delta delta = new Delta();
+        delta.op = OP_CHANGE;
+        delta.time = now();
+        delta.id = after.getId();
+        delta.oldDescription = before.description;
+        delta.newDescription = after.getDescription();
+        delta.oldDeadline = before.deadline;
+        delta.newDeadline = TaskCodec.toMillis(after.getDeadline());
+        delta.oldCompleted = before.completed;
+        delta.newCompleted = after.isCompleted();
+        delta.oldCompletedAt = before.completedAt;
+        delta.newCompletedAt = TaskCodec.toMillis(after.getCompletionDate());
+        delta.oldModified = before.modified;
+        delta.newModified = TaskCodec.toMillis(after.getModificationDate());
+        delta.mask = (delta.oldDescription.equals(delta.newDescription) ? 0 : DESCRIPTION)
+                | (delta.oldDeadline == delta.newDeadline ? 0 : DEADLINE)
+                | (delta.oldCompleted == delta.newCompleted ? 0 : COMPLETED);
+        if (delta.mask == 0) return; //same values written again, nothing to undo
+        record(delta);
+    }
+
+    private static Delta whole(byte op, Task task) {
+        Delta delta = new Delta();
+        delta.op = op;
+        delta.time = now();
+        delta.id = task.getId();
+        delta.task = task;
+        return delta;
+    }
+
+    //GROUPS
+    void beginGroup() {
+        if (group != null) throw new IllegalStateException("A history group is already open");
+        group = new ArrayList<>();
+    }
+
+    //the whole group becomes one step, nothing if nothing in it changed
+    void endGroup() {
+        List<byte[]> entries = group;
+        group = null;
+        if (entries == null || entries.isEmpty()) return;
+        sync();
+        if (entries.size() == 1) {
+            push(entries.get(0));
+            return;
+        }
+        try {
+            scratch.reset();
+            scratchOut.writeByte(OP_GROUP);
+            scratchOut.writeInt(entries.size());
+            for (byte[] entry : entries) {
+                scratchOut.writeInt(entry.length);
+                scratchOut.write(entry);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        push(scratch.toByteArray());
+    }
+
+    private void record(Delta delta) {
+        byte[] entry = encode(delta);
+        append(entry); //the log gets every delta on its own, grouped or not
+        if (group != null) {
+            group.add(entry);
+            return;
+        }
+        sync();
+        push(entry);
+    }
+
+    private void push(byte[] entry) {
+        if (entry.length > maxBytes) { //only in the log, the steps before it can not be undone past it either
+            clearUndo();
+            return;
+        }
+        //a new change ends the redo chain
+        while (count > cursor) {
+            count--;
+            int at = (head + count) % maxEntries;
+            ringBytes -= ring[at].length;
+            ring[at] = null;
+        }
+        //full: the oldest entry leaves the undo window, it is already in the log
+        while (count > 0 && (count == maxEntries || ringBytes + entry.length > maxBytes)) {
+            ringBytes -= ring[head].length;
+            ring[head] = null;
+            head = (head + 1) % maxEntries;
+            count--;
+            cursor--;
+        }
+        ring[(head + count) % maxEntries] = entry;
+        ringBytes += entry.length;
+        count++;
+        cursor++;
+    }
+
+    //UNDO / REDO, one step of the cursor, one decode and one log append per delta in the step
+    //the deltas of the step in the order to apply them, null if there is nothing to undo
+    List<Delta> undo() {
+        if (cursor == 0) return null;
+        cursor--;
+        List<Delta> deltas = decodeAll(ring[(head + cursor) % maxEntries]);
+        Collections.reverse(deltas); //a group is taken back last change first
+        long now = now();
+        for (Delta delta : deltas) append(encode(delta.inverse(now)));
+        sync();
+        return deltas;
+    }
+
+    List<Delta> redo() {
+        if (cursor == count) return null;
+        List<Delta> deltas = decodeAll(ring[(head + cursor) % maxEntries]);
+        cursor++;
+        long now = now();
+        for (Delta delta : deltas) {
+            delta.time = now;
+            append(encode(delta));
+        }
+        sync();
+        return deltas;
+    }
+
+    boolean canUndo() {
+        return cursor > 0;
+    }
+
+    boolean canRedo() {
+        return cursor < count;
+    }
+
+    //after a load the ring no longer matches the tasks, the log stays
+    void clearUndo() {
+        Arrays.fill(ring, null);
+        head = 0;
+        count = 0;
+        cursor = 0;
+        ringBytes = 0;
+    }
+
+    //LOG
+    //layout: length, crc32, then the entry
+    private void append(byte[] entry) {
+        try {
+            if (log == null) openLog();
+            if (logSize >= segmentBytes) roll();
+            crc.reset();
+            crc.update(entry);
+            offsets.computeIfAbsent(idOf(entry), id -> new Offsets()).add(((long) segment << 40) | logSize);
+            log.writeInt(entry.length);
+            log.writeInt((int) crc.getValue());
+            log.write(entry);
+            logSize += 8 + entry.length;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //the index comes first, its scan also cuts a torn tail off so new entries do not land behind it
+    private void openLog() throws IOException {
+        index();
+        logFileOut = new FileOutputStream(logFile, true);
+        log = new DataOutputStream(new BufferedOutputStream(logFileOut, 1 << 16));
+        logSize = logFile.length();
+    }
+
+    //the current segment gets the next number, the oldest past SEGMENTS_KEPT is deleted with its index entries
+    //O(tasks in the index), the segments that are left are not read again
+    private void roll() throws IOException {
+        log.flush();
+        logFileOut.getChannel().force(false);
+        log.close();
+        java.nio.file.Files.move(logFile.toPath(), segmentFile(segment).toPath());
+        segment++;
+        int oldest = segment - SEGMENTS_KEPT;
+        File dropped = segmentFile(oldest);
+        if (dropped.exists() && dropped.delete()) {
+            offsets.values().removeIf(found -> found.drop(oldest) == 0);
+            retainedSince = firstTime(oldest + 1);
+        }
+        logFileOut = null;
+        log = null;
+        openLog();
+    }
+
+    private File segmentFile(int number) {
+        return new File(logFile.getPath() + "." + number);
+    }
+
+    //forced once per step (a change, a group, an undo or a redo), like a journal record
+    private void sync() {
+        if (log == null) return;
+        try {
+            log.flush();
+            logFileOut.getChannel().force(false);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //one pass over the kept segments and the current file, O(log) once
+    private void index() throws IOException {
+        if (offsets != null) return;
+        offsets = new HashMap<>();
+        int oldest = Integer.MAX_VALUE;
+        File parent = logFile.getAbsoluteFile().getParentFile();
+        String prefix = logFile.getName() + ".";
+        String[] names = (parent != null) ? parent.list() : null;
+        if (names != null) {
+            int newest = -1;
+            for (String name : names) {
+                if (!name.startsWith(prefix)) continue;
+                try {
+                    int number = Integer.parseInt(name.substring(prefix.length()));
+                    newest = Math.max(newest, number);
+                    oldest = Math.min(oldest, number);
+                } catch (NumberFormatException e) {
+                    //not a segment
+                }
+            }
+            if (newest >= segment) segment = newest + 1;
+        }
+        if (oldest > segment) oldest = segment; //no segments yet
+        for (int number = oldest; number < segment; number++) {
+            File file = segmentFile(number);
+            if (file.exists()) scan(file, number);
+        }
+        if (oldest > 0) retainedSince = firstTime(oldest); //segment 0 and maybe more were dropped
+        if (!logFile.exists()) return;
+        long good = scan(logFile, segment);
+        if (good < logFile.length()) { //torn tail from a crash
+            if (log != null) log.flush();
+            try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+                file.setLength(good);
+            }
+            logSize = good;
+        }
+    }
+
+    //indexes every whole entry of the file, returns where the good part ends
+    private long scan(File file, int number) throws IOException {
+        long position = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            CRC32 check = new CRC32();
+            while (true) {
+                int length = in.readInt();
+                int expected = in.readInt();
+                if (length < 17 || length > file.length()) break;
+                byte[] entry = new byte[length];
+                in.readFully(entry);
+                check.reset();
+                check.update(entry);
+                if ((int) check.getValue() != expected) break;
+                offsets.computeIfAbsent(idOf(entry), id -> new Offsets()).add(((long) number << 40) | position);
+                position += 8 + length;
+            }
+        } catch (EOFException e) {
+            //end of the file, or a torn tail
+        }
+        return position;
+    }
+
+    //time of the first delta in the segment or the ones after it, MAX_VALUE if they are all empty
+    private long firstTime(int number) throws IOException {
+        for (int n = number; n <= segment; n++) {
+            File file = (n == segment) ? logFile : segmentFile(n);
+            if (!file.exists() || file.length() < 17) continue;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64))) {
+                in.readInt(); //length
+                in.readInt(); //crc
+                in.readByte(); //op
+                return in.readLong();
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    //POINT IN TIME
+    //the timeline reaches back to here, earlier times are not known any more (MIN_VALUE: nothing was dropped)
+    long retainedSince() {
+        try {
+            if (log != null) log.flush();
+            index();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return retainedSince;
+    }
+
+    //every delta of one task in the order it happened, read from the log at the positions the index has for it
+    List<Delta> deltasOf(long id) {
+        List<Delta> deltas = new ArrayList<>();
+        try {
+            if (log != null) log.flush();
+            index();
+            Offsets found = offsets.get(id);
+            if (found == null) return deltas;
+            RandomAccessFile file = null;
+            int open = -1;
+            try {
+                for (int i = 0; i < found.size; i++) {
+                    int number = (int) (found.at[i] >>> 40);
+                    if (number != open) {
+                        if (file != null) file.close();
+                        file = new RandomAccessFile((number == segment) ? logFile : segmentFile(number), "r");
+                        open = number;
+                    }
+                    file.seek(found.at[i] & ((1L << 40) - 1));
+                    byte[] entry = new byte[file.readInt()];
+                    file.readInt(); //crc, checked when the entry was indexed
+                    file.readFully(entry);
+                    deltas.add(decode(entry));
+                }
+            } finally {
+                if (file != null) file.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return deltas;
+    }
+
+    void flush() {
+        sync();
+    }
+
+    void close() {
+        if (log == null) return;
+        try {
+            sync();
+            log.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        log = null;
+        logFileOut = null;
+    }
+
+    private static long now() {
+        return TaskCodec.toMillis(LocalDateTime.now());
+    }
+
+    //ENCODING
+    //layout: op, time, id, then the whole task for adds and deletes or the mask and changed fields
+    private byte[] encode(Delta delta) {
+        try {
+            scratch.reset();
+            scratchOut.writeByte(delta.op);
+            scratchOut.writeLong(delta.time);
+            scratchOut.writeLong(delta.id);
+            if (delta.op != OP_CHANGE) {
+                TaskCodec.writeTask(scratchOut, delta.task);
+                return scratch.toByteArray();
+            }
+            int mask = delta.mask;
+            scratchOut.writeByte(mask);
+            if ((mask & DESCRIPTION) != 0) {
+                TaskCodec.writeText(scratchOut, delta.oldDescription);
+                TaskCodec.writeText(scratchOut, delta.newDescription);
+            }
+            if ((mask & DEADLINE) != 0) {
+                scratchOut.writeLong(delta.oldDeadline);
+                scratchOut.writeLong(delta.newDeadline);
+            }
+            if ((mask & COMPLETED) != 0) {
+                scratchOut.writeBoolean(delta.oldCompleted);
+                scratchOut.writeBoolean(delta.newCompleted);
+                scratchOut.writeLong(delta.oldCompletedAt);
+                scratchOut.writeLong(delta.newCompletedAt);
+            }
+            scratchOut.writeLong(delta.oldModified);
+            scratchOut.writeLong(delta.newModified);
+            return scratch.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static List<Delta> decodeAll(byte[] entry) {
+        List<Delta> deltas = new ArrayList<>();
+        if (entry[0] != OP_GROUP) {
+            deltas.add(decode(entry));
+            return deltas;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry))) {
+            in.readByte();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                byte[] part = new byte[in.readInt()];
+                in.readFully(part);
+                deltas.add(decode(part));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return deltas;
+    }
+
+    private static long idOf(byte[] entry) {
+        long id = 0;
+        for (int i = 9; i < 17; i++) id = (id << 8) | (entry[i] & 0xFF); //after op and time
+        return id;
+    }
+
+    private static Delta decode(byte[] entry) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry))) {
+            Delta delta = new Delta();
+            delta.op = in.readByte();
+            delta.time = in.readLong();
+            delta.id = in.readLong();
+            if (delta.op != OP_CHANGE) {
+                delta.task = TaskCodec.readTask(in);
+                return delta;
+            }
+            delta.mask = in.readByte();
+            if ((delta.mask & DESCRIPTION) != 0) {
+                delta.oldDescription = TaskCodec.readText(in);
+                delta.newDescription = TaskCodec.readText(in);
+            }
+            if ((delta.mask & DEADLINE) != 0) {
+                delta.oldDeadline = in.readLong();
+                delta.newDeadline = in.readLong();
+            }
+            if ((delta.mask & COMPLETED) != 0) {
+                delta.oldCompleted = in.readBoolean();
+                delta.newCompleted = in.readBoolean();
+                delta.oldCompletedAt = in.readLong();
+                delta.newCompletedAt = in.readLong();
+            }
+            delta.oldModified = in.readLong();
+            delta.newModified = in.readLong();
+            return delta;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
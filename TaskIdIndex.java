@@ -0,0 +1,114 @@
+/* data-layer */
+package TaskManager;
+
+import java.util.Arrays;
+
+//primitive open addressing hash map from task id to its slot in the task list
+//no boxing, ids are never 0 so 0 marks an empty bucket
+final class TaskIdIndex {
+
+    private static final long EMPTY = 0L;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    TaskIdIndex() {
+        this(16);
+    }
+
+    TaskIdIndex(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2) - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    //returns the slot of the id or -1
+    int get(long id) {
+        int i = bucket(id);
+        while (true) {
+            long key = keys[i];
+            if (key == id) return values[i];
+            if (key == EMPTY) return -1;
+            i = (i + 1) & mask;
+        }
+    }
+
+    void put(long id, int slot) {
+        if (id == EMPTY) throw new IllegalArgumentException("Task id 0 is reserved");
+        int i = bucket(id);
+        while (true) {
+            long key = keys[i];
+            if (key == id) {
+                values[i] = slot;
+                return;
+            }
+            if (key == EMPTY) {
+                keys[i] = id;
+                values[i] = slot;
+                if (++size * 4 > keys.length * 3) resize(); //keep load under 75%
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    //removes the id, returns its slot or -1
+    int remove(long id) {
+        int i = bucket(id);
+        while (true) {
+            long key = keys[i];
+            if (key == EMPTY) return -1;
+            if (key == id) break;
+            i = (i + 1) & mask;
+        }
+        int slot = values[i];
+        size--;
+
+        //backward shift so the probe chains stay intact without tombstones
+        int hole = i;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            long key = keys[j];
+            if (key == EMPTY) break;
+            int home = bucket(key);
+            //move the entry back if its home bucket is not between the hole and j
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = key;
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        keys[hole] = EMPTY;
+        return slot;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private int bucket(long id) {
+        long h = id * 0x9E3779B97F4A7C15L; //fibonacci hashing spreads sequential ids
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) put(oldKeys[i], oldValues[i]);
+        }
+    }
+}
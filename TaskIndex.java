@@ -0,0 +1,23 @@
+/* data-layer */
+package TaskManager;
+
+import Task.Task;
+
+import java.util.BitSet;
+
+//secondary index over the slots of the task list
+//TaskManager calls these hooks on every change so an index never has to rescan the list
+public interface TaskIndex {
+
+    void taskAdded(int slot, Task task);
+
+    void taskChanged(int slot, Task task);
+
+    void taskRemoved(int slot);
+
+    //the slots set in removed were dropped, every slot after them moved down
+    void slotsSwept(BitSet removed);
+
+    //called after a load and when the index is registered
+    void rebuild(TaskList tasks);
+}
@@ -0,0 +1,444 @@
+/* data-layer */
+package TaskManager;
+
+import Task.Task;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+//append-only write-ahead journal so a save costs as much as the change and not the whole list
+//every mutation becomes one small record, records are fsynced in group-commit batches
+//and once the journal gets long it is folded into the snapshot on a background thread
+public class TaskJournal {
+
+    public static final int DEFAULT_GROUP_COMMIT = 32; //records per fsync
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 50_000; //records before folding into the snapshot
+
+    //record types
+    static final byte OP_ADD = 1;
+    static final byte OP_UPDATE = 2;
+    static final byte OP_COMPLETE = 3;
+    static final byte OP_DELETE = 4;
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private final File compactingFile; //sealed journal that is being folded into the snapshot
+    private final int groupCommitSize;
+    private final int compactionThreshold;
+
+    //one lock per file, guards the snapshot and the sealed journal even when two managers share a file
+    private static final ConcurrentHashMap<String, Object> FILE_LOCKS = new ConcurrentHashMap<>();
+    private final Object fileLock;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "todo-journal-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+    private Future<?> compaction;
+    private volatile Exception compactionFailure; //the sealed journal stays on disk, the next load tries again
+
+    private FileChannel channel; //opened lazily so managers that never touch disk create no files
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream scratch = new ByteArrayOutputStream();
+    private final DataOutputStream scratchOut = new DataOutputStream(scratch);
+    private final CRC32 crc = new CRC32();
+    private int pendingRecords;
+    private int batchDepth;
+    private int journalRecords; //records in the live journal
+    private long sequence; //sequence number of the last record written
+    private TaskMetrics metrics = TaskMetrics.UNATTACHED; //replaced by the manager's own
+
+    public TaskJournal(File snapshotFile, int groupCommitSize, int compactionThreshold) {
+        if (groupCommitSize < 1 || compactionThreshold < 1) {
+            throw new IllegalArgumentException("group commit size and compaction threshold must be positive");
+        }
+        this.snapshotFile = snapshotFile;
+        this.journalFile = new File(snapshotFile.getPath() + ".journal");
+        this.compactingFile = new File(snapshotFile.getPath() + ".journal.compacting");
+        this.fileLock = FILE_LOCKS.computeIfAbsent(snapshotFile.getAbsolutePath(), k -> new Object());
+        this.groupCommitSize = groupCommitSize;
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    void setMetrics(TaskMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    //JOURNALING
+    public void logAdd(Task task) {
+        append(OP_ADD, -1, task);
+    }
+
+    public void logUpdate(Task task) {
+        append(OP_UPDATE, task.getId(), task);
+    }
+
+    public void logComplete(Task task) {
+        append(OP_COMPLETE, task.getId(), task);
+    }
+
+    public void logDelete(long id) {
+        append(OP_DELETE, id, null);
+    }
+
+    //record layout: length, crc32, then op, sequence and the task itself (just the id for deletes)
+    private void append(byte op, long id, Task task) {
+        try {
+            scratch.reset();
+            scratchOut.writeByte(op);
+            scratchOut.writeLong(sequence + 1);
+            if (task != null) TaskCodec.writeTask(scratchOut, task);
+            else scratchOut.writeLong(id);
+
+            sequence++; //only once the record is encoded, a failed encode leaves no gap
+            int mark = pending.size();
+            crc.reset();
+            crc.update(scratch.toByteArray());
+            DataOutputStream out = new DataOutputStream(pending);
+            out.writeInt(scratch.size());
+            out.writeInt((int) crc.getValue());
+            scratch.writeTo(out);
+
+            journalRecords++;
+            pendingRecords++;
+            metrics.count(TaskMetrics.Counter.JOURNAL_RECORDS, 1);
+            if (batchDepth > 0) return; //the batch writes everything at once when it ends
+            if (pendingRecords >= groupCommitSize) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    drop(mark); //the caller leaves its change out, so a later flush must not write it either
+                    throw e;
+                }
+            }
+            if (journalRecords >= compactionThreshold) rotate();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //takes the last record back out of the unwritten ones, it starts at mark
+    private void drop(int mark) {
+        byte[] kept = pending.toByteArray();
+        pending.reset();
+        pending.write(kept, 0, mark);
+        sequence--;
+        journalRecords--;
+        pendingRecords--;
+    }
+
+    //records of a batch are held back and written with one write and one fsync in endBatch
+    public void beginBatch() {
+        batchDepth++;
+    }
+
+    public void endBatch() {
+        if (batchDepth == 0 || --batchDepth > 0) return;
+        try {
+            flush();
+            if (journalRecords >= compactionThreshold) rotate();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //writes out the current group and forces it to disk
+    public void sync() {
+        try {
+            flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void flush() throws IOException {
+        if (pendingRecords == 0) return;
+        long start = metrics.start();
+        ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+        FileChannel ch = openChannel();
+        while (buffer.hasRemaining()) ch.write(buffer);
+        ch.force(false);
+        metrics.record(TaskMetrics.Operation.JOURNAL_FSYNC, start);
+        metrics.count(TaskMetrics.Counter.JOURNAL_BYTES, pending.size());
+        pending.reset();
+        pendingRecords = 0;
+    }
+
+    private FileChannel openChannel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(journalFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    public void close() {
+        try {
+            flush();
+            closeChannel();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //COMPACTION
+    //seals the live journal and lets the background thread fold it into the snapshot
+    //a sealed journal that is still there belongs to a compaction in flight or one that failed; in both cases
+    //nothing is submitted, a failed one would only fail the same way on every record
+    private void rotate() throws IOException {
+        if (compaction != null && !compaction.isDone()) return; //still busy, try again on a later record
+        if (compactionFailure != null) return;
+        synchronized (fileLock) {
+            if (compactingFile.exists()) return; //another manager on the same file is folding it
+            flush();
+            closeChannel();
+            Files.move(journalFile.toPath(), compactingFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            journalRecords = 0;
+        }
+        compaction = compactor.submit(this::compact);
+    }
+
+    //why the last compaction failed, null if it did not; the live journal keeps growing until the next load
+    public Exception getCompactionFailure() {
+        return compactionFailure;
+    }
+
+    //works only from the files so it never touches the live task objects
+    private void compact() {
+        synchronized (fileLock) {
+            if (!compactingFile.exists()) return;
+            try {
+                TaskMetrics.Span span = metrics.begin(TaskMetrics.Operation.COMPACTION);
+                Snapshot snapshot = readSnapshot();
+                long lastSeq = replay(compactingFile, snapshot.tasks, snapshot.sequence, false);
+                writeSnapshotFile(snapshot.tasks, lastSeq);
+                Files.delete(compactingFile.toPath());
+                span.end(snapshot.tasks.size());
+                compactionFailure = null;
+            } catch (IOException | ClassNotFoundException e) {
+                e.printStackTrace(); //the sealed journal stays on disk and is replayed on the next load
+                compactionFailure = e;
+            }
+        }
+    }
+
+    //SNAPSHOT + RECOVERY
+    //full rewrite, used when the list in memory did not come from disk
+    public void writeSnapshot(List<Task> tasks) {
+        synchronized (fileLock) {
+            try {
+                pending.reset();
+                pendingRecords = 0;
+                journalRecords = 0;
+                closeChannel();
+
+                File tmp = writeSnapshotTemp(tasks, sequence);
+                Files.deleteIfExists(journalFile.toPath());
+                Files.deleteIfExists(compactingFile.toPath());
+                Files.move(tmp.toPath(), snapshotFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    //loads the snapshot and replays every journal on top of it, returns null if nothing was saved yet
+    public TaskList recover() {
+        TaskList tasks;
+        boolean leftover;
+        synchronized (fileLock) {
+            if (!snapshotFile.exists() && !journalFile.exists() && !compactingFile.exists()) return null;
+            try {
+                flush();
+                closeChannel();
+
+                Snapshot snapshot = readSnapshot();
+                tasks = snapshot.tasks;
+                sequence = Math.max(snapshot.sequence, replay(compactingFile, tasks, snapshot.sequence, false));
+                long before = sequence;
+                sequence = Math.max(sequence, replay(journalFile, tasks, snapshot.sequence, true));
+                journalRecords = (int) Math.min(Integer.MAX_VALUE, sequence - before);
+                leftover = compactingFile.exists();
+            } catch (IOException | ClassNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        compactionFailure = null;
+        if (leftover) compaction = compactor.submit(this::compact); //an earlier compaction never finished
+        return tasks;
+    }
+
+    //applies every record newer than afterSeq, a torn or corrupt tail ends the replay
+    private long replay(File file, TaskList tasks, long afterSeq, boolean truncateTail) throws IOException {
+        long lastSeq = afterSeq;
+        if (!file.exists()) return lastSeq;
+
+        Replay replay = new Replay(tasks);
+        long good = 0;
+        boolean torn = false;
+        CRC32 check = new CRC32(); //own instance, the compactor thread replays too
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] record;
+                int checksum;
+                try {
+                    checksum = in.readInt();
+                    if (length <= 0) throw new EOFException();
+                    record = new byte[length];
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    torn = true;
+                    break;
+                }
+                check.update(record);
+                if ((int) check.getValue() != checksum) {
+                    torn = true;
+                    break;
+                }
+                check.reset();
+
+                DataInputStream body = new DataInputStream(new ByteArrayInputStream(record));
+                byte op = body.readByte();
+                long seq = body.readLong();
+                if (seq > afterSeq) replay.apply(op, body);
+                lastSeq = Math.max(lastSeq, seq);
+                good += 8 + length;
+            }
+        } finally {
+            replay.finish();
+        }
+        if (torn && truncateTail) {
+            try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                ch.truncate(good); //so new records are not appended after garbage
+            }
+        }
+        return lastSeq;
+    }
+
+    //records address tasks by id, the id index is only built once a record needs it
+    //deletes are collected and swept in one pass at the end
+    private static class Replay {
+        private final TaskList tasks;
+        private TaskIdIndex index;
+        private final BitSet deleted = new BitSet();
+
+        Replay(TaskList tasks) {
+            this.tasks = tasks;
+        }
+
+        void apply(byte op, DataInput in) throws IOException {
+            switch (op) {
+                case OP_ADD: {
+                    Task task = TaskCodec.readTask(in);
+                    tasks.add(task);
+                    if (index != null) index.put(task.getId(), tasks.size() - 1);
+                    break;
+                }
+                case OP_UPDATE:
+                case OP_COMPLETE: {
+                    Task task = TaskCodec.readTask(in);
+                    int slot = index().get(task.getId());
+                    if (slot >= 0) tasks.set(slot, task);
+                    break;
+                }
+                case OP_DELETE: {
+                    int slot = index().remove(in.readLong());
+                    if (slot >= 0) deleted.set(slot);
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown journal record type " + op);
+            }
+        }
+
+        private TaskIdIndex index() {
+            if (index == null) {
+                index = new TaskIdIndex(tasks.size());
+                for (int i = 0; i < tasks.size(); i++) {
+                    if (!deleted.get(i)) index.put(tasks.idAt(i), i);
+                }
+            }
+            return index;
+        }
+
+        void finish() {
+            if (!deleted.isEmpty()) tasks.removeSlots(deleted);
+        }
+    }
+
+    private static class Snapshot {
+        final TaskList tasks;
+        final long sequence; //last journal record already contained in the snapshot
+
+        Snapshot(TaskList tasks, long sequence) {
+            this.tasks = tasks;
+            this.sequence = sequence;
+        }
+    }
+
+    private Snapshot readSnapshot() throws IOException, ClassNotFoundException {
+        if (!snapshotFile.exists()) return new Snapshot(new TaskList(), 0);
+        if (TaskSnapshot.isSnapshot(snapshotFile)) {
+            TaskSnapshot snapshot = TaskSnapshot.open(snapshotFile);
+            return new Snapshot(new TaskList(snapshot), snapshot.getSequence());
+        }
+        return readLegacySnapshot();
+    }
+
+    //todo.ser from before the binary format, rewritten in the new format by the next snapshot
+    @SuppressWarnings("unchecked")
+    private Snapshot readLegacySnapshot() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(
+                new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+            TaskList tasks = new TaskList();
+            tasks.addAll((ArrayList<Task>) in.readObject());
+            for (int i = 0; i < tasks.size(); i++) tasks.get(i).setId(i + 1); //these files had no ids
+            long seq;
+            try {
+                seq = in.readLong();
+            } catch (EOFException e) {
+                seq = 0; //file from before the journal existed
+            }
+            return new Snapshot(tasks, seq);
+        }
+    }
+
+    private void writeSnapshotFile(List<Task> tasks, long seq) throws IOException {
+        File tmp = writeSnapshotTemp(tasks, seq);
+        Files.move(tmp.toPath(), snapshotFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    //writes next to the real file first so a crash never leaves a half written snapshot
+    private File writeSnapshotTemp(List<Task> tasks, long seq) throws IOException {
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        TaskSnapshot.write(tmp, tasks, seq);
+        return tmp;
+    }
+}
@@ -0,0 +1,225 @@
+/* data-layer */
+package TaskManager;
+
+import Task.Task;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+//list of tasks that can sit on top of a mapped snapshot
+//rows from the snapshot only become Task objects the first time they are accessed
+//a columnar list keeps no Task objects at all, every slot is a row of TaskColumns and get() hands out a flyweight
+public class TaskList extends AbstractList<Task> implements RandomAccess {
+
+    private final TaskSnapshot snapshot; //null when nothing was loaded
+    private final TaskColumns columns; //null unless columnar
+    private Task[] elements; //null slot = not materialized yet, the whole array is null when columnar
+    private int[] rows; //snapshot or column row for every slot, -1 for tasks added after loading
+    private int size;
+
+    public TaskList() {
+        this((TaskSnapshot) null);
+    }
+
+    TaskList(TaskSnapshot snapshot) {
+        this.snapshot = snapshot;
+        this.columns = null;
+        int count = (snapshot != null) ? snapshot.size() : 0;
+        elements = new Task[Math.max(10, count)];
+        rows = new int[elements.length];
+        for (int i = 0; i < count; i++) rows[i] = i;
+        size = count;
+    }
+
+    private TaskList(TaskColumns columns, int capacity) {
+        this.snapshot = null;
+        this.columns = columns;
+        rows = new int[Math.max(10, capacity)];
+    }
+
+    static TaskList columnar() {
+        return new TaskList(new TaskColumns(), 10);
+    }
+
+    //columnar copy of this list, snapshot rows are moved over without becoming tasks
+    TaskList toColumnar() {
+        if (columns != null) return this;
+        TaskList copy = new TaskList(new TaskColumns(), size);
+        for (int i = 0; i < size; i++) {
+            copy.rows[i] = (elements[i] != null) ? copy.columns.append(elements[i]) : snapshot.copyTo(rows[i], copy.columns);
+        }
+        copy.size = size;
+        return copy;
+    }
+
+    boolean isColumnar() {
+        return columns != null;
+    }
+
+    @Override
+    public Task get(int index) {
+        Objects.checkIndex(index, size);
+        if (columns != null) return columns.view(rows[index]);
+        Task task = elements[index];
+        if (task == null) {
+            task = snapshot.materialize(rows[index]);
+            elements[index] = task;
+        }
+        return task;
+    }
+
+    @Override
+    public Task set(int index, Task task) {
+        Task old = get(index);
+        if (columns != null) {
+            old = TaskCodec.copy(old); //the row is overwritten in place, the old view would show the new state
+            columns.write(rows[index], task);
+            return old;
+        }
+        elements[index] = task;
+        rows[index] = -1;
+        return old;
+    }
+
+    @Override
+    public void add(int index, Task task) {
+        Objects.checkIndex(index, size + 1);
+        ensureCapacity(size + 1);
+        System.arraycopy(rows, index, rows, index + 1, size - index);
+        if (columns != null) {
+            rows[index] = columns.append(task); //the list keeps a copy, not the task itself
+        } else {
+            System.arraycopy(elements, index, elements, index + 1, size - index);
+            elements[index] = task;
+            rows[index] = -1;
+        }
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Task remove(int index) {
+        Task old = get(index);
+        if (columns != null) {
+            old = TaskCodec.copy(old); //the row is released, the view would lose its description
+            columns.release(rows[index]);
+        }
+        int moved = size - index - 1;
+        System.arraycopy(rows, index + 1, rows, index, moved);
+        size--;
+        modCount++;
+        if (columns != null) return old;
+        System.arraycopy(elements, index + 1, elements, index, moved);
+        elements[size] = null;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        if (elements != null) Arrays.fill(elements, 0, size, null);
+        if (columns != null) {
+            for (int i = 0; i < size; i++) columns.release(rows[i]);
+            columns.packIfSparse();
+        }
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    //id of the task in a slot, read from the snapshot if the task was never built
+    long idAt(int index) {
+        Objects.checkIndex(index, size);
+        if (columns != null) return columns.id(rows[index]);
+        Task task = elements[index];
+        return (task != null) ? task.getId() : snapshot.getId(rows[index]);
+    }
+
+    //completed flag of a slot without building the task
+    boolean isCompletedAt(int index) {
+        Objects.checkIndex(index, size);
+        if (columns != null) return columns.isCompleted(rows[index]);
+        Task task = elements[index];
+        return (task != null) ? task.isCompleted() : snapshot.isCompleted(rows[index]);
+    }
+
+    //deadline of a slot as epoch millis (TaskCodec.NO_DATE if none) without building the task
+    long deadlineMillisAt(int index) {
+        Objects.checkIndex(index, size);
+        if (columns != null) return columns.deadline(rows[index]);
+        Task task = elements[index];
+        return (task != null) ? TaskCodec.toMillis(task.getDeadline()) : snapshot.getDeadlineMillis(rows[index]);
+    }
+
+    //the date a SortedTaskIndex orders by, without building the task
+    long dateMillisAt(int index, SortedTaskIndex.Key key) {
+        Objects.checkIndex(index, size);
+        Task task = (columns != null) ? null : elements[index];
+        if (task != null) return key.millisOf(task);
+        if (columns == null) return snapshot.getDateMillis(rows[index], key);
+        int row = rows[index];
+        switch (key) {
+            case DEADLINE: return columns.deadline(row);
+            case CREATED: return columns.created(row);
+            case MODIFIED: return columns.modified(row);
+            default: return columns.completedAt(row);
+        }
+    }
+
+    //description of a slot without building the task, used to fill the text index after a load
+    String descriptionAt(int index) {
+        Objects.checkIndex(index, size);
+        if (columns != null) return columns.description(rows[index]);
+        Task task = elements[index];
+        return (task != null) ? task.getDescription() : snapshot.getDescription(rows[index]);
+    }
+
+    //drops every slot whose bit is set in one pass, used to sweep deleted tasks
+    //in columnar mode the rows give up their descriptions and the heap is packed if that left it mostly garbage
+    void removeSlots(BitSet slots) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (slots.get(i)) {
+                if (columns != null) columns.release(rows[i]);
+                continue;
+            }
+            if (elements != null) elements[kept] = elements[i];
+            rows[kept] = rows[i];
+            kept++;
+        }
+        if (elements != null) Arrays.fill(elements, kept, size, null);
+        if (columns != null) columns.packIfSparse();
+        size = kept;
+        modCount++;
+    }
+
+    //returns the task only if it was already materialized
+    Task peek(int index) {
+        Objects.checkIndex(index, size);
+        return (columns != null) ? null : elements[index];
+    }
+
+    //snapshot row of a slot that was never materialized, otherwise -1
+    int snapshotRow(int index) {
+        Objects.checkIndex(index, size);
+        return (columns == null && elements[index] == null) ? rows[index] : -1;
+    }
+
+    TaskSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > rows.length) {
+            int newLength = Math.max(capacity, rows.length + (rows.length >> 1));
+            if (elements != null) elements = Arrays.copyOf(elements, newLength);
+            rows = Arrays.copyOf(rows, newLength);
+        }
+    }
+}
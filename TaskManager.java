@@ -3,147 +3,1060 @@ package TaskManager;
 import Task.Task;
 
 import java.io.*;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 public class TaskManager{
-    private ArrayList<Task> tasks; //arraylist for dynamic resizing
+    private TaskList tasks; //array backed list, tasks loaded from the snapshot are only built when accessed
     private static final  String FILENAME = "todo.ser";
 
+    private final TaskJournal journal;
+    private boolean persisted; //true once the list matches what is on disk, from then on only changes get journaled
+    private final ShardedTaskStore shards; //null for the single file, otherwise every change goes to the journal of its shard
+    private final boolean columnar;
+
+    //undo/redo and point-in-time history, off until enableHistory
+    private final File historyFile;
+    private TaskHistory history;
+    private boolean undoing; //changes made by undo and redo are not new steps
+
+    //cold tier for deleted and long completed tasks, off until enableArchive
+    private final File archiveDirectory;
+    private TaskArchive archive;
+    private final List<Task> archiving = new ArrayList<>(); //deleted inside a batch, archived in one write when it ends
+
+    //every task gets a stable id, the index maps it to the slot in the list so id lookups are O(1)
+    private final TaskIdIndex idIndex = new TaskIdIndex();
+    private long nextId = 1;
+
+    //deleted slots are only marked here and swept out in one pass before the next positional read
+    private final BitSet deleted = new BitSet();
+
+    //secondary indexes, kept up to date on every change instead of rescanning the list
+    private final List<TaskIndex> indexes = new ArrayList<>();
+    private final Map<String, PredicateIndex> namedIndexes = new HashMap<>();
+    private final List<PredicateIndex> timedIndexes = new ArrayList<>(); //checked again as the clock passes deadlines
+    private long timedCheckedAt; //TaskCodec millis of the last catch up
+    private final Map<SortedTaskIndex.Key, SortedTaskIndex> sortedIndexes = new EnumMap<>(SortedTaskIndex.Key.class); //made on first use
+    private final PredicateIndex completedIndex = new PredicateIndex(Task::isCompleted) {
+        @Override
+        protected boolean matches(TaskList tasks, int slot) {
+            return tasks.isCompletedAt(slot); //straight from the snapshot, no task gets built
+        }
+    };
+    private final PredicateIndex pendingIndex = new PredicateIndex(task -> !task.isCompleted()) {
+        @Override
+        protected boolean matches(TaskList tasks, int slot) {
+            return !tasks.isCompletedAt(slot);
+        }
+    };
+    private final List<TaskChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private boolean inBatch; //listeners wait for the end of the batch
+    private final DeadlineIndex deadlineIndex = new DeadlineIndex();
+    private DeadlineScheduler deadlineScheduler;
+    private TextIndex textIndex; //built on the first search, nothing to pay for when nobody searches
+    private TaskStatistics statistics; //made on first use
+    private TaskEventBus eventBus; //created on first use, nothing is published while nobody subscribed
+    private volatile long version; //bumped by every change, tells readers whether anything changed since they last looked
+    private TaskView view; //kept up to date by adds and deletes once someone asked for one, null means build on demand
+    private final TaskMetrics metrics = new TaskMetrics(); //only successful operations are timed, lookups that found nothing are not
+
     //HELPER METHOD TO CHECK IS THE INDEX IS VALID
     private boolean isValidIndex(int index){
         return index >= 0 && index < tasks.size();
     }
 
     public TaskManager(){
-        tasks = new ArrayList<>();
+        this(FILENAME, TaskJournal.DEFAULT_GROUP_COMMIT, TaskJournal.DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    //groupCommitSize = journal records per fsync, compactionThreshold = records before the journal is folded into the snapshot
+    public TaskManager(String fileName, int groupCommitSize, int compactionThreshold){
+        this(fileName, groupCommitSize, compactionThreshold, false);
+    }
+
+    //columnar = tasks are kept as primitive columns (TaskColumns) instead of Task objects, for very large lists
+    //the manager then keeps a copy of every added task and hands out flyweight views, change them only through the manager
+    public TaskManager(String fileName, int groupCommitSize, int compactionThreshold, boolean columnar){
+        this(fileName, groupCommitSize, compactionThreshold, columnar, null);
+    }
+
+    //tasks kept in the shards of the store, loadFromFile only brings in the pending shard, see loadShard
+    public TaskManager(ShardedTaskStore store){
+        this(new File(store.getDirectory(), "tasks").getPath(), TaskJournal.DEFAULT_GROUP_COMMIT,
+                TaskJournal.DEFAULT_COMPACTION_THRESHOLD, false, store);
+    }
+
+    private TaskManager(String fileName, int groupCommitSize, int compactionThreshold, boolean columnar, ShardedTaskStore shards){
+        this.columnar = columnar;
+        this.shards = shards;
+        this.historyFile = new File(fileName + ".history");
+        this.archiveDirectory = new File(fileName + ".archive");
+        tasks = columnar ? TaskList.columnar() : new TaskList();
+        journal = new TaskJournal(new File(fileName), groupCommitSize, compactionThreshold);
+        journal.setMetrics(metrics);
+        if(shards != null) shards.setMetrics(metrics);
+        installIndex(completedIndex);
+        installIndex(pendingIndex);
+        installIndex(deadlineIndex);
+        namedIndexes.put("completed", completedIndex);
+        namedIndexes.put("pending", pendingIndex);
     }
 
     public void addTask(Task task){
+        long start = metrics.start();
+        long oldId = task.getId();
+        long oldNextId = nextId;
+        assignId(task);
+        try {
+            logAdd(task); //before the list, a task that cannot be journaled leaves the manager as it was
+        } catch (RuntimeException e) {
+            task.setId(oldId);
+            nextId = oldNextId;
+            throw e;
+        }
         tasks.add(task);
+        task = tasks.get(tasks.size() - 1); //columnar lists keep a copy, everyone after this sees the stored one
+        idIndex.put(task.getId(), tasks.size() - 1);
+        for (TaskIndex index : indexes) index.taskAdded(tasks.size() - 1, task);
+        if(recording()) history.recordAdd(task);
+        if(view != null) view = view.appended(Collections.singletonList(task));
+        publish(TaskEvent.Type.ADDED, task);
+        if(notifying()){
+            int position = livePosition(tasks.size() - 1);
+            for (TaskChangeListener listener : listeners) listener.tasksAdded(position, position);
+        }
+        metrics.count(TaskMetrics.Counter.TASKS_ADDED, 1);
+        metrics.record(TaskMetrics.Operation.ADD, start);
+    }
+
+    //bulk insert, one list grow instead of one per task
+    //journaled first; if a task cannot be journaled only the ones before it are added, then the error is thrown
+    //every id goes into the id index as soon as it is assigned, so a later task of the same batch with that id gets a new one
+    public void addTasks(Collection<Task> newTasks){
+        long start = metrics.start();
+        int first = tasks.size();
+        int logged = 0;
+        RuntimeException failure = null;
+        for (Task task : newTasks) {
+            long oldId = task.getId();
+            long oldNextId = nextId;
+            assignId(task);
+            try {
+                logAdd(task);
+            } catch (RuntimeException e) {
+                task.setId(oldId);
+                nextId = oldNextId;
+                failure = e;
+                break;
+            }
+            idIndex.put(task.getId(), first + logged);
+            logged++;
+        }
+        if(failure != null) newTasks = new ArrayList<>(newTasks).subList(0, logged);
+        tasks.addAll(newTasks);
+        for (int i = first; i < tasks.size(); i++) {
+            for (TaskIndex index : indexes) index.taskAdded(i, tasks.get(i));
+            publish(TaskEvent.Type.ADDED, tasks.get(i));
+        }
+        if(view != null) view = view.appended(tasks.subList(first, tasks.size())); //the stored tasks, copies when columnar
+        if(tasks.size() > first && notifying()){
+            int firstPosition = livePosition(first);
+            int lastPosition = firstPosition + tasks.size() - first - 1;
+            for (TaskChangeListener listener : listeners) listener.tasksAdded(firstPosition, lastPosition);
+        }
+        metrics.count(TaskMetrics.Counter.TASKS_ADDED, tasks.size() - first);
+        metrics.record(TaskMetrics.Operation.ADD_BULK, start);
+        if(failure != null) throw failure;
+    }
+
+    //BY ID
+    public Task getTask(long id){
+        int slot = idIndex.get(id);
+        return (slot >= 0) ? tasks.get(slot) : null;
+    }
+
+    //the task only gets a tombstone here, no list shifting
+    //journaled before anything in memory changes, a delete that cannot be journaled leaves the manager as it was
+    public boolean deleteTaskById(long id){
+        long start = metrics.start();
+        int slot = idIndex.get(id);
+        if(slot < 0) return false;
+
+        Task stored = tasks.get(slot);
+        boolean archiveNow = archive != null && !inBatch; //a batch holds its journal records back, so its archive write waits too
+        Task old = (archiveNow || journaled()) ? TaskCodec.copy(stored) : null;
+        stored.setDeletionDate(LocalDateTime.now());
+        Task task = tasks.isColumnar() ? TaskCodec.copy(stored) : stored; //the row gives up its description at the next sweep, the copy outlives it
+        boolean archived = false;
+        try {
+            if(archiveNow) archive.append(task); //kept as history instead of dropped, on disk before the journal record
+            archived = archiveNow;
+            if(shards != null) shards.logDelete(task);
+            else if(persisted) journal.logDelete(id);
+        } catch (RuntimeException e) {
+            if(archived) archive.unarchive(id);
+            restore(stored, old);
+            throw e;
+        }
+        idIndex.remove(id);
+        if(recording()) history.recordDelete(task);
+        if(archive != null && inBatch) archiving.add(task);
+        boolean notify = notifying();
+        int position = (notify || view != null) ? livePosition(slot) : -1;
+        if(view != null) view = view.removed(position);
+        deleted.set(slot);
+        for (TaskIndex index : indexes) index.taskRemoved(slot);
+        publish(TaskEvent.Type.DELETED, task);
+        if(notify){
+            for (TaskChangeListener listener : listeners) listener.taskDeleted(position, task);
+        }
+        metrics.count(TaskMetrics.Counter.TASKS_DELETED, 1);
+        metrics.record(TaskMetrics.Operation.DELETE, start);
+        return true;
+    }
+
+    public boolean markCompleteById(long id){
+        return setCompletedById(id, true);
+    }
+
+    public boolean setCompletedById(long id, boolean completed){
+        long start = metrics.start();
+        int slot = idIndex.get(id);
+        if(slot < 0) return false;
+
+        Task task = tasks.get(slot);
+        Task old = journaled() ? TaskCodec.copy(task) : null;
+        TaskHistory.Before before = recording() ? new TaskHistory.Before(task) : null;
+        String fromShard = (shards != null) ? ShardedTaskStore.shardOf(task) : null;
+        task.setCompleted(completed);
+        try {
+            if(shards != null) shards.logMove(fromShard, task);
+            else if(persisted) journal.logComplete(task);
+        } catch (RuntimeException e) {
+            restore(task, old); //nothing but the task itself has seen the change yet
+            throw e;
+        }
+        if(before != null) history.recordChange(before, task);
+        changed(slot, task);
+        publish(completed ? TaskEvent.Type.COMPLETED : TaskEvent.Type.UPDATED, task);
+        metrics.record(TaskMetrics.Operation.COMPLETE, start);
+        return true;
+    }
+
+    public boolean updateTaskById(long id, String description, LocalDateTime deadline){
+        long start = metrics.start();
+        int slot = idIndex.get(id);
+        if(slot < 0) return false;
+
+        Task task = tasks.get(slot);
+        Task old = journaled() ? TaskCodec.copy(task) : null;
+        TaskHistory.Before before = recording() ? new TaskHistory.Before(task) : null;
+        task.setDescription(description);
+        task.setDeadline(deadline);
+        try {
+            if(shards != null) shards.logUpdate(task);
+            else if(persisted) journal.logUpdate(task);
+        } catch (RuntimeException e) {
+            restore(task, old);
+            throw e;
+        }
+        if(before != null) history.recordChange(before, task);
+        changed(slot, task);
+        publish(TaskEvent.Type.UPDATED, task);
+        metrics.record(TaskMetrics.Operation.UPDATE, start);
+        return true;
+    }
+
+    //BATCHES
+    public TaskBatch beginBatch(){
+        return new TaskBatch(this);
+    }
+
+    //one journal write, one sweep of the deleted slots, one event and one undo step for the whole batch
+    int commitBatch(TaskBatch batch){
+        if(inBatch) throw new IllegalStateException("A batch is already being committed");
+        inBatch = true;
+        view = null; //rebuilt once after the batch instead of patched for every task in it
+        boolean grouped = recording();
+        if(grouped) history.beginGroup();
+        journal.beginBatch();
+        if(shards != null) shards.beginBatch();
+        TaskMetrics.Span span = metrics.begin(TaskMetrics.Operation.BATCH);
+        int touched = 0;
+        try {
+            touched = batch.applyAll(this);
+            return touched;
+        } finally {
+            inBatch = false;
+            if(grouped) history.endGroup();
+            sweep();
+            RuntimeException archiveFailure = null;
+            if(!archiving.isEmpty()){
+                try {
+                    archive.appendAll(archiving); //one forced write for every delete of the batch
+                } catch (RuntimeException e) {
+                    archiveFailure = e;
+                }
+                archiving.clear();
+            }
+            journal.endBatch();
+            if(shards != null) shards.endBatch();
+            for (TaskChangeListener listener : listeners) listener.batchCommitted();
+            span.end(touched);
+            if(archiveFailure != null) throw archiveFailure;
+        }
+    }
+
+    //single file or the shard of the task
+    private void logAdd(Task task){
+        if(shards != null) shards.logAdd(task);
+        else if(persisted) journal.logAdd(task);
+    }
+
+    //whether a change is written anywhere, and so can fail before it is applied
+    private boolean journaled(){
+        return shards != null || persisted;
+    }
+
+    //puts a task back the way the copy saw it, for a change that could not be journaled
+    private static void restore(Task task, Task old){
+        task.setDescription(old.getDescription());
+        task.setDeadline(old.getDeadline());
+        task.setCompleted(old.isCompleted());
+        task.restoreHistory(old.getModificationDate(), old.getDeletionDate(), old.getCompletionDate());
+    }
+
+    //ids first, so the operation can change the tasks it found
+    List<Long> idsWhere(Predicate<Task> filter){
+        List<Long> ids = new ArrayList<>();
+        for (int slot = 0; slot < tasks.size(); slot++) {
+            if(deleted.get(slot)) continue;
+            Task task = tasks.get(slot);
+            if(filter.test(task)) ids.add(task.getId());
+        }
+        return ids;
+    }
+
+    private boolean notifying(){
+        return !inBatch && !listeners.isEmpty();
+    }
+
+    //HISTORY
+    //every change from now on can be undone, the last maxEntries of them (or maxBytes worth) stay in memory
+    //bulk inserts (addTasks, csv imports) are not undo steps
+    public void enableHistory(){
+        enableHistory(TaskHistory.DEFAULT_MAX_ENTRIES, TaskHistory.DEFAULT_MAX_BYTES);
+    }
+
+    public void enableHistory(int maxEntries, int maxBytes){
+        if(history == null) history = new TaskHistory(historyFile, maxEntries, maxBytes);
+    }
+
+    public boolean canUndo(){
+        return history != null && history.canUndo();
+    }
+
+    public boolean canRedo(){
+        return history != null && history.canRedo();
+    }
+
+    //an undone delete puts the task back with its old id, at the end of the list
+    public boolean undo(){
+        long start = metrics.start();
+        List<TaskHistory.Delta> deltas = (history != null) ? history.undo() : null;
+        if(deltas == null) return false;
+        for (TaskHistory.Delta delta : deltas) apply(delta, true);
+        metrics.record(TaskMetrics.Operation.UNDO, start);
+        return true;
+    }
+
+    public boolean redo(){
+        long start = metrics.start();
+        List<TaskHistory.Delta> deltas = (history != null) ? history.redo() : null;
+        if(deltas == null) return false;
+        for (TaskHistory.Delta delta : deltas) apply(delta, false);
+        metrics.record(TaskMetrics.Operation.REDO, start);
+        return true;
+    }
+
+    //the task as it was at that moment, null if it did not exist then
+    //walks back from the current state through the logged deltas newer than time
+    //throws IllegalArgumentException for a time before the oldest delta the rolled log still holds
+    public Task getTaskAt(long id, LocalDateTime time){
+        if(history == null) throw new IllegalStateException("History is not enabled");
+        long at = TaskCodec.toMillis(time);
+        long since = history.retainedSince();
+        if(at < since) throw new IllegalArgumentException("History only goes back to " + TaskCodec.fromMillis(since));
+        Task current = getTask(id);
+        Task state = (current != null) ? TaskCodec.copy(current) : null;
+        List<TaskHistory.Delta> deltas = history.deltasOf(id);
+        for (int i = deltas.size() - 1; i >= 0 && deltas.get(i).time > at; i--) {
+            TaskHistory.Delta delta = deltas.get(i);
+            if(delta.op == TaskHistory.OP_ADD) state = null;
+            else if(delta.op == TaskHistory.OP_DELETE) state = undeleted(delta.task);
+            else if(state != null) delta.applyTo(state, true);
+        }
+        if(state != null && state.getCreationDate() != null && state.getCreationDate().isAfter(time)) return null;
+        return state;
+    }
+
+    private boolean recording(){
+        return history != null && !undoing;
+    }
+
+    private void apply(TaskHistory.Delta delta, boolean undo){
+        undoing = true;
+        try {
+            if(delta.op == TaskHistory.OP_CHANGE){
+                int slot = idIndex.get(delta.id);
+                if(slot < 0) return; //deleted since, nothing to change
+                Task task = tasks.get(slot);
+                String fromShard = (shards != null) ? ShardedTaskStore.shardOf(task) : null;
+                delta.applyTo(task, undo);
+                changed(slot, task);
+                if(shards != null) shards.logMove(fromShard, task); //undoing a completion moves it back
+                else if(persisted) journal.logUpdate(task);
+                publish(task.isCompleted() ? TaskEvent.Type.COMPLETED : TaskEvent.Type.UPDATED, task);
+            } else if((delta.op == TaskHistory.OP_ADD) != undo){
+                addTask(undeleted(delta.task)); //redo of an add or undo of a delete
+                if(archive != null) archive.unarchive(delta.id); //back in the list, so no longer in the archive
+            } else {
+                deleteTaskById(delta.id);
+            }
+        } finally {
+            undoing = false;
+        }
+    }
+
+    private static Task undeleted(Task task){
+        Task copy = TaskCodec.copy(task);
+        copy.restoreHistory(task.getModificationDate(), null, task.getCompletionDate());
+        return copy;
+    }
+
+    //SHARDS
+    //only for a manager opened on a ShardedTaskStore, every shard is always complete on disk
+    public List<String> getShardNames(){
+        return requireShards().shardNames();
+    }
+
+    public boolean isShardLoaded(String name){
+        return requireShards().isLoaded(name);
+    }
+
+    //brings the tasks of one shard in, e.g. "done-2024-05", tasks the manager already has are skipped
+    //the least recently used completed shards are evicted again once more than the store's limit are loaded
+    public boolean loadShard(String name){
+        if(requireShards().isLoaded(name)) return false;
+        TaskList loaded = shards.load(name);
+        List<Task> fresh = new ArrayList<>(loaded.size());
+        for (int i = 0; i < loaded.size(); i++) {
+            int slot = idIndex.get(loaded.idAt(i));
+            if(slot < 0){
+                fresh.add(loaded.get(i));
+                continue;
+            }
+            //in two shards after a crash between the two records of a move, the newer copy wins
+            Task mine = tasks.get(slot);
+            Task theirs = loaded.get(i);
+            if(theirs.getModificationDate() != null && mine.getModificationDate() != null
+                    && theirs.getModificationDate().isAfter(mine.getModificationDate())){
+                shards.logDelete(mine);
+                tasks.set(slot, theirs);
+                for (TaskIndex index : indexes) index.taskChanged(slot, theirs);
+            } else if(!ShardedTaskStore.shardOf(mine).equals(name)){
+                shards.logDelete(theirs); //the stale copy, e.g. a task reopened after its month was written
+            }
+        }
+        attach(fresh);
+        for (String cold : shards.overLimit()) evictShard(cold);
+        return true;
+    }
+
+    public int loadAllShards(){
+        int loaded = 0;
+        for (String name : requireShards().shardNames()) {
+            if(loadShard(name)) loaded++;
+        }
+        return loaded;
+    }
+
+    //drops the tasks of a completed shard from memory, they stay on disk
+    public boolean evictShard(String name){
+        if(name.equals(ShardedTaskStore.PENDING)) throw new IllegalArgumentException("The pending shard is always loaded");
+        if(!requireShards().isLoaded(name)) return false;
+        for (int slot = 0; slot < tasks.size(); slot++) {
+            if(deleted.get(slot) || !tasks.isCompletedAt(slot)) continue; //pending tasks are never in a completed shard
+            Task task = tasks.get(slot);
+            if(!ShardedTaskStore.shardOf(task).equals(name)) continue;
+            idIndex.remove(task.getId());
+            deleted.set(slot);
+            for (TaskIndex index : indexes) index.taskRemoved(slot);
+        }
+        sweep();
+        shards.evicted(name);
+        reloaded();
+        return true;
+    }
+
+    //evicts the completed shards nobody touched for idleMillis, returns how many went
+    public int evictIdleShards(long idleMillis){
+        List<String> idle = requireShards().idle(idleMillis);
+        for (String name : idle) evictShard(name);
+        return idle.size();
+    }
+
+    private ShardedTaskStore requireShards(){
+        if(shards == null) throw new IllegalStateException("This manager does not use a ShardedTaskStore");
+        return shards;
+    }
+
+    //tasks that were already stored somewhere, no journal records, no undo steps, one reload event
+    private void attach(List<Task> loaded){
+        int first = tasks.size();
+        tasks.addAll(loaded);
+        for (int i = first; i < tasks.size(); i++) {
+            long id = tasks.idAt(i);
+            idIndex.put(id, i);
+            nextId = Math.max(nextId, id + 1);
+            for (TaskIndex index : indexes) index.taskAdded(i, tasks.get(i));
+        }
+        reloaded();
+    }
+
+    private void reloaded(){
+        view = null;
+        publish(TaskEvent.Type.RELOADED, null);
+        for (TaskChangeListener listener : listeners) listener.tasksReloaded();
+    }
+
+    //ARCHIVE
+    //with the archive on, deleted tasks are archived as they are deleted instead of being dropped
+    public void enableArchive(){
+        if(archive == null) archive = new TaskArchive(archiveDirectory);
+    }
+
+    //null until enableArchive, queries on it do not touch the working set
+    public TaskArchive getArchive(){
+        return archive;
+    }
+
+    //moves the tasks completed more than days ago into the archive, out of the list, the indexes and the task file
+    //(journaled as deletes, so the next compaction leaves them out); the archive is on disk before they leave
+    //every task that goes is a DELETED event and an undo step like any delete, listeners get one reload
+    public int archiveCompleted(int days){
+        if(archive == null) throw new IllegalStateException("The archive is not enabled");
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(days);
+        sweep();
+        List<Integer> slots = new ArrayList<>();
+        for (int slot = 0; slot < tasks.size(); slot++) {
+            if(!tasks.isCompletedAt(slot)) continue; //pending tasks are never built
+            LocalDateTime completed = tasks.get(slot).getCompletionDate();
+            if(completed != null && completed.isBefore(cutoff)) slots.add(slot);
+        }
+        if(slots.isEmpty()) return 0;
+
+        List<Task> archived = new ArrayList<>(slots.size());
+        for (int slot : slots) archived.add(TaskCodec.copy(tasks.get(slot))); //the rows go with the sweep
+        archive.appendAll(archived);
+        archive.flush();
+        journal.beginBatch();
+        if(shards != null) shards.beginBatch();
+        for (int i = 0; i < slots.size(); i++) {
+            int slot = slots.get(i);
+            Task task = archived.get(i);
+            idIndex.remove(task.getId());
+            deleted.set(slot);
+            for (TaskIndex index : indexes) index.taskRemoved(slot);
+            if(recording()) history.recordDelete(task);
+            if(shards != null) shards.logDelete(task);
+            else if(persisted) journal.logDelete(task.getId());
+            publish(TaskEvent.Type.DELETED, task);
+        }
+        journal.endBatch();
+        if(shards != null) shards.endBatch();
+        sweep();
+        view = null;
+        for (TaskChangeListener listener : listeners) listener.tasksReloaded();
+        metrics.count(TaskMetrics.Counter.TASKS_DELETED, slots.size());
+        return slots.size();
+    }
+
+    //DEADLINES
+    //all three only touch the tasks in range, O(log n + k)
+    public List<Task> getTasksDueBefore(LocalDateTime time){
+        return tasksFor(deadlineIndex.dueBefore(TaskCodec.toMillis(time)));
+    }
+
+    public List<Task> getTasksDueBetween(LocalDateTime from, LocalDateTime to){
+        return tasksFor(deadlineIndex.dueBetween(TaskCodec.toMillis(from), TaskCodec.toMillis(to)));
+    }
+
+    public List<Task> getOverdueTasks(){
+        return getTasksDueBefore(LocalDateTime.now());
     }
 
+    //started on first use, listeners are called on the scheduler thread
+    public DeadlineScheduler getDeadlineScheduler(){
+        if(deadlineScheduler == null){
+            deadlineScheduler = new DeadlineScheduler(deadlineIndex);
+            deadlineScheduler.start();
+        }
+        return deadlineScheduler;
+    }
+
+    //SEARCH
+    //tasks whose description has a word starting with every word of the query, best match first
+    public List<Task> search(String query, int limit){
+        return tasksFor(searchIds(query, limit));
+    }
+
+    public List<Long> searchIds(String query, int limit){
+        long start = metrics.start();
+        if(textIndex == null){
+            textIndex = new TextIndex();
+            installIndex(textIndex);
+        }
+        List<Long> ids = textIndex.search(query, limit);
+        metrics.record(TaskMetrics.Operation.SEARCH, start);
+        return ids;
+    }
+
+    private List<Task> tasksFor(List<Long> ids){
+        List<Task> result = new ArrayList<>(ids.size());
+        for (long id : ids) {
+            Task task = getTask(id);
+            if(task != null) result.add(task);
+        }
+        return result;
+    }
+
+    //INDEXES
+    //adds a plugin index, it gets filled straight away; the predicate is checked when a task changes, so it must
+    //not depend on the clock, see registerTimedIndex for that
+    public PredicateIndex registerIndex(String name, Predicate<Task> predicate){
+        PredicateIndex index = new PredicateIndex(predicate);
+        registerIndex(name, index);
+        return index;
+    }
+
+    //a plugin index whose predicate depends on the clock (overdue, due today); before it is read, the open tasks whose
+    //deadline passed since the last read are checked again, and every task once the day changed
+    //so the predicate may only change its answer when a deadline or midnight passes
+    public PredicateIndex registerTimedIndex(String name, Predicate<Task> predicate){
+        PredicateIndex index = new PredicateIndex(predicate) {
+            @Override
+            protected void beforeRead() {
+                catchUpTimed();
+            }
+        };
+        if(timedIndexes.isEmpty()) timedCheckedAt = TaskCodec.toMillis(LocalDateTime.now());
+        registerIndex(name, index);
+        timedIndexes.add(index);
+        return index;
+    }
+
+    //O(deadlines passed since the last read), O(tasks) once a day
+    private void catchUpTimed(){
+        if(timedIndexes.isEmpty()) return;
+        long now = TaskCodec.toMillis(LocalDateTime.now());
+        if(now <= timedCheckedAt) return;
+        long day = 24L * 60 * 60 * 1000; //millis count local time like utc, so this is local midnight
+        if(now / day != timedCheckedAt / day){
+            sweep();
+            for (PredicateIndex index : timedIndexes) index.rebuild(tasks);
+        } else {
+            for (DeadlineIndex.Key key : deadlineIndex.range(timedCheckedAt, now + 1)) {
+                int slot = idIndex.get(key.id);
+                if(slot < 0) continue;
+                Task task = tasks.get(slot);
+                for (PredicateIndex index : timedIndexes) index.taskChanged(slot, task);
+            }
+        }
+        timedCheckedAt = now;
+    }
+
+    public void registerIndex(String name, PredicateIndex index){
+        registerIndex(index);
+        namedIndexes.put(name, index);
+    }
+
+    public void registerIndex(TaskIndex index){
+        installIndex(index);
+    }
+
+    //not overridable, the constructor uses it
+    private void installIndex(TaskIndex index){
+        sweep();
+        index.rebuild(tasks);
+        indexes.add(index);
+    }
+
+    //SORTED VIEWS
+    //read-only live list of every task ordered by one of its dates (id breaks ties), tasks without the date last
+    //when ascending, first when not; the index behind it is built once and then kept sorted on every change,
+    //so a sorted table costs O(log n) per visible row instead of a sort per refresh
+    public List<Task> getSortedView(SortedTaskIndex.Key key, boolean ascending){
+        SortedTaskIndex index = sortedIndex(key);
+        return new AbstractList<Task>() {
+            @Override
+            public Task get(int rank) {
+                return tasks.get(index.slotAt(ascending ? rank : index.size() - 1 - rank));
+            }
+
+            @Override
+            public int size() {
+                return index.size();
+            }
+        };
+    }
+
+    //row of the task in getSortedView(key, true), -1 if there is no task with that id
+    public int getSortedRank(SortedTaskIndex.Key key, long id){
+        int slot = idIndex.get(id);
+        return (slot >= 0) ? sortedIndex(key).rankOfSlot(slot) : -1;
+    }
+
+    private SortedTaskIndex sortedIndex(SortedTaskIndex.Key key){
+        SortedTaskIndex index = sortedIndexes.get(key);
+        if(index == null){
+            index = new SortedTaskIndex(key);
+            installIndex(index);
+            sortedIndexes.put(key, index);
+        }
+        return index;
+    }
+
+    //STATISTICS
+    //kept up to date on every change once asked for, every question after that is O(1)
+    public TaskStatistics getStatistics(){
+        if(statistics == null){
+            statistics = new TaskStatistics();
+            installIndex(statistics);
+        }
+        return statistics;
+    }
+
+    //read-only live view of a named index, no copy is made
+    public List<Task> getIndexedTasks(String name){
+        return indexView(name);
+    }
+
+    //at most limit tasks of a named index from the offset-th match on, O(limit log n) through the index's ranks
+    public List<Task> getIndexedTasks(String name, int offset, int limit){
+        if(offset < 0 || limit < 0) throw new IllegalArgumentException("Negative offset or limit");
+        List<Task> all = indexView(name);
+        int from = Math.min(offset, all.size());
+        int to = (int) Math.min(all.size(), (long) from + limit);
+        return new ArrayList<>(all.subList(from, to));
+    }
+
+    private List<Task> indexView(String name){
+        PredicateIndex index = namedIndexes.get(name);
+        if(index == null) throw new IllegalArgumentException("No index named " + name);
+        return index.view(slot -> tasks.get(slot));
+    }
+
+    private void changed(int slot, Task task){
+        for (TaskIndex index : indexes) index.taskChanged(slot, task);
+        boolean notify = notifying();
+        if(!notify && view == null) return;
+        int position = livePosition(slot);
+        if(view != null) view = view.replaced(position, task); //the versions already handed out keep the old copy
+        if(notify){
+            for (TaskChangeListener listener : listeners) listener.taskUpdated(position, task);
+        }
+    }
+
+    //METRICS
+    //timings of every operation and counters, see TaskMetrics for the ways to read them
+    public TaskMetrics getMetrics(){
+        return metrics;
+    }
+
+    //EVENT BUS
+    //typed events for consumers on their own threads (views, indexes, metrics, replication), see TaskEventBus
+    //every change is published, batches included, the listeners below are the synchronous alternative
+    public TaskEventBus getEventBus(){
+        if(eventBus == null) eventBus = new TaskEventBus();
+        return eventBus;
+    }
+
+    //every change passes through here
+    private void publish(TaskEvent.Type type, Task task){
+        version++; //only ever written by the one thread that is changing the list
+        if(eventBus != null && eventBus.hasSubscribers()) emit(eventBus, type, task);
+    }
+
+    //straight onto the bus here, ConcurrentTaskManager holds the events back until its lock is released
+    void emit(TaskEventBus bus, TaskEvent.Type type, Task task){
+        bus.publish(type, task);
+    }
+
+    //grows with every add, change, delete and reload, equal versions mean equal task lists (e.g. for http etags)
+    public long getVersion(){
+        return version;
+    }
+
+    //LISTENERS + LIVE VIEW
+    public void addChangeListener(TaskChangeListener listener){
+        listeners.add(listener);
+    }
+
+    public void removeChangeListener(TaskChangeListener listener){
+        listeners.remove(listener);
+    }
+
+    //immutable version of the list for paging, cursors and (parallel) streams, see TaskView
+    //the first call builds it in O(n) (snapshot rows that were never built stay unbuilt until read),
+    //after that adds, edits and deletes only copy the chunk they touch
+    //so asking again after a change costs O(chunk), not a copy of every task
+    public TaskView view(){
+        if(view == null){
+            sweep();
+            view = TaskView.of(tasks, version);
+        }
+        view = view.withVersion(version);
+        return view;
+    }
+
+    //one page of the current version, O(page) once the view exists
+    public TaskView.Page page(int offset, int limit, Predicate<Task> filter){
+        return view().page(offset, limit, filter);
+    }
+
+    //read-only view of every task in list order, nothing is copied and it follows every change
+    public List<Task> getTasksView(){
+        return tasksView;
+    }
+
+    private final List<Task> tasksView = new AbstractList<Task>() {
+        @Override
+        public Task get(int position) {
+            sweep();
+            return tasks.get(position);
+        }
+
+        @Override
+        public int size() {
+            return deleted.isEmpty() ? tasks.size() : tasks.size() - deleted.cardinality();
+        }
+    };
+
+    //position of a slot once the tombstones in front of it are gone, O(tombstones)
+    private int livePosition(int slot){
+        int position = slot;
+        for (int d = deleted.nextSetBit(0); d >= 0 && d < slot; d = deleted.nextSetBit(d + 1)) position--;
+        return position;
+    }
+
+    //BY POSITION
     public void deleteTask(int index){
+        sweep();
         if(isValidIndex(index)) {
-            Task task = tasks.get(index);
-            task.setDeletionDate(LocalDateTime.now());
-
-            tasks.remove(index);
+            deleteTaskById(tasks.idAt(index));
         }
     }
 
     public void markComplete(int index){
+        sweep();
         if(isValidIndex(index)){
-            Task task = tasks.get(index);
-            task.setCompleted(true);
+            markCompleteById(tasks.idAt(index));
         }
     }
 
     public void updateTask(int index, String description, LocalDateTime deadline){
+        sweep();
         if(isValidIndex(index)){
-            Task task = tasks.get(index);
-            task.setDescription(description);
-            task.setDeadline(deadline);
+            updateTaskById(tasks.idAt(index), description, deadline);
+        }
+    }
 
+    //HELPER METHODS FOR THE IDS
+    private void assignId(Task task){
+        if(task.getId() == 0 || idIndex.get(task.getId()) >= 0){
+            task.setId(nextId++);
+        } else {
+            nextId = Math.max(nextId, task.getId() + 1);
+        }
+    }
+
+    //removes the tombstones in one pass, the slots behind them moved so the index is rebuilt
+    private void sweep(){
+        if(deleted.isEmpty()) return;
+        tasks.removeSlots(deleted);
+        for (TaskIndex index : indexes) index.slotsSwept(deleted);
+        deleted.clear();
+        rebuildIndex();
+    }
+
+    private void rebuildIndex(){
+        idIndex.clear();
+        for (int i = 0; i < tasks.size(); i++) {
+            long id = tasks.idAt(i);
+            idIndex.put(id, i);
+            nextId = Math.max(nextId, id + 1);
         }
     }
 
     //returns a ref to the list for gui to display
     public ArrayList<Task> getAllTasks(){
+        sweep();
         return new ArrayList<>(tasks);
     }
 
 
-    public ArrayList<Task> getCompletedTasks(){
-        List<Task> completed = new ArrayList<>();
-        for(Task task : tasks){
-            if(task.isCompleted()) completed.add(task);
-        }
-        return (ArrayList<Task>) completed;
+    //both come from the status indexes, read-only views that cost O(result) and copy nothing
+    public List<Task> getCompletedTasks(){
+        return getIndexedTasks("completed");
     }
 
-    public ArrayList<Task> getIncompleteTasks(){
-        List<Task> incomplete = new ArrayList<>();
-        for(Task task : tasks){
-            if(!task.isCompleted()) incomplete.add(task);
-        }
-        return (ArrayList<Task>) incomplete;
+    public List<Task> getIncompleteTasks(){
+        return getIndexedTasks("pending");
     }
 
-    //serialization- saves entire ArrayList as bin object
+    //changes are already in the journal so saving only forces them to disk,
+    //the whole list is written only when it did not come from the file
     public void saveToFile(){
-        try(ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(FILENAME))){
-            out.writeObject(tasks);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        TaskMetrics.Span span = metrics.begin(TaskMetrics.Operation.SAVE);
+        if(archive != null) archive.flush(); //deletes since the last block
+        if(shards != null){
+            shards.save(); //only the shards that changed
+        } else if(persisted){
+            journal.sync();
+        } else {
+            sweep();
+            journal.writeSnapshot(tasks);
+            persisted = true;
         }
+        span.end(tasks.size());
     }
 
     public void loadFromFile() {
-        File file = new File(FILENAME);
-        if (file.exists()) {
-            try (ObjectInputStream ois = new ObjectInputStream(
-                    new FileInputStream(file))) {
-                tasks = (ArrayList<Task>) ois.readObject();
-            } catch (IOException | ClassNotFoundException e) {
-                e.printStackTrace();
+        TaskMetrics.Span span = metrics.begin(TaskMetrics.Operation.LOAD);
+        try {
+            TaskList loaded;
+            if (shards != null) {
+                shards.unloadAll();
+                loaded = shards.load(ShardedTaskStore.PENDING); //completed months stay on disk until asked for
+            } else {
+                loaded = journal.recover(); //mapped snapshot + journal replay
             }
-        }
-    }
-
-    public void exportUsingCSV(File file){
-        try(PrintWriter writer = new PrintWriter(file)){
-            writer.println("Description,Deadline,Completed,Created,CompletionDate");
-
-            for (Task task:  tasks){
-                writer.println(task.toCSV());
+            if (loaded != null) {
+                tasks = columnar ? loaded.toColumnar() : loaded;
+                deleted.clear();
+                rebuildIndex(); //ids come from the snapshot, the tasks themselves stay unbuilt
+                if (shards != null) nextId = Math.max(nextId, shards.maxId() + 1);
+                for (TaskIndex index : indexes) index.rebuild(tasks);
+                persisted = true;
+                view = null;
+                if(history != null) history.clearUndo(); //the old steps belong to the list that was replaced
+                publish(TaskEvent.Type.RELOADED, null);
+                for (TaskChangeListener listener : listeners) listener.tasksReloaded();
+                span.end(tasks.size());
             }
-            System.out.println("Exported" + tasks.size() + "tasks to CSV");
-        }catch(FileNotFoundException e){
+        } catch (RuntimeException e) {
             e.printStackTrace();
         }
     }
 
+    //flushes the last journal group, call before exiting
+    public void close(){
+        if(deadlineScheduler != null) deadlineScheduler.stop();
+        journal.close();
+        if(shards != null) shards.close();
+        if(archive != null) archive.close();
+        if(history != null) history.close();
+        if(eventBus != null) eventBus.close();
+    }
 
-    public void importFromCSV(File file) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            reader.readLine();
-
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                //to ensure the line has enough data columns
-                if (parts.length >= 4) {
-
-                    //parse data
-                    String description = parts[0].replace("\"", "");
-                    String deadlineStr = parts[1];
-                    String completedStr = parts[2];
-                    String createdStr = parts[3];
+    public int exportUsingCSV(File file){
+        return exportUsingCSV(file, CsvExporter.ALL);
+    }
 
+    //exports only the tasks that pass the filter (CsvExporter.COMPLETED / PENDING), a .gz file name gets gzipped
+    public int exportUsingCSV(File file, Predicate<Task> filter){
+        return exportUsingCSV(file, filter, IoProgress.NONE);
+    }
 
-                    DateTimeFormatter fmt = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss");
-                    LocalDateTime deadline = deadlineStr.equals("No Deadline") ?
-                            null : LocalDateTime.parse(deadlineStr, fmt);
+    //same, reporting the bytes written, a cancelled export deletes the half written file
+    public int exportUsingCSV(File file, Predicate<Task> filter, IoProgress progress){
+        int rows = 0;
+        Iterable<Task> source = exportSource();
+        TaskMetrics.Span span = metrics.begin(TaskMetrics.Operation.EXPORT_CSV);
+        try {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                WritableByteChannel out = ProgressStreams.counting(channel, progress);
+                if (file.getName().toLowerCase().endsWith(".gz")) {
+                    try (OutputStream gzip = new GZIPOutputStream(Channels.newOutputStream(out), 1 << 16)) {
+                        rows = new CsvExporter().export(source, filter, gzip);
+                    }
+                } else {
+                    rows = new CsvExporter().export(source, filter, out);
+                }
+            }
+            span.end(rows);
+            metrics.count(TaskMetrics.Counter.ROWS_EXPORTED, rows);
+            System.out.println("Exported " + rows + " tasks to CSV");
+        } catch (InterruptedIOException e) {
+            file.delete();
+            rows = 0;
+            System.out.println("Export cancelled");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return rows;
+    }
 
-                    LocalDateTime created = LocalDateTime.parse(createdStr, fmt);
-                    boolean completed = completedStr.equalsIgnoreCase("Yes");
+    //what the exporter walks over, subclasses can hand out a snapshot instead of the live list
+    protected Iterable<Task> exportSource(){
+        sweep();
+        return tasks;
+    }
 
+    //quote aware parallel import, all good rows are added in one go at the end
+    public ImportReport importFromCSV(File file) {
+        return importFromCSV(file, IoProgress.NONE);
+    }
 
-                    Task task = new Task(description, deadline, completed, created);
-                    tasks.add(task);
-                }
-            }
-            System.out.println("Imported " + tasks.size() + " tasks from CSV");
+    //same, reporting the bytes read, nothing is added when it is cancelled since the insert only happens at the end
+    public ImportReport importFromCSV(File file, IoProgress progress) {
+        ImportReport report = new ImportReport();
+        TaskMetrics.Span span = metrics.begin(TaskMetrics.Operation.IMPORT_CSV);
+        try (InputStream raw = ProgressStreams.counting(new FileInputStream(file), file.length(), progress);
+             InputStream in = file.getName().toLowerCase().endsWith(".gz") ? new GZIPInputStream(raw, 1 << 16) : raw;
+             Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            report = new CsvImporter().importInto(reader, this::addTasks);
+            span.end(report.getRowsRead());
+            metrics.count(TaskMetrics.Counter.ROWS_IMPORTED, report.getImported());
+            metrics.count(TaskMetrics.Counter.ROWS_REJECTED, report.getRejected());
+            System.out.println(report);
+        } catch (InterruptedIOException e) {
+            System.out.println("Import cancelled");
         } catch (IOException e) {
             e.printStackTrace();
         }
+        return report;
     }
 
 }
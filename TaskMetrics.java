@@ -0,0 +1,350 @@
+/* data-layer */
+package TaskManager;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import javax.management.*;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+//timings and counters for one TaskManager, always on: recording is two clock reads and two uncontended atomic adds
+//every operation has a latency histogram with log-linear buckets like HdrHistogram (16 per power of two, <= 6.25% error),
+//fixed size and allocation free, so percentiles stay cheap no matter how many values went in
+//long operations (save, load, csv, batches, compaction) are also JFR events, see TaskOperationEvent
+//read through snapshot accessors, dump(), a periodic dump (startDump) or JMX (registerMBean)
+public final class TaskMetrics {
+
+    public enum Operation {
+        ADD, ADD_BULK, UPDATE, COMPLETE, DELETE, SEARCH, UNDO, REDO, BATCH,
+        SAVE, LOAD, EXPORT_CSV, IMPORT_CSV, JOURNAL_FSYNC, COMPACTION, REFRESH_TABLE;
+
+        final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    public enum Counter {
+        TASKS_ADDED, TASKS_DELETED, JOURNAL_RECORDS, JOURNAL_BYTES, ROWS_EXPORTED, ROWS_IMPORTED, ROWS_REJECTED;
+
+        final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    //for parts that run without a manager, e.g. a TaskJournal on its own
+    static final TaskMetrics UNATTACHED = new TaskMetrics();
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Operation.values().length];
+    private final LongAdder[] counters = new LongAdder[Counter.values().length];
+
+    private ScheduledExecutorService dumper;
+    private ScheduledFuture<?> dumping;
+    private ObjectName mbeanName;
+
+    public TaskMetrics() {
+        for (int i = 0; i < histograms.length; i++) histograms[i] = new LatencyHistogram();
+        for (int i = 0; i < counters.length; i++) counters[i] = new LongAdder();
+    }
+
+    //RECORDING
+    //long start = metrics.start(); ... metrics.record(Operation.ADD, start);
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void record(Operation operation, long startNanos) {
+        histograms[operation.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    //for long operations, times them like record and also emits a JFR event when they pass its threshold
+    public Span begin(Operation operation) {
+        return new Span(operation);
+    }
+
+    public void count(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    public final class Span {
+        private final Operation operation;
+        private final long start = System.nanoTime();
+        private final TaskOperationEvent event = new TaskOperationEvent();
+
+        private Span(Operation operation) {
+            this.operation = operation;
+            event.begin();
+        }
+
+        public void end() {
+            end(0);
+        }
+
+        //tasks = how many tasks or rows the operation went through, 0 when it does not apply
+        public void end(long tasks) {
+            record(operation, start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = operation.label;
+                event.tasks = tasks;
+                event.commit();
+            }
+        }
+    }
+
+    //READING
+    public LatencyHistogram histogram(Operation operation) {
+        return histograms[operation.ordinal()];
+    }
+
+    public long counter(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) histogram.reset();
+        for (LongAdder counter : counters) counter.reset();
+    }
+
+    //one line per operation that ran at least once, then the counters
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-14s %10s %10s %10s %10s %10s %10s%n",
+                "operation", "count", "mean us", "p50 us", "p99 us", "p99.9 us", "max us"));
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram h = histogram(operation);
+            if (h.count() == 0) continue;
+            out.append(String.format(Locale.ROOT, "%-14s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n", operation.label, h.count(),
+                    micros(h.mean()), micros(h.percentile(50)), micros(h.percentile(99)), micros(h.percentile(99.9)), micros(h.max())));
+        }
+        for (Counter counter : Counter.values()) {
+            out.append(counter.label).append('=').append(counter(counter)).append(counter.ordinal() == counters.length - 1 ? "\n" : " ");
+        }
+        return out.toString();
+    }
+
+    private static double micros(double nanos) {
+        return nanos / 1000.0;
+    }
+
+    //PERIODIC DUMP
+    public synchronized void startDump(PrintStream out, long periodSeconds) {
+        stopDump();
+        if (dumper == null) {
+            dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "todo-metrics-dump");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        dumping = dumper.scheduleAtFixedRate(() -> out.print(dump()), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stopDump() {
+        if (dumping != null) dumping.cancel(false);
+        dumping = null;
+    }
+
+    //JMX
+    //shows up as ToDoList:type=TaskManager,name=<name> in jconsole / visualvm, attributes are read on demand
+    public synchronized void registerMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName("ToDoList:type=TaskManager,name=" + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+            server.registerMBean(new MetricsMBean(), objectName);
+            mbeanName = objectName;
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public synchronized void unregisterMBean() {
+        if (mbeanName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+        } catch (InstanceNotFoundException e) {
+            //already gone
+        } catch (MBeanRegistrationException e) {
+            throw new RuntimeException(e);
+        }
+        mbeanName = null;
+    }
+
+    //attributes: <operation>.count / .meanMicros / .p50Micros / .p99Micros / .p999Micros / .maxMicros and one per counter
+    private final class MetricsMBean implements DynamicMBean {
+
+        private static final String COUNT = ".count";
+        private static final String[] PERCENTILES = {".meanMicros", ".p50Micros", ".p99Micros", ".p999Micros", ".maxMicros"};
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            for (Counter counter : Counter.values()) {
+                if (counter.label.equals(attribute)) return counter(counter);
+            }
+            for (Operation operation : Operation.values()) {
+                if (!attribute.startsWith(operation.label + ".")) continue;
+                LatencyHistogram h = histogram(operation);
+                String field = attribute.substring(operation.label.length());
+                switch (field) {
+                    case COUNT: return h.count();
+                    case ".meanMicros": return micros(h.mean());
+                    case ".p50Micros": return micros(h.percentile(50));
+                    case ".p99Micros": return micros(h.percentile(99));
+                    case ".p999Micros": return micros(h.percentile(99.9));
+                    case ".maxMicros": return micros(h.max());
+                }
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    //left out, as the interface asks
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            if (actionName.equals("reset")) {
+                reset();
+                return null;
+            }
+            if (actionName.equals("dump")) return dump();
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Operation operation : Operation.values()) {
+                attributes.add(new MBeanAttributeInfo(operation.label + COUNT, "long", "times " + operation.label + " ran", true, false, false));
+                for (String field : PERCENTILES) {
+                    attributes.add(new MBeanAttributeInfo(operation.label + field, "double", operation.label + " latency", true, false, false));
+                }
+            }
+            for (Counter counter : Counter.values()) {
+                attributes.add(new MBeanAttributeInfo(counter.label, "long", counter.label, true, false, false));
+            }
+            MBeanOperationInfo[] operations = {
+                    new MBeanOperationInfo("reset", "clears every histogram and counter", new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION),
+                    new MBeanOperationInfo("dump", "the same text as the periodic dump", new MBeanParameterInfo[0], "java.lang.String", MBeanOperationInfo.INFO)
+            };
+            return new MBeanInfo(TaskMetrics.class.getName(), "TaskManager timings and counters",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, operations, null);
+        }
+    }
+
+    //latency histogram in nanos, buckets: values below 16 exactly, above that 16 linear buckets per power of two
+    public static final class LatencyHistogram {
+
+        private static final int SUB_BITS = 4;
+        private static final int SUB = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS) * SUB;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            buckets.incrementAndGet(bucket(nanos));
+            count.increment();
+            sum.add(nanos);
+            if (nanos > max.get()) max.accumulateAndGet(nanos, Math::max);
+        }
+
+        static int bucket(long value) {
+            if (value < SUB) return (int) value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            return (exponent - SUB_BITS + 1) * SUB + (int) ((value >>> (exponent - SUB_BITS)) & (SUB - 1));
+        }
+
+        //smallest value that lands in the bucket
+        static long lowest(int bucket) {
+            if (bucket < SUB) return bucket;
+            int exponent = bucket / SUB + SUB_BITS - 1;
+            return (long) (SUB + bucket % SUB) << (exponent - SUB_BITS);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public double mean() {
+            long n = count.sum();
+            return (n == 0) ? 0 : (double) sum.sum() / n;
+        }
+
+        public long max() {
+            return max.get();
+        }
+
+        //value below which percent of the recorded values fall, the middle of its bucket
+        public long percentile(double percent) {
+            long n = count.sum();
+            if (n == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(n * percent / 100.0));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    long low = lowest(i);
+                    long high = (i + 1 < BUCKETS) ? lowest(i + 1) - 1 : Long.MAX_VALUE;
+                    return Math.min(low + (high - low) / 2, max.get());
+                }
+            }
+            return max.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) buckets.set(i, 0);
+            count.reset();
+            sum.reset();
+            max.set(0);
+        }
+    }
+
+    //shows up in JDK Mission Control under ToDoList, only operations longer than the threshold are recorded
+    //the threshold can be lowered per recording in a .jfc settings file
+    @Name("todolist.TaskOperation")
+    @Label("Task Operation")
+    @Category("ToDoList")
+    @Threshold("10 ms")
+    @StackTrace(false)
+    static final class TaskOperationEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Tasks")
+        long tasks;
+    }
+}
@@ -0,0 +1,401 @@
+/* presentation-layer */
+package Server;
+
+import Task.Task;
+import TaskManager.ConcurrentTaskManager;
+import TaskManager.TaskBatch;
+import TaskManager.TaskJournal;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+//headless http/json front end for the task manager, for scripts and other services
+//  GET    /tasks                  every task, filters: completed=true|false, q=search words, dueBefore=2030-01-01T00:00,
+//                                 offset and limit for paging, answered with 304 when If-None-Match holds the current etag
+//  GET    /tasks/{id}             one task
+//  POST   /tasks                  {"description": "...", "deadline": "2030-01-01T09:00"}, answers 201 with the new task
+//  PUT    /tasks/{id}             any of description, deadline, completed
+//  DELETE /tasks/{id}
+//  POST   /tasks/bulk             {"add": [tasks], "complete": [ids], "reopen": [ids], "delete": [ids], "deleteCompleted": true}
+//                                 applied as one TaskBatch, one journal flush and one change event
+//  GET    /metrics                the manager's timings and counters as text, see TaskMetrics.dump()
+//lists are streamed straight from the lock-free snapshot, so a big GET never holds up writers
+//every request runs on its own virtual thread where the jdk has them, on a fixed pool otherwise
+public class TaskServer {
+
+    public static final int DEFAULT_PORT = 8080;
+    private static final int MAX_BODY_BYTES = 16 << 20;
+
+    private final ConcurrentTaskManager manager;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String etagPrefix; //versions start over when the process does, so the etag also names the run
+
+    static {
+        //headers and body leave in separate writes, with nagle on every small answer waits out the client's delayed ack (~40 ms)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    public TaskServer(ConcurrentTaskManager manager, int port) throws IOException {
+        this.manager = manager;
+        this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+        this.executor = requestExecutor();
+        this.etagPrefix = Long.toString(System.currentTimeMillis(), 36);
+        server.createContext("/tasks", this::handle);
+        server.createContext("/metrics", this::metrics);
+        server.setExecutor(executor);
+    }
+
+    //virtual threads are looked up by name so this also builds on a jdk without them
+    private static ExecutorService requestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Math.max(32, Runtime.getRuntime().availableProcessors() * 8), r -> {
+                Thread t = new Thread(r, "todo-http");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    //waits up to a second for requests in flight
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //the real port, useful when the server was created on port 0
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    //ROUTING
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            String rest = path.length() > "/tasks".length() ? path.substring("/tasks/".length()) : "";
+
+            if (rest.isEmpty()) {
+                if (method.equals("GET")) listTasks(exchange);
+                else if (method.equals("POST")) createTask(exchange);
+                else error(exchange, 405, "Use GET or POST on /tasks");
+            } else if (rest.equals("bulk")) {
+                if (method.equals("POST")) bulk(exchange);
+                else error(exchange, 405, "Use POST on /tasks/bulk");
+            } else {
+                long id = parseId(rest);
+                if (method.equals("GET")) getTask(exchange, id);
+                else if (method.equals("PUT")) updateTask(exchange, id);
+                else if (method.equals("DELETE")) deleteTask(exchange, id);
+                else error(exchange, 405, "Use GET, PUT or DELETE on /tasks/{id}");
+            }
+        } catch (IllegalArgumentException e) {
+            error(exchange, 400, e.getMessage());
+        } catch (IOException e) {
+            throw e; //the client went away, nothing to answer
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            error(exchange, 500, String.valueOf(e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        try {
+            byte[] text = manager.getMetrics().dump().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, text.length);
+            exchange.getResponseBody().write(text);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    //LIST
+    private void listTasks(HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange);
+        long version = manager.getVersion(); //read before the tasks, a change in between only makes the etag older
+        String etag = "\"" + etagPrefix + "-" + version + "-" + Integer.toHexString(query.hashCode()) + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+
+        Boolean completed = query.containsKey("completed") ? parseBoolean(query.get("completed")) : null;
+        long offset = parseLong(query.getOrDefault("offset", "0"), "offset");
+        long limit = parseLong(query.getOrDefault("limit", Long.toString(Long.MAX_VALUE)), "limit");
+        int first = (int) Math.min(Integer.MAX_VALUE, offset);
+        int count = (int) Math.min(Integer.MAX_VALUE, limit);
+        int end = (int) Math.min(Integer.MAX_VALUE, (long) first + count);
+
+        //a page costs O(limit), not O(offset): the snapshot and the status indexes start right at the offset,
+        //a search ranks only as many hits as the page reaches
+        List<Task> source;
+        if (query.containsKey("q")) {
+            source = manager.search(query.get("q"), (completed == null) ? end : Integer.MAX_VALUE);
+        } else if (query.containsKey("dueBefore")) {
+            source = manager.getTasksDueBefore(parseDate(query.get("dueBefore")));
+        } else if (completed == null) {
+            source = manager.view().page(first, count).getTasks();
+            offset = 0;
+        } else {
+            source = manager.getIndexedTasks(completed ? "completed" : "pending", first, count);
+            offset = 0;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0); //length unknown, chunked
+        try (JsonWriter json = new JsonWriter(exchange.getResponseBody())) {
+            json.beginArray();
+            long matched = 0;
+            long written = 0;
+            for (Task task : source) {
+                if (written == limit) break;
+                if (completed != null && task.isCompleted() != completed) continue;
+                if (matched++ < offset) continue;
+                writeTask(json, task);
+                written++;
+            }
+            json.endArray();
+        }
+    }
+
+    //SINGLE TASKS
+    private void getTask(HttpExchange exchange, long id) throws IOException {
+        Task task = manager.getTask(id);
+        if (task == null) error(exchange, 404, "No task " + id);
+        else sendTask(exchange, 200, task);
+    }
+
+    private void createTask(HttpExchange exchange) throws IOException {
+        Task task = newTask(asObject(readBody(exchange), "task"));
+        manager.addTask(task);
+        exchange.getResponseHeaders().set("Location", "/tasks/" + task.getId());
+        sendTask(exchange, 201, task);
+    }
+
+    private void updateTask(HttpExchange exchange, long id) throws IOException {
+        Map<String, Object> fields = asObject(readBody(exchange), "task");
+        Task task = manager.getTask(id);
+        if (task == null) {
+            error(exchange, 404, "No task " + id);
+            return;
+        }
+        if (fields.containsKey("description") || fields.containsKey("deadline")) {
+            String description = fields.containsKey("description") ? asString(fields.get("description"), "description") : task.getDescription();
+            LocalDateTime deadline = fields.containsKey("deadline") ? asDate(fields.get("deadline")) : task.getDeadline();
+            if (!manager.updateTaskById(id, description, deadline)) task = null;
+        }
+        if (task != null && fields.containsKey("completed")) {
+            if (!manager.setCompletedById(id, asBoolean(fields.get("completed"), "completed"))) task = null;
+        }
+        task = (task != null) ? manager.getTask(id) : null;
+        if (task == null) error(exchange, 404, "No task " + id); //deleted by another request in between
+        else sendTask(exchange, 200, task);
+    }
+
+    private void deleteTask(HttpExchange exchange, long id) throws IOException {
+        if (manager.deleteTaskById(id)) exchange.sendResponseHeaders(204, -1);
+        else error(exchange, 404, "No task " + id);
+    }
+
+    //BULK
+    private void bulk(HttpExchange exchange) throws IOException {
+        Map<String, Object> request = asObject(readBody(exchange), "bulk request");
+        TaskBatch batch = manager.beginBatch();
+        for (Object task : asList(request.get("add"), "add")) batch.add(newTask(asObject(task, "task")));
+        if (request.containsKey("complete")) batch.setCompleted(asIds(request.get("complete"), "complete"), true);
+        if (request.containsKey("reopen")) batch.setCompleted(asIds(request.get("reopen"), "reopen"), false);
+        if (request.containsKey("delete")) batch.delete(asIds(request.get("delete"), "delete"));
+        if (Boolean.TRUE.equals(request.get("deleteCompleted"))) batch.deleteWhere(Task::isCompleted);
+        int touched = batch.commit();
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        try (JsonWriter json = new JsonWriter(exchange.getResponseBody(), 256)) {
+            json.beginObject()
+                    .name("touched").value(touched)
+                    .name("version").value(manager.getVersion())
+                    .endObject();
+        }
+    }
+
+    //JSON OUT
+    private static void writeTask(JsonWriter json, Task task) throws IOException {
+        json.beginObject()
+                .name("id").value(task.getId())
+                .name("description").value(task.getDescription())
+                .name("deadline").value(task.getDeadline())
+                .name("completed").value(task.isCompleted())
+                .name("created").value(task.getCreationDate())
+                .name("modified").value(task.getModificationDate())
+                .name("completedAt").value(task.getCompletionDate())
+                .endObject();
+    }
+
+    private static void sendTask(HttpExchange exchange, int status, Task task) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        try (JsonWriter json = new JsonWriter(exchange.getResponseBody(), 1024)) {
+            writeTask(json, task);
+        }
+    }
+
+    private static void error(HttpExchange exchange, int status, String message) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        try (JsonWriter json = new JsonWriter(exchange.getResponseBody(), 256)) {
+            json.beginObject().name("error").value(message).endObject();
+        }
+    }
+
+    //JSON IN
+    private static Object readBody(HttpExchange exchange) throws IOException {
+        Headers headers = exchange.getRequestHeaders();
+        String length = headers.getFirst("Content-Length");
+        if (length != null && Long.parseLong(length) > MAX_BODY_BYTES) throw new IllegalArgumentException("Body is too big");
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        try (InputStream in = exchange.getRequestBody()) {
+            for (int n; (n = in.read(chunk)) > 0; ) {
+                body.write(chunk, 0, n);
+                if (body.size() > MAX_BODY_BYTES) throw new IllegalArgumentException("Body is too big");
+            }
+        }
+        return JsonReader.parse(body.toString(StandardCharsets.UTF_8));
+    }
+
+    private static Task newTask(Map<String, Object> fields) {
+        String description = asString(fields.get("description"), "description");
+        if (description == null || description.isBlank()) throw new IllegalArgumentException("A task needs a description");
+        Task task = new Task(description, asDate(fields.get("deadline")));
+        if (Boolean.TRUE.equals(fields.get("completed"))) task.setCompleted(true);
+        return task;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asObject(Object value, String what) {
+        if (value instanceof Map) return (Map<String, Object>) value;
+        throw new IllegalArgumentException("Expected " + what + " to be an object");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> asList(Object value, String what) {
+        if (value == null) return new ArrayList<>();
+        if (value instanceof List) return (List<Object>) value;
+        throw new IllegalArgumentException("Expected " + what + " to be an array");
+    }
+
+    private static List<Long> asIds(Object value, String what) {
+        List<Long> ids = new ArrayList<>();
+        for (Object id : asList(value, what)) {
+            if (!(id instanceof Long)) throw new IllegalArgumentException("Expected " + what + " to hold task ids");
+            ids.add((Long) id);
+        }
+        return ids;
+    }
+
+    private static String asString(Object value, String what) {
+        if (value == null || value instanceof String) return (String) value;
+        throw new IllegalArgumentException("Expected " + what + " to be a string");
+    }
+
+    private static boolean asBoolean(Object value, String what) {
+        if (value instanceof Boolean) return (Boolean) value;
+        throw new IllegalArgumentException("Expected " + what + " to be true or false");
+    }
+
+    private static LocalDateTime asDate(Object value) {
+        return (value == null) ? null : parseDate(asString(value, "deadline"));
+    }
+
+    //QUERY STRING
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> query = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null || raw.isEmpty()) return query;
+        for (String pair : raw.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            query.put(name, value);
+        }
+        return query;
+    }
+
+    private static long parseId(String text) {
+        return parseLong(text, "task id");
+    }
+
+    private static long parseLong(String text, String what) {
+        try {
+            long value = Long.parseLong(text);
+            if (value < 0) throw new IllegalArgumentException(what + " must not be negative");
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad " + what + ": " + text);
+        }
+    }
+
+    private static boolean parseBoolean(String text) {
+        if (text.equals("true")) return true;
+        if (text.equals("false")) return false;
+        throw new IllegalArgumentException("Expected true or false, got " + text);
+    }
+
+    private static LocalDateTime parseDate(String text) {
+        try {
+            return LocalDateTime.parse(text);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Bad date " + text + ", expected e.g. 2030-01-31T09:00");
+        }
+    }
+
+    //java Server.TaskServer [port] [task file], serves until the process is stopped
+    public static void main(String[] args) throws IOException {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        String file = (args.length > 1) ? args[1] : "todo.ser";
+        ConcurrentTaskManager manager = new ConcurrentTaskManager(file, TaskJournal.DEFAULT_GROUP_COMMIT, TaskJournal.DEFAULT_COMPACTION_THRESHOLD);
+        manager.loadFromFile();
+        manager.saveToFile(); //from here on every change goes to the journal
+        TaskServer server = new TaskServer(manager, port);
+        manager.getMetrics().registerMBean("server");
+        long dumpSeconds = Long.getLong("todolist.metrics.dumpSeconds", 0);
+        if (dumpSeconds > 0) manager.getMetrics().startDump(System.out, dumpSeconds);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            manager.close();
+        }));
+        server.start();
+        System.out.println("Serving " + file + " on http://localhost:" + server.getPort() + "/tasks");
+    }
+}
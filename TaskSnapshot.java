@@ -0,0 +1,211 @@
+/* data-layer */
+package TaskManager;
+
+import Task.Task;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+//versioned binary snapshot that is read through a memory mapped buffer
+//layout: header | fixed width records | string heap with the descriptions
+//a record keeps dates as epoch millis, a flag bit for completed and an offset into the string heap,
+//so opening the file costs the same no matter how many tasks it holds
+public final class TaskSnapshot {
+
+    static final int MAGIC = 0x54444F31; //"TDO1"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 24; //magic, version, sequence, count, record size
+
+    //RECORD LAYOUT
+    static final int RECORD_SIZE = 60;
+    private static final int DEADLINE = 0;
+    private static final int CREATED = 8;
+    private static final int MODIFIED = 16;
+    private static final int DELETED = 24;
+    private static final int COMPLETED_AT = 32;
+    private static final int FLAGS = 40;
+    private static final int DESC_OFFSET = 44;
+    private static final int DESC_LENGTH = 48;
+    private static final int ID = 52;
+
+    private static final int FLAG_COMPLETED = 1;
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final long sequence;
+    private final int heapStart;
+
+    private TaskSnapshot(MappedByteBuffer buffer, int count, long sequence) {
+        this.buffer = buffer;
+        this.count = count;
+        this.sequence = sequence;
+        this.heapStart = HEADER_SIZE + count * RECORD_SIZE;
+    }
+
+    //true if the file starts with our magic number, old files are plain java serialization
+    static boolean isSnapshot(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    static TaskSnapshot open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) throw new IOException("Snapshot too large to map: " + length + " bytes");
+
+            //the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (length < HEADER_SIZE || buffer.getInt(0) != MAGIC) throw new IOException("Not a task snapshot: " + file);
+            int version = buffer.getInt(4);
+            if (version != VERSION) throw new IOException("Unsupported snapshot version " + version);
+            long sequence = buffer.getLong(8);
+            int count = buffer.getInt(16);
+            int recordSize = buffer.getInt(20);
+            if (recordSize != RECORD_SIZE || (long) HEADER_SIZE + (long) count * recordSize > length) {
+                throw new IOException("Corrupt snapshot header: " + file);
+            }
+            return new TaskSnapshot(buffer, count, sequence);
+        }
+    }
+
+    public int size() {return count;}
+    public long getSequence() {return sequence;}
+
+    //builds the Task object for one record, only called the first time a task is accessed
+    Task materialize(int row) {
+        int base = recordOffset(row);
+        Task task = new Task(new String(description(row), StandardCharsets.UTF_8),
+                TaskCodec.fromMillis(buffer.getLong(base + DEADLINE)),
+                (buffer.getInt(base + FLAGS) & FLAG_COMPLETED) != 0,
+                TaskCodec.fromMillis(buffer.getLong(base + CREATED)));
+        task.restoreHistory(TaskCodec.fromMillis(buffer.getLong(base + MODIFIED)),
+                TaskCodec.fromMillis(buffer.getLong(base + DELETED)),
+                TaskCodec.fromMillis(buffer.getLong(base + COMPLETED_AT)));
+        task.setId(getId(row));
+        return task;
+    }
+
+    long getDeadlineMillis(int row) {
+        return buffer.getLong(recordOffset(row) + DEADLINE);
+    }
+
+    //one of the date columns for SortedTaskIndex
+    long getDateMillis(int row, SortedTaskIndex.Key key) {
+        int base = recordOffset(row);
+        switch (key) {
+            case DEADLINE: return buffer.getLong(base + DEADLINE);
+            case CREATED: return buffer.getLong(base + CREATED);
+            case MODIFIED: return buffer.getLong(base + MODIFIED);
+            default: return buffer.getLong(base + COMPLETED_AT);
+        }
+    }
+
+    boolean isCompleted(int row) {
+        return (buffer.getInt(recordOffset(row) + FLAGS) & FLAG_COMPLETED) != 0;
+    }
+
+    //moves one record into columnar storage without building a Task or a String
+    int copyTo(int row, TaskColumns columns) {
+        int base = recordOffset(row);
+        return columns.appendRaw(getId(row), description(row),
+                buffer.getLong(base + DEADLINE),
+                (buffer.getInt(base + FLAGS) & FLAG_COMPLETED) != 0,
+                buffer.getLong(base + CREATED),
+                buffer.getLong(base + MODIFIED),
+                buffer.getLong(base + DELETED),
+                buffer.getLong(base + COMPLETED_AT));
+    }
+
+    String getDescription(int row) {
+        return new String(description(row), StandardCharsets.UTF_8);
+    }
+
+    long getId(int row) {
+        return buffer.getLong(recordOffset(row) + ID);
+    }
+
+    private int recordOffset(int row) {
+        if (row < 0 || row >= count) throw new IndexOutOfBoundsException("Row " + row + " of " + count);
+        return HEADER_SIZE + row * RECORD_SIZE;
+    }
+
+    private byte[] description(int row) {
+        int base = recordOffset(row);
+        byte[] bytes = new byte[buffer.getInt(base + DESC_LENGTH)];
+        buffer.get(heapStart + buffer.getInt(base + DESC_OFFSET), bytes);
+        return bytes;
+    }
+
+    //WRITING
+    //rows of a TaskList that were never materialized are copied straight from their old snapshot
+    static void write(File file, List<Task> tasks, long sequence) throws IOException {
+        TaskList lazy = (tasks instanceof TaskList) ? (TaskList) tasks : null;
+        ByteArrayOutputStream heap = new ByteArrayOutputStream();
+
+        try (FileOutputStream fos = new FileOutputStream(file);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+            int count = tasks.size();
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sequence);
+            out.writeInt(count);
+            out.writeInt(RECORD_SIZE);
+
+            for (int i = 0; i < count; i++) {
+                int row = (lazy != null) ? lazy.snapshotRow(i) : -1;
+                if (row >= 0) {
+                    lazy.getSnapshot().copyRecord(row, out, heap);
+                } else {
+                    Task task = tasks.get(i);
+                    writeRecord(out, heap,
+                            TaskCodec.toMillis(task.getDeadline()),
+                            TaskCodec.toMillis(task.getCreationDate()),
+                            TaskCodec.toMillis(task.getModificationDate()),
+                            TaskCodec.toMillis(task.getDeletionDate()),
+                            TaskCodec.toMillis(task.getCompletionDate()),
+                            task.isCompleted() ? FLAG_COMPLETED : 0,
+                            task.getDescription().getBytes(StandardCharsets.UTF_8),
+                            task.getId());
+                }
+            }
+            heap.writeTo(out);
+            out.flush();
+            fos.getFD().sync();
+        }
+    }
+
+    private void copyRecord(int row, DataOutputStream out, ByteArrayOutputStream heap) throws IOException {
+        int base = recordOffset(row);
+        writeRecord(out, heap,
+                buffer.getLong(base + DEADLINE),
+                buffer.getLong(base + CREATED),
+                buffer.getLong(base + MODIFIED),
+                buffer.getLong(base + DELETED),
+                buffer.getLong(base + COMPLETED_AT),
+                buffer.getInt(base + FLAGS),
+                description(row),
+                getId(row));
+    }
+
+    private static void writeRecord(DataOutputStream out, ByteArrayOutputStream heap,
+                                    long deadline, long created, long modified, long deleted, long completedAt,
+                                    int flags, byte[] description, long id) throws IOException {
+        out.writeLong(deadline);
+        out.writeLong(created);
+        out.writeLong(modified);
+        out.writeLong(deleted);
+        out.writeLong(completedAt);
+        out.writeInt(flags);
+        out.writeInt(heap.size());
+        out.writeInt(description.length);
+        out.writeLong(id);
+        heap.write(description);
+    }
+}
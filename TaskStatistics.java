@@ -0,0 +1,315 @@
+/* logic-layer */
+package TaskManager;
+
+import Task.Task;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+//productivity numbers over the tasks in the manager, kept up to date from the index hooks instead of a scan:
+//per-day counts of created and completed tasks, a sketch of the time from creation to completion in the
+//buckets of the latency histograms (16 per power of two, so a percentile is off by at most ~6%),
+//and counters for completed, pending and overdue tasks
+//every question is O(1) (a day range is O(days)), however many tasks or days there are
+//the numbers describe the tasks in the manager: a deleted or archived task takes its share back out
+//overdue needs no timer: pending deadlines wait in a heap and are counted by the first question after they passed
+public class TaskStatistics implements TaskIndex {
+
+    private static final long DAY_MILLIS = 86_400_000L;
+    private static final long NONE = Long.MIN_VALUE;
+    private static final int SKETCH_BUCKETS = TaskMetrics.LatencyHistogram.bucket(Long.MAX_VALUE) + 1;
+
+    //a pending deadline, overdue once it passed; a task that completes or goes only marks it dead,
+    //it leaves the heap when it comes up, or with the rest once dead entries outnumber the live ones;
+    //an edit that keeps the deadline and the pending state keeps the entry
+    private static final class Due implements Comparable<Due> {
+        final long deadline;
+        boolean live = true;
+        boolean overdue;
+
+        Due(long deadline) {
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int compareTo(Due other) {
+            return Long.compare(deadline, other.deadline);
+        }
+    }
+
+    //SLOTS, what each task added so a change or delete takes exactly that back out
+    private long[] createdDays = new long[16];
+    private long[] completedDays = new long[16];
+    private long[] secondsToComplete = new long[16];
+    private Due[] dues = new Due[16];
+    private final BitSet present = new BitSet();
+    private final BitSet done = new BitSet();
+    private int slotCount;
+
+    //TOTALS
+    private final Map<Long, int[]> days = new HashMap<>(); //epoch day -> {created, completed}
+    private final long[] sketch = new long[SKETCH_BUCKETS]; //seconds from creation to completion
+    private long sketchCount;
+    private long sketchSum;
+    private long sketchMax; //largest ever recorded, only an upper bound for the top bucket
+    private long total;
+    private long completed;
+    private long overdue;
+    private final PriorityQueue<Due> upcoming = new PriorityQueue<>();
+    private int deadUpcoming; //dead entries still in the heap
+
+    //TASKINDEX HOOKS
+    @Override
+    public synchronized void taskAdded(int slot, Task task) {
+        ensureSlots(slot + 1);
+        slotCount = Math.max(slotCount, slot + 1);
+        add(slot, task);
+    }
+
+    @Override
+    public synchronized void taskChanged(int slot, Task task) {
+        Due due = (slot < slotCount) ? dues[slot] : null;
+        boolean same = due != null && !task.isCompleted() && due.deadline == TaskCodec.toMillis(task.getDeadline());
+        Due kept = same ? due : null;
+        remove(slot, kept);
+        add(slot, task.isCompleted(), TaskCodec.toMillis(task.getCreationDate()),
+                TaskCodec.toMillis(task.getCompletionDate()), TaskCodec.toMillis(task.getDeadline()), kept);
+    }
+
+    @Override
+    public synchronized void taskRemoved(int slot) {
+        remove(slot);
+    }
+
+    @Override
+    public synchronized void slotsSwept(BitSet removed) {
+        int kept = 0;
+        for (int i = 0; i < slotCount; i++) {
+            if (removed.get(i)) continue;
+            createdDays[kept] = createdDays[i];
+            completedDays[kept] = completedDays[i];
+            secondsToComplete[kept] = secondsToComplete[i];
+            dues[kept] = dues[i];
+            present.set(kept, present.get(i));
+            done.set(kept, done.get(i));
+            kept++;
+        }
+        Arrays.fill(dues, kept, slotCount, null);
+        present.clear(kept, slotCount);
+        done.clear(kept, slotCount);
+        slotCount = kept;
+    }
+
+    //dates straight from the snapshot or the columns, no task is built
+    @Override
+    public synchronized void rebuild(TaskList tasks) {
+        days.clear();
+        Arrays.fill(sketch, 0);
+        sketchCount = sketchSum = sketchMax = 0;
+        total = completed = overdue = 0;
+        upcoming.clear();
+        deadUpcoming = 0;
+        present.clear();
+        done.clear();
+        slotCount = tasks.size();
+        int length = Math.max(16, slotCount);
+        createdDays = new long[length];
+        completedDays = new long[length];
+        secondsToComplete = new long[length];
+        dues = new Due[length];
+        for (int i = 0; i < slotCount; i++) {
+            add(i, tasks.isCompletedAt(i), tasks.dateMillisAt(i, SortedTaskIndex.Key.CREATED),
+                    tasks.dateMillisAt(i, SortedTaskIndex.Key.COMPLETED), tasks.deadlineMillisAt(i), null);
+        }
+    }
+
+    private void add(int slot, Task task) {
+        add(slot, task.isCompleted(), TaskCodec.toMillis(task.getCreationDate()),
+                TaskCodec.toMillis(task.getCompletionDate()), TaskCodec.toMillis(task.getDeadline()), null);
+    }
+
+    //kept = the slot's pending deadline that stays as it was, it is neither dropped nor pushed again
+    private void add(int slot, boolean isCompleted, long created, long completedAt, long deadline, Due kept) {
+        present.set(slot);
+        total++;
+        createdDays[slot] = (created != TaskCodec.NO_DATE) ? Math.floorDiv(created, DAY_MILLIS) : NONE;
+        completedDays[slot] = NONE;
+        secondsToComplete[slot] = NONE;
+        dues[slot] = null;
+        if (createdDays[slot] != NONE) day(createdDays[slot])[0]++;
+        if (isCompleted) {
+            done.set(slot);
+            completed++;
+            if (completedAt == TaskCodec.NO_DATE) return;
+            completedDays[slot] = Math.floorDiv(completedAt, DAY_MILLIS);
+            day(completedDays[slot])[1]++;
+            if (created == TaskCodec.NO_DATE) return;
+            long seconds = Math.max(0, (completedAt - created) / 1000);
+            secondsToComplete[slot] = seconds;
+            sketch[TaskMetrics.LatencyHistogram.bucket(seconds)]++;
+            sketchCount++;
+            sketchSum += seconds;
+            sketchMax = Math.max(sketchMax, seconds);
+        } else {
+            done.clear(slot);
+            if (kept != null) {
+                dues[slot] = kept;
+                if (kept.overdue) overdue++;
+                return;
+            }
+            if (deadline == TaskCodec.NO_DATE) return;
+            Due due = new Due(deadline);
+            dues[slot] = due;
+            upcoming.add(due);
+        }
+    }
+
+    private void remove(int slot) {
+        remove(slot, null);
+    }
+
+    private void remove(int slot, Due kept) {
+        if (slot >= slotCount || !present.get(slot)) return;
+        present.clear(slot);
+        total--;
+        if (done.get(slot)) completed--;
+        if (createdDays[slot] != NONE) day(createdDays[slot])[0]--;
+        if (completedDays[slot] != NONE) day(completedDays[slot])[1]--;
+        long seconds = secondsToComplete[slot];
+        if (seconds != NONE) {
+            sketch[TaskMetrics.LatencyHistogram.bucket(seconds)]--;
+            sketchCount--;
+            sketchSum -= seconds;
+        }
+        Due due = dues[slot];
+        if (due != null) {
+            if (due.overdue) overdue--;
+            dues[slot] = null;
+            if (due != kept) kill(due);
+        }
+    }
+
+    //an overdue entry already left the heap, a pending one stays until it comes up or the heap is compacted
+    private void kill(Due due) {
+        due.live = false;
+        if (due.overdue) return;
+        deadUpcoming++;
+        if (deadUpcoming > upcoming.size() - deadUpcoming) {
+            upcoming.removeIf(d -> !d.live); //O(heap), paid for by the deaths since the last one
+            deadUpcoming = 0;
+        }
+    }
+
+    private int[] day(long epochDay) {
+        return days.computeIfAbsent(epochDay, d -> new int[2]);
+    }
+
+    private void ensureSlots(int capacity) {
+        if (capacity <= createdDays.length) return;
+        int length = Math.max(capacity, createdDays.length * 2);
+        createdDays = Arrays.copyOf(createdDays, length);
+        completedDays = Arrays.copyOf(completedDays, length);
+        secondsToComplete = Arrays.copyOf(secondsToComplete, length);
+        dues = Arrays.copyOf(dues, length);
+    }
+
+    //QUERIES
+    public synchronized long total() {
+        return total;
+    }
+
+    public synchronized long completed() {
+        return completed;
+    }
+
+    public synchronized long pending() {
+        return total - completed;
+    }
+
+    //pending tasks whose deadline passed, the same tasks as getOverdueTasks()
+    public synchronized long overdue() {
+        long now = TaskCodec.toMillis(LocalDateTime.now());
+        //every deadline is counted once, so this is amortized O(1)
+        while (!upcoming.isEmpty() && upcoming.peek().deadline < now) {
+            Due due = upcoming.poll();
+            if (!due.live) {
+                deadUpcoming--;
+                continue;
+            }
+            due.overdue = true;
+            overdue++;
+        }
+        return overdue;
+    }
+
+    //completed / total, 0 for no tasks
+    public synchronized double completionRate() {
+        return (total == 0) ? 0 : completed / (double) total;
+    }
+
+    public synchronized int createdOn(LocalDate date) {
+        int[] counts = days.get(date.toEpochDay());
+        return (counts != null) ? counts[0] : 0;
+    }
+
+    public synchronized int completedOn(LocalDate date) {
+        int[] counts = days.get(date.toEpochDay());
+        return (counts != null) ? counts[1] : 0;
+    }
+
+    //completed today and the days - 1 days before
+    public synchronized long completedInLast(int days) {
+        long today = LocalDate.now().toEpochDay();
+        long sum = 0;
+        for (long day = today - days + 1; day <= today; day++) {
+            int[] counts = this.days.get(day);
+            if (counts != null) sum += counts[1];
+        }
+        return sum;
+    }
+
+    //over the completed tasks that have both dates, Duration.ZERO if there are none
+    public synchronized Duration averageTimeToComplete() {
+        return (sketchCount == 0) ? Duration.ZERO : Duration.ofSeconds(sketchSum / sketchCount);
+    }
+
+    //time within which percent of the completed tasks were done, the middle of its bucket
+    public synchronized Duration timeToCompletePercentile(double percent) {
+        if (percent < 0 || percent > 100) throw new IllegalArgumentException("percent outside 0..100");
+        if (sketchCount == 0) return Duration.ZERO;
+        long rank = Math.max(1, (long) Math.ceil(sketchCount * percent / 100.0));
+        long seen = 0;
+        for (int i = 0; i < SKETCH_BUCKETS; i++) {
+            seen += sketch[i];
+            if (seen >= rank) {
+                long low = TaskMetrics.LatencyHistogram.lowest(i);
+                long high = (i + 1 < SKETCH_BUCKETS) ? TaskMetrics.LatencyHistogram.lowest(i + 1) - 1 : Long.MAX_VALUE;
+                return Duration.ofSeconds(Math.min(low + (high - low) / 2, sketchMax));
+            }
+        }
+        return Duration.ofSeconds(sketchMax);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("tasks %d, completed %d (%.1f%%), pending %d, overdue %d, done in the last 7 days %d, "
+                        + "time to complete avg %s p50 %s p90 %s",
+                total(), completed(), completionRate() * 100, pending(), overdue(), completedInLast(7),
+                format(averageTimeToComplete()), format(timeToCompletePercentile(50)), format(timeToCompletePercentile(90)));
+    }
+
+    //"3d 4h", "2h 5m", "40s"
+    public static String format(Duration duration) {
+        long seconds = duration.getSeconds();
+        if (seconds >= 86_400) return (seconds / 86_400) + "d " + (seconds % 86_400 / 3600) + "h";
+        if (seconds >= 3600) return (seconds / 3600) + "h " + (seconds % 3600 / 60) + "m";
+        if (seconds >= 60) return (seconds / 60) + "m " + (seconds % 60) + "s";
+        return seconds + "s";
+    }
+}
@@ -0,0 +1,226 @@
+/* presentation-layer */
+package GUI;
+
+import Task.DateFormatCache;
+import Task.Task;
+import TaskManager.TaskChangeListener;
+import TaskManager.TaskManager;
+import TaskManager.SortedTaskIndex;
+import TaskManager.TaskMetrics;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+//table model that reads straight from the TaskManager instead of holding a copy of every row
+//JTable only asks for the visible cells so only those get formatted, the last few hundred rows are cached
+//change notifications turn into row events so the table never has to be rebuilt
+//a filtered view can be a copy or a search, so the changes to it are coalesced into one refresh per burst of events
+public class TaskTableModel extends AbstractTableModel implements TaskChangeListener {
+
+    private static final long serialVersionUID = 1L;
+    private static final String[] COLUMNS = {"Description", "Deadline", "Completed", "Created", "Modified", "Completed Date", "Deleted"};
+    private static final int CACHE_SIZE = 512;
+
+    private final TaskManager taskManager;
+    private final TaskMetrics metrics;
+    private static final String DATE_PATTERN = "dd/MM/yyyy HH:mm";
+    private final DateFormatCache dates = DateFormatCache.SHARED; //a row cache miss still finds most of its dates here
+
+    private Supplier<List<Task>> source; //where the rows come from, all tasks or one of the index views
+    private List<Task> rows; //cached until the next refresh, a ConcurrentTaskManager hands out a new snapshot each time
+    private boolean showingAll; //only the full view has positions that match the change events
+    private boolean refreshQueued; //one refresh for every change or vanished row that comes in before it runs
+
+    //formatted rows by task id, least recently used one is dropped first
+    private final Map<Long, Object[]> formatted = new LinkedHashMap<Long, Object[]>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Object[]> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    public TaskTableModel(TaskManager taskManager) {
+        this.taskManager = taskManager;
+        this.metrics = taskManager.getMetrics();
+        this.source = taskManager::getTasksView;
+        this.rows = source.get();
+        this.showingAll = true;
+        taskManager.addChangeListener(this);
+    }
+
+    public void showAll() {
+        show(taskManager::getTasksView, true);
+    }
+
+    //e.g. taskManager::getCompletedTasks
+    public void showFiltered(Supplier<List<Task>> view) {
+        show(view, false);
+    }
+
+    //every task ordered by the date in that column, straight from the manager's sorted index, no TableRowSorter
+    public void showSorted(SortedTaskIndex.Key key, boolean ascending) {
+        show(() -> taskManager.getSortedView(key, ascending), false);
+    }
+
+    //the date a column can be sorted by, null for the columns that are not dates
+    public static SortedTaskIndex.Key sortKeyOf(int column) {
+        switch (column) {
+            case 1: return SortedTaskIndex.Key.DEADLINE;
+            case 3: return SortedTaskIndex.Key.CREATED;
+            case 4: return SortedTaskIndex.Key.MODIFIED;
+            case 5: return SortedTaskIndex.Key.COMPLETED;
+            default: return null;
+        }
+    }
+
+    private void show(Supplier<List<Task>> view, boolean all) {
+        source = view;
+        showingAll = all;
+        refresh();
+    }
+
+    //rows fetched again and every visible cell re-read, timed as refresh_table in the manager's metrics
+    private void refresh() {
+        long start = metrics.start();
+        rows = source.get();
+        fireTableDataChanged();
+        metrics.record(TaskMetrics.Operation.REFRESH_TABLE, start);
+    }
+
+    //null when the row is gone: a live view (the sorted one) can shrink before the event saying so arrives,
+    //the table is then refreshed instead of showing some other task in that row
+    public Task getTaskAt(int row) {
+        try {
+            return rows.get(row);
+        } catch (IndexOutOfBoundsException e) {
+            formatted.clear();
+            refreshLater();
+            return null;
+        }
+    }
+
+    //on the EDT only
+    private void refreshLater() {
+        if (refreshQueued) return;
+        refreshQueued = true;
+        SwingUtilities.invokeLater(() -> {
+            refreshQueued = false;
+            refresh();
+        });
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Task task = getTaskAt(row);
+        if (task == null) return null;
+        return formatted.computeIfAbsent(task.getId(), id -> createTableRow(task))[column];
+    }
+
+    //HELPER METHOD to makes a single task into a table row
+    private Object[] createTableRow(Task task) {
+        return new Object[]{
+                task.getDescription(),
+                task.getDeadline() != null ? format(task.getDeadline()) : "No Deadline",
+                task.isCompleted() ? "Done" : "Not Done",
+                format(task.getCreationDate()),
+                format(task.getModificationDate()),
+                format(task.getCompletionDate()), //only showing completion date if it exists
+                format(task.getDeletionDate())
+        };
+    }
+
+    private String format(LocalDateTime date) {
+        return (date != null) ? dates.format(date, DATE_PATTERN) : "-";
+    }
+
+    //CHANGE EVENTS
+    //the full view is cheap to fetch and gets row events; filtered views are fetched once for the whole burst,
+    //the table only re-reads the visible rows anyway
+    @Override
+    public void tasksAdded(int firstPosition, int lastPosition) {
+        onEdt(() -> {
+            if (!showingAll) {
+                refreshLater();
+                return;
+            }
+            rows = source.get();
+            fireTableRowsInserted(firstPosition, lastPosition);
+        });
+    }
+
+    @Override
+    public void taskUpdated(int position, Task task) {
+        onEdt(() -> {
+            formatted.remove(task.getId());
+            if (!showingAll) {
+                refreshLater();
+                return;
+            }
+            rows = source.get();
+            fireTableRowsUpdated(position, position);
+        });
+    }
+
+    @Override
+    public void taskDeleted(int position, Task task) {
+        onEdt(() -> {
+            formatted.remove(task.getId());
+            if (!showingAll) {
+                refreshLater();
+                return;
+            }
+            rows = source.get();
+            fireTableRowsDeleted(position, position);
+        });
+    }
+
+    @Override
+    public void tasksReloaded() {
+        onEdt(() -> {
+            formatted.clear();
+            show(taskManager::getTasksView, true);
+        });
+    }
+
+    //a batch keeps whatever view is shown, search results included
+    @Override
+    public void batchCommitted() {
+        onEdt(() -> {
+            formatted.clear();
+            refresh();
+        });
+    }
+
+    //changes from other threads can not trust their positions any more by the time they reach the EDT,
+    //a burst of them still ends in a single refresh
+    private void onEdt(Runnable update) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            update.run();
+        } else {
+            SwingUtilities.invokeLater(() -> {
+                formatted.clear();
+                refreshLater();
+            });
+        }
+    }
+}
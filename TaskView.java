@@ -0,0 +1,440 @@
+/* logic-layer */
+package TaskManager;
+
+import Task.Task;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+//immutable version of the task list, in the order of getTasksView(), for reading without copying
+//the tasks sit in chunks of up to 1024 and a new version shares every chunk it did not change with the old one:
+//an add copies the last chunk, a delete copies the chunk it was in, so keeping a version around costs O(chunk)
+//per change instead of a copy of the whole list per read
+//pages, cursors and spliterators cost O(page) (+ log of the chunk count to find the start), never O(size)
+//the view holds its own copies of the tasks, never the manager's, so a reader on another thread never sees a task
+//half way through an edit: an edit makes a new version with a copy of the task in a copy of its chunk
+//rows of a mapped snapshot that were never built stay rows until a reader first touches their chunk
+public final class TaskView implements Iterable<Task> {
+
+    static final int CHUNK = 1024;
+
+    private final Chunk[] chunks; //never changed once the view is made, new versions copy what they change
+    private final int[] ends; //ends[c] = tasks in chunks 0..c, for finding a position with a binary search
+    private final int size;
+    private final long version;
+    private List<Task> list; //made on first use, a racing second one is just as good
+
+    private TaskView(Chunk[] chunks, int[] ends, long version) {
+        this.chunks = chunks;
+        this.ends = ends;
+        this.size = (ends.length == 0) ? 0 : ends[ends.length - 1];
+        this.version = version;
+    }
+
+    //the tasks of one chunk, copied when they went in or built from the snapshot on the first read of the chunk
+    private static final class Chunk {
+        final int length;
+        private Task[] copies; //null entries are still rows in the snapshot, dropped once built
+        private int[] rows;
+        private final TaskSnapshot snapshot; //null when every task was copied
+        private volatile Task[] tasks; //null until built
+
+        Chunk(Task[] tasks) {
+            this.length = tasks.length;
+            this.snapshot = null;
+            this.tasks = tasks;
+        }
+
+        Chunk(Task[] copies, int[] rows, TaskSnapshot snapshot) {
+            this.length = copies.length;
+            this.copies = copies;
+            this.rows = rows;
+            this.snapshot = snapshot;
+        }
+
+        //built once under the chunk's lock, so every reader gets the same Task objects
+        Task[] tasks() {
+            Task[] built = tasks;
+            if (built != null) return built;
+            synchronized (this) {
+                if (tasks == null) {
+                    built = copies;
+                    for (int i = 0; i < built.length; i++) {
+                        if (built[i] == null) built[i] = snapshot.materialize(rows[i]);
+                    }
+                    copies = null;
+                    rows = null;
+                    tasks = built;
+                }
+                return tasks;
+            }
+        }
+    }
+
+    //BUILDING, only for the manager
+    //tasks that were built are copied, snapshot rows that were not are left for the chunk to build when read
+    static TaskView of(TaskList tasks, long version) {
+        int count = (tasks.size() + CHUNK - 1) / CHUNK;
+        Chunk[] chunks = new Chunk[count];
+        int[] ends = new int[count];
+        for (int c = 0; c < count; c++) {
+            int from = c * CHUNK;
+            int to = Math.min(tasks.size(), from + CHUNK);
+            Task[] copies = new Task[to - from];
+            int[] rows = null;
+            for (int i = 0; i < copies.length; i++) {
+                int row = tasks.snapshotRow(from + i);
+                if (row < 0) {
+                    copies[i] = TaskCodec.copy(tasks.get(from + i));
+                    continue;
+                }
+                if (rows == null) rows = new int[copies.length];
+                rows[i] = row;
+            }
+            chunks[c] = (rows == null) ? new Chunk(copies) : new Chunk(copies, rows, tasks.getSnapshot());
+            ends[c] = to;
+        }
+        return new TaskView(chunks, ends, version);
+    }
+
+    //the view's own tasks packed into full chunks again
+    private static TaskView packed(List<Task> tasks, long version) {
+        int count = (tasks.size() + CHUNK - 1) / CHUNK;
+        Chunk[] chunks = new Chunk[count];
+        int[] ends = new int[count];
+        for (int c = 0; c < count; c++) {
+            int from = c * CHUNK;
+            int to = Math.min(tasks.size(), from + CHUNK);
+            chunks[c] = new Chunk(tasks.subList(from, to).toArray(new Task[0]));
+            ends[c] = to;
+        }
+        return new TaskView(chunks, ends, version);
+    }
+
+    TaskView withVersion(long version) {
+        return (version == this.version) ? this : new TaskView(chunks, ends, version);
+    }
+
+    //the last chunk is filled up first, new chunks after it; the view keeps copies of the added tasks
+    TaskView appended(Collection<Task> added) {
+        if (added.isEmpty()) return this;
+        Iterator<Task> source = added.iterator();
+        int last = chunks.length - 1;
+        int free = (last >= 0) ? CHUNK - chunks[last].length : 0;
+        int extra = Math.max(0, added.size() - free);
+        int count = chunks.length + (extra + CHUNK - 1) / CHUNK;
+        Chunk[] newChunks = Arrays.copyOf(chunks, count);
+        int[] newEnds = Arrays.copyOf(ends, count);
+        if (free > 0) {
+            int fill = Math.min(free, added.size());
+            Task[] chunk = Arrays.copyOf(chunks[last].tasks(), chunks[last].length + fill);
+            for (int i = chunks[last].length; i < chunk.length; i++) chunk[i] = TaskCodec.copy(source.next());
+            newChunks[last] = new Chunk(chunk);
+            newEnds[last] += fill;
+        }
+        for (int c = chunks.length; c < count; c++) {
+            Task[] chunk = new Task[Math.min(CHUNK, extra)];
+            for (int i = 0; i < chunk.length; i++) chunk[i] = TaskCodec.copy(source.next());
+            extra -= chunk.length;
+            newChunks[c] = new Chunk(chunk);
+            newEnds[c] = ((c > 0) ? newEnds[c - 1] : 0) + chunk.length;
+        }
+        return new TaskView(newChunks, newEnds, version);
+    }
+
+    //a copy of the task in a copy of its chunk, the version the caller may still hold keeps the old task
+    TaskView replaced(int position, Task task) {
+        int c = chunkOf(position);
+        Task[] chunk = chunks[c].tasks().clone();
+        chunk[position - start(c)] = TaskCodec.copy(task);
+        Chunk[] newChunks = chunks.clone();
+        newChunks[c] = new Chunk(chunk);
+        return new TaskView(newChunks, ends, version);
+    }
+
+    //an empty chunk is dropped, a view that fell apart into mostly small chunks is packed again
+    TaskView removed(int position) {
+        int c = chunkOf(position);
+        int at = position - start(c);
+        Task[] old = chunks[c].tasks();
+        Chunk[] newChunks;
+        int[] newEnds;
+        if (old.length == 1) {
+            newChunks = new Chunk[chunks.length - 1];
+            System.arraycopy(chunks, 0, newChunks, 0, c);
+            System.arraycopy(chunks, c + 1, newChunks, c, chunks.length - c - 1);
+            newEnds = new int[ends.length - 1];
+            System.arraycopy(ends, 0, newEnds, 0, c);
+            for (int i = c; i < newEnds.length; i++) newEnds[i] = ends[i + 1] - 1;
+        } else {
+            Task[] chunk = new Task[old.length - 1];
+            System.arraycopy(old, 0, chunk, 0, at);
+            System.arraycopy(old, at + 1, chunk, at, old.length - at - 1);
+            newChunks = chunks.clone();
+            newChunks[c] = new Chunk(chunk);
+            newEnds = ends.clone();
+            for (int i = c; i < newEnds.length; i++) newEnds[i]--;
+        }
+        TaskView view = new TaskView(newChunks, newEnds, version);
+        if (newChunks.length > 2 * ((view.size + CHUNK - 1) / CHUNK) + 2) return packed(view.asList(), version);
+        return view;
+    }
+
+    //READING
+    //the manager's getVersion() when this view was handed out
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public Task get(int position) {
+        if (position < 0 || position >= size) throw new IndexOutOfBoundsException("Position " + position + " of " + size);
+        int c = chunkOf(position);
+        return chunks[c].tasks()[position - start(c)];
+    }
+
+    private int chunkOf(int position) {
+        int c = Arrays.binarySearch(ends, position + 1);
+        return (c >= 0) ? c : -c - 1; //first chunk that ends after position
+    }
+
+    private int start(int chunk) {
+        return (chunk == 0) ? 0 : ends[chunk - 1];
+    }
+
+    //PAGES
+    //limit tasks from position offset on
+    public Page page(int offset, int limit) {
+        return page(offset, limit, null);
+    }
+
+    //the next limit tasks that pass the filter, looking from position from on;
+    //Page.getNext() is where to look for the page after, so paging through a filter never starts over
+    public Page page(int from, int limit, Predicate<Task> filter) {
+        if (from < 0 || limit < 0) throw new IllegalArgumentException("Negative offset or limit");
+        if (from >= size || limit == 0) return new Page(Collections.emptyList(), from, Math.min(from, size), version, from < size);
+        if (filter == null) {
+            int to = (int) Math.min(size, (long) from + limit);
+            return new Page(asList().subList(from, to), from, to, version, to < size);
+        }
+        Task[] found = new Task[Math.min(limit, 256)];
+        int count = 0;
+        int position = from;
+        int c = chunkOf(from);
+        int i = from - start(c);
+        while (c < chunks.length && count < limit) {
+            Task[] chunk = chunks[c].tasks();
+            for (; i < chunk.length && count < limit; i++, position++) {
+                if (!filter.test(chunk[i])) continue;
+                if (count == found.length) found = Arrays.copyOf(found, Math.min(limit, count * 2));
+                found[count++] = chunk[i];
+            }
+            if (i == chunk.length) {
+                c++;
+                i = 0;
+            }
+        }
+        List<Task> tasks = Collections.unmodifiableList(Arrays.asList(found).subList(0, count));
+        return new Page(tasks, from, position, version, position < size);
+    }
+
+    //pages of pageSize one after the other, all from this version no matter what the manager does meanwhile
+    public Iterator<Page> pages(int pageSize, Predicate<Task> filter) {
+        if (pageSize < 1) throw new IllegalArgumentException("pageSize below 1");
+        return new Iterator<Page>() {
+            private int next;
+            private boolean more = size > 0;
+
+            @Override
+            public boolean hasNext() {
+                return more;
+            }
+
+            @Override
+            public Page next() {
+                if (!more) throw new NoSuchElementException();
+                Page page = page(next, pageSize, filter);
+                next = page.getNext();
+                more = page.hasMore();
+                return page;
+            }
+        };
+    }
+
+    public static final class Page {
+        private final List<Task> tasks;
+        private final int from;
+        private final int next;
+        private final long version;
+        private final boolean more;
+
+        Page(List<Task> tasks, int from, int next, long version, boolean more) {
+            this.tasks = tasks;
+            this.from = from;
+            this.next = next;
+            this.version = version;
+            this.more = more;
+        }
+
+        //read-only, no copy of the view behind it
+        public List<Task> getTasks() {
+            return tasks;
+        }
+
+        public int getFrom() {
+            return from;
+        }
+
+        //position in the view to ask for the following page
+        public int getNext() {
+            return next;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public boolean hasMore() {
+            return more;
+        }
+    }
+
+    //BULK
+    @Override
+    public Iterator<Task> iterator() {
+        return new Iterator<Task>() {
+            private int c;
+            private int i;
+
+            @Override
+            public boolean hasNext() {
+                return c < chunks.length;
+            }
+
+            @Override
+            public Task next() {
+                if (c >= chunks.length) throw new NoSuchElementException();
+                Task task = chunks[c].tasks()[i];
+                if (++i == chunks[c].length) {
+                    c++;
+                    i = 0;
+                }
+                return task;
+            }
+        };
+    }
+
+    @Override
+    public Spliterator<Task> spliterator() {
+        return new Chunks(0, size);
+    }
+
+    public Stream<Task> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    //splits at chunk borders, every chunk is an array so each part walks plain memory
+    public Stream<Task> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    //read-only list over the view, get is a binary search over the chunks, iterating walks them directly
+    public List<Task> asList() {
+        List<Task> current = list;
+        if (current == null) list = current = new ListView();
+        return current;
+    }
+
+    private final class ListView extends AbstractList<Task> implements RandomAccess {
+        @Override
+        public Task get(int index) {
+            return TaskView.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Iterator<Task> iterator() {
+            return TaskView.this.iterator();
+        }
+
+        @Override
+        public Spliterator<Task> spliterator() {
+            return TaskView.this.spliterator();
+        }
+    }
+
+    private final class Chunks implements Spliterator<Task> {
+        private int position;
+        private final int end;
+
+        Chunks(int position, int end) {
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Task> action) {
+            if (position >= end) return false;
+            action.accept(get(position++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Task> action) {
+            if (position >= end) return;
+            int c = chunkOf(position);
+            int i = position - start(c);
+            while (position < end) {
+                Task[] chunk = chunks[c].tasks();
+                int n = Math.min(chunk.length - i, end - position);
+                for (int k = 0; k < n; k++) action.accept(chunk[i + k]);
+                position += n;
+                c++;
+                i = 0;
+            }
+        }
+
+        @Override
+        public Spliterator<Task> trySplit() {
+            if (end - position < 2 * CHUNK) return null;
+            int c = chunkOf(position + (end - position) / 2);
+            int middle = start(c); //at a chunk border
+            if (middle <= position) return null;
+            Chunks prefix = new Chunks(position, middle);
+            position = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - position;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+        }
+    }
+}
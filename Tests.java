@@ -1,12 +1,36 @@
 /*logic-layer*/
 package Tests;
 
+import Cli.TaskCli;
+import Server.TaskServer;
+import Task.DateFormatCache;
 import Task.Task;
+import TaskManager.ConcurrentTaskManager;
+import TaskManager.CsvExporter;
+import TaskManager.DeadlineIndex;
+import TaskManager.DeadlineScheduler;
+import TaskManager.ImportReport;
+import TaskManager.IoProgress;
+import TaskManager.PredicateIndex;
+import TaskManager.ShardedTaskStore;
+import TaskManager.SortedTaskIndex;
+import TaskManager.TaskArchive;
+import TaskManager.TaskBatch;
+import TaskManager.TaskChangeListener;
+import TaskManager.TaskEventBus;
+import TaskManager.TaskJournal;
 import TaskManager.TaskManager;
+import TaskManager.TaskMetrics;
+import TaskManager.TaskStatistics;
+import TaskManager.TaskView;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.List;
 
 import static junit.framework.TestCase.assertFalse;
 import static org.junit.Assert.*;
@@ -91,6 +115,1374 @@ public class Tests {
         assertEquals("Save Test", loadManager.getAllTasks().get(0).getDescription());
     }
 
+    @Test
+    public void testFailedJournalLeavesTasksAlone() throws IOException {
+        File file = File.createTempFile("todo", ".ser");
+        file.delete();
+        file.deleteOnExit();
+
+        TaskManager manager = new TaskManager(file.getPath(), 1, 1000);
+        manager.saveToFile();
+        LocalDateTime deadline = LocalDateTime.now().plusDays(1);
+        manager.addTask(new Task("First", deadline));
+        Task task = manager.getAllTasks().get(0);
+        LocalDateTime modified = task.getModificationDate();
+        manager.close();
+        File journal = new File(file.getPath() + ".journal");
+        File aside = new File(file.getPath() + ".aside");
+        assertTrue(journal.renameTo(aside));
+        journal.mkdir(); //every record from here on fails to be written
+
+        try {
+            manager.updateTaskById(task.getId(), "Changed", null);
+            fail("update was not journaled");
+        } catch (RuntimeException expected) {
+        }
+        try {
+            manager.markCompleteById(task.getId());
+            fail("completion was not journaled");
+        } catch (RuntimeException expected) {
+        }
+        try {
+            manager.deleteTaskById(task.getId());
+            fail("delete was not journaled");
+        } catch (RuntimeException expected) {
+        }
+        assertEquals(1, manager.getAllTasks().size());
+        assertSame(task, manager.getTask(task.getId()));
+        assertEquals("First", task.getDescription());
+        assertEquals(deadline, task.getDeadline());
+        assertFalse(task.isCompleted());
+        assertNull(task.getCompletionDate());
+        assertNull(task.getDeletionDate());
+        assertEquals(modified, task.getModificationDate());
+        assertEquals(1, manager.getIncompleteTasks().size());
+        assertEquals(0, manager.getCompletedTasks().size());
+
+        //the failed records were not kept for the next write either
+        journal.delete();
+        assertTrue(aside.renameTo(journal));
+        manager.updateTaskById(task.getId(), "Second", deadline);
+        TaskManager reloaded = new TaskManager(file.getPath(), 1, 1000);
+        reloaded.loadFromFile();
+        assertEquals(1, reloaded.getAllTasks().size());
+        assertEquals("Second", reloaded.getAllTasks().get(0).getDescription());
+        assertFalse(reloaded.getAllTasks().get(0).isCompleted());
+        reloaded.close();
+        manager.close();
+    }
+
+    @Test
+    public void testJournalReplay() throws IOException {
+        File file = File.createTempFile("todo", ".ser");
+        file.delete();
+        file.deleteOnExit();
+
+        //tiny group commit and compaction threshold so both paths run
+        TaskManager saveManager = new TaskManager(file.getPath(), 2, 3);
+        saveManager.saveToFile();
+        saveManager.addTask(new Task("First", LocalDateTime.now()));
+        saveManager.addTask(new Task("Second", null));
+        saveManager.addTask(new Task("Third", LocalDateTime.now().plusDays(1)));
+        saveManager.markComplete(1);
+        saveManager.deleteTask(0);
+        saveManager.updateTask(1, "Third updated", null);
+        saveManager.saveToFile();
+
+        TaskManager loadManager = new TaskManager(file.getPath(), 2, 3);
+        loadManager.loadFromFile();
+
+        assertEquals(2, loadManager.getAllTasks().size());
+        assertEquals("Second", loadManager.getAllTasks().get(0).getDescription());
+        assertTrue(loadManager.getAllTasks().get(0).isCompleted());
+        assertNotNull(loadManager.getAllTasks().get(0).getCompletionDate());
+        assertEquals("Third updated", loadManager.getAllTasks().get(1).getDescription());
+        assertNull(loadManager.getAllTasks().get(1).getDeadline());
+    }
+
+    @Test
+    public void testLongDescriptionJournaled() throws IOException {
+        File file = File.createTempFile("todo", ".ser");
+        file.delete();
+        file.deleteOnExit();
+        new File(file.getPath() + ".journal").deleteOnExit();
+        String longText = "\u00e9".repeat(50_000); //100 KB of utf-8, past what writeUTF can take
+
+        TaskManager saveManager = new TaskManager(file.getPath(), 1, 1000);
+        saveManager.saveToFile();
+        saveManager.addTask(new Task(longText, null));
+        saveManager.updateTask(0, longText + "!", null);
+        saveManager.close();
+
+        TaskManager loadManager = new TaskManager(file.getPath(), 1, 1000);
+        loadManager.loadFromFile(); //replayed from the journal, not the snapshot
+        assertEquals(1, loadManager.getAllTasks().size());
+        assertEquals(longText + "!", loadManager.getAllTasks().get(0).getDescription());
+        loadManager.close();
+    }
+
+    @Test
+    public void testFailedCompactionIsNotRetried() throws Exception {
+        File file = File.createTempFile("todo", ".ser");
+        File journalFile = new File(file.getPath() + ".journal");
+        File compacting = new File(file.getPath() + ".journal.compacting");
+        try {
+            TaskJournal journal = new TaskJournal(file, 1, 2);
+            journal.writeSnapshot(new java.util.ArrayList<>());
+            java.nio.file.Files.write(file.toPath(), new byte[]{1, 2, 3}); //the compactor cannot read it
+            journal.logAdd(new Task("First", null));
+            journal.logAdd(new Task("Second", null)); //seals the journal, the compaction fails
+            for (int i = 0; i < 50 && journal.getCompactionFailure() == null; i++) Thread.sleep(20);
+            assertNotNull(journal.getCompactionFailure());
+            assertTrue(compacting.exists());
+
+            for (int i = 0; i < 5; i++) journal.logAdd(new Task("More " + i, null)); //no new compaction per record
+            Thread.sleep(50);
+            assertTrue(compacting.exists());
+            assertTrue(journalFile.length() > 0); //the records still reach the live journal
+            journal.close();
+        } finally {
+            file.delete();
+            journalFile.delete();
+            compacting.delete();
+        }
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() throws IOException {
+        File file = File.createTempFile("todo", ".ser");
+        file.deleteOnExit();
+
+        LocalDateTime deadline = LocalDateTime.of(2030, 5, 1, 12, 30, 15);
+        LocalDateTime created = LocalDateTime.of(2024, 1, 2, 3, 4, 5);
+        TaskManager saveManager = new TaskManager(file.getPath(), 32, 1000);
+        saveManager.addTask(new Task("Caf\u00e9 \"quoted\", with comma", deadline, true, created));
+        saveManager.addTask(new Task("No deadline", null));
+        saveManager.saveToFile();
+
+        TaskManager loadManager = new TaskManager(file.getPath(), 32, 1000);
+        loadManager.loadFromFile();
+
+        Task first = loadManager.getAllTasks().get(0);
+        assertEquals("Caf\u00e9 \"quoted\", with comma", first.getDescription());
+        assertEquals(deadline, first.getDeadline());
+        assertEquals(created, first.getCreationDate());
+        assertTrue(first.isCompleted());
+        assertNull(loadManager.getAllTasks().get(1).getDeadline());
+    }
+
+    @Test
+    public void testCsvRoundTrip() throws IOException {
+        File file = File.createTempFile("tasks", ".csv");
+        file.deleteOnExit();
+
+        TaskManager exportManager = new TaskManager();
+        exportManager.addTask(new Task("Buy milk, eggs and \"bread\"", LocalDateTime.of(2030, 1, 2, 3, 4, 5)));
+        exportManager.addTask(new Task("Line one\nline two", null));
+        exportManager.markComplete(1);
+        exportManager.exportUsingCSV(file);
+
+        TaskManager importManager = new TaskManager();
+        ImportReport report = importManager.importFromCSV(file);
+
+        assertEquals(2, report.getImported());
+        assertEquals(0, report.getRejected());
+        assertEquals("Buy milk, eggs and \"bread\"", importManager.getAllTasks().get(0).getDescription());
+        assertEquals(LocalDateTime.of(2030, 1, 2, 3, 4, 5), importManager.getAllTasks().get(0).getDeadline());
+        assertEquals("Line one\nline two", importManager.getAllTasks().get(1).getDescription());
+        assertTrue(importManager.getAllTasks().get(1).isCompleted());
+        assertNotNull(importManager.getAllTasks().get(1).getCompletionDate());
+    }
+
+    @Test
+    public void testCsvImportRejectsBadRows() throws IOException {
+        File file = File.createTempFile("tasks", ".csv");
+        file.deleteOnExit();
+        try (java.io.PrintWriter writer = new java.io.PrintWriter(file)) {
+            writer.println("Description,Deadline,Completed,Created,CompletionDate");
+            writer.println("\"Good\",No Deadline,No,01-02-2024 10:00:00,-");
+            writer.println("\"Bad date\",32-13-2024 10:00:00,No,01-02-2024 10:00:00,-");
+            writer.println("\"Too short\",No Deadline");
+        }
+
+        TaskManager manager = new TaskManager();
+        ImportReport report = manager.importFromCSV(file);
+
+        assertEquals(3, report.getRowsRead());
+        assertEquals(1, report.getImported());
+        assertEquals(2, report.getRejected());
+        assertEquals(1, manager.getAllTasks().size());
+    }
+
+    @Test
+    public void testCsvExportMatchesToCSV() throws IOException {
+        TaskManager manager = new TaskManager();
+        manager.addTask(new Task("Caf\u00e9 \"to go\"", LocalDateTime.of(2031, 12, 24, 18, 0, 59)));
+        manager.addTask(new Task("Pending", null));
+        manager.markComplete(0);
+
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        int rows = new CsvExporter().export(manager.getAllTasks(), CsvExporter.ALL, out);
+
+        String expected = CsvExporter.HEADER + "\n"
+                + manager.getAllTasks().get(0).toCSV() + "\n"
+                + manager.getAllTasks().get(1).toCSV() + "\n";
+        assertEquals(2, rows);
+        assertEquals(expected, out.toString(java.nio.charset.StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFilteredGzipExport() throws IOException {
+        File file = File.createTempFile("tasks", ".csv.gz");
+        file.deleteOnExit();
+
+        TaskManager exportManager = new TaskManager();
+        exportManager.addTask(new Task("Done", null));
+        exportManager.addTask(new Task("Not done", null));
+        exportManager.markComplete(0);
+        assertEquals(1, exportManager.exportUsingCSV(file, CsvExporter.PENDING));
+
+        TaskManager importManager = new TaskManager();
+        importManager.importFromCSV(file);
+        assertEquals(1, importManager.getAllTasks().size());
+        assertEquals("Not done", importManager.getAllTasks().get(0).getDescription());
+    }
+
+    @Test
+    public void testIoProgressAndCancel() throws IOException {
+        File file = File.createTempFile("tasks", ".csv");
+        file.deleteOnExit();
+
+        TaskManager exportManager = new TaskManager();
+        for (int i = 0; i < 20_000; i++) exportManager.addTask(new Task("Task " + i, null));
+        long[] written = new long[1];
+        assertEquals(20_000, exportManager.exportUsingCSV(file, CsvExporter.ALL, new IoProgress() {
+            public void progress(long done, long total) { written[0] = done; }
+            public boolean isCancelled() { return false; }
+        }));
+        assertEquals(file.length(), written[0]);
+
+        //cancelled after the first block, nothing may reach the manager
+        TaskManager importManager = new TaskManager();
+        long[] read = new long[1];
+        ImportReport report = importManager.importFromCSV(file, new IoProgress() {
+            public void progress(long done, long total) { read[0] = done; }
+            public boolean isCancelled() { return read[0] > 0; }
+        });
+        assertEquals(0, report.getImported());
+        assertEquals(0, importManager.getAllTasks().size());
+    }
+
+    @Test
+    public void testSearch() {
+        TaskManager manager = new TaskManager();
+        manager.addTask(new Task("Write quarterly report", null));
+        manager.addTask(new Task("Report bug in parser", null));
+        manager.addTask(new Task("Buy milk", null));
+        manager.addTask(new Task("Reply to Reporter", null));
+
+        assertEquals(3, manager.search("rep", 10).size());
+        assertEquals(3, manager.search("report", 10).size()); //"reporter" also starts with "report"
+        assertEquals("Reply to Reporter", manager.search("report", 10).get(2).getDescription()); //only a prefix, ranked last
+        assertEquals("Write quarterly report", manager.search("report", 10).get(0).getDescription()); //shorter description wins the tie
+        assertEquals(1, manager.search("rep bug", 10).size());
+        assertEquals(0, manager.search("milk report", 10).size());
+        assertEquals(1, manager.search("rep", 1).size());
+
+        //the index follows updates and deletes
+        Task milk = manager.search("milk", 10).get(0);
+        manager.updateTaskById(milk.getId(), "Buy bread", null);
+        assertTrue(manager.search("milk", 10).isEmpty());
+        assertEquals(milk.getId(), manager.searchIds("bre", 10).get(0).longValue());
+        manager.deleteTaskById(milk.getId());
+        assertTrue(manager.search("bread", 10).isEmpty());
+        manager.addTask(new Task("Repaint fence", null));
+        assertEquals(4, manager.search("re", 10).size());
+
+        //removed postings are only marked until enough of them pile up
+        List<Long> common = new java.util.ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Task task = new Task("Common word " + i, null);
+            manager.addTask(task);
+            common.add(task.getId());
+        }
+        for (int i = 0; i < 1000; i += 3) manager.deleteTaskById(common.get(i));
+        manager.updateTaskById(common.get(1), "Rare word", null);
+        manager.updateTaskById(common.get(1), "Common word again", null);
+        assertEquals(666, manager.search("common", 2000).size());
+        assertEquals(666, manager.search("comm wor", 2000).size());
+        for (int i = 1; i < 1000; i++) if (i % 3 != 0) manager.deleteTaskById(common.get(i));
+        assertTrue(manager.search("common", 10).isEmpty());
+        assertEquals(4, manager.search("re", 10).size());
+    }
+
+    @Test
+    public void testColumnarStorage() throws IOException {
+        File file = File.createTempFile("columnar", ".ser");
+        file.delete();
+        file.deleteOnExit();
+
+        TaskManager manager = new TaskManager(file.getPath(), 1, Integer.MAX_VALUE, true);
+        LocalDateTime deadline = LocalDateTime.of(2030, 5, 1, 12, 30);
+        for (int i = 0; i < 100; i++) manager.addTask(new Task(i % 2 == 0 ? "Same text" : "Task " + i, deadline));
+        manager.saveToFile();
+
+        Task first = manager.getAllTasks().get(0);
+        assertEquals("Same text", first.getDescription());
+        assertEquals(deadline, first.getDeadline());
+        assertEquals(first, manager.getTask(first.getId())); //views of the same row are equal
+
+        //changes through the manager land in the columns
+        manager.markCompleteById(first.getId());
+        manager.updateTaskById(manager.getAllTasks().get(1).getId(), "Renamed", null);
+        manager.deleteTaskById(manager.getAllTasks().get(2).getId());
+        assertTrue(first.isCompleted());
+        assertNotNull(first.getCompletionDate());
+        assertEquals(99, manager.getAllTasks().size());
+        assertEquals(1, manager.getCompletedTasks().size());
+        assertEquals("Renamed", manager.getAllTasks().get(1).getDescription());
+        assertNull(manager.getAllTasks().get(1).getDeadline());
+        assertEquals(first.toCSV(), manager.getTask(first.getId()).toCSV());
+        manager.close();
+
+        //a columnar manager reads the same file as a normal one
+        TaskManager reloaded = new TaskManager(file.getPath(), 1, Integer.MAX_VALUE, true);
+        reloaded.loadFromFile();
+        TaskManager plain = new TaskManager(file.getPath(), 1, Integer.MAX_VALUE);
+        plain.loadFromFile();
+        assertEquals(99, reloaded.getAllTasks().size());
+        for (int i = 0; i < 99; i++) {
+            assertEquals(plain.getAllTasks().get(i).toCSV(), reloaded.getAllTasks().get(i).toCSV());
+            assertEquals(plain.getAllTasks().get(i).getId(), reloaded.getAllTasks().get(i).getId());
+        }
+        reloaded.close();
+        plain.close();
+        new File(file.getPath() + ".journal").delete();
+    }
+
+    @Test
+    public void testColumnarChurn() {
+        TaskManager manager = new TaskManager("columnar-churn.ser", 1, Integer.MAX_VALUE, true);
+        Task kept = new Task("Kept", null);
+        manager.addTask(kept);
+        assertEquals(manager.getTask(kept.getId()), manager.getAllTasks().get(0)); //the stored row, not the caller's task
+        String padding = "x".repeat(4000);
+        for (int round = 0; round < 200; round++) {
+            List<Task> added = new java.util.ArrayList<>();
+            for (int i = 0; i < 50; i++) added.add(new Task(round + " " + i + padding, null));
+            manager.addTasks(added);
+            manager.updateTaskById(kept.getId(), "Kept " + round, null);
+            for (Task task : added) manager.deleteTaskById(task.getId());
+            manager.getAllTasks(); //sweeps, the descriptions of the deleted rows become garbage and get packed
+        }
+        assertEquals(1, manager.getAllTasks().size());
+        assertEquals("Kept 199", manager.getTask(kept.getId()).getDescription());
+        assertEquals("Kept 199", manager.getAllTasks().get(0).getDescription());
+
+        //the rows the deletes gave back are reused, each task still reads as itself
+        LocalDateTime deadline = LocalDateTime.of(2030, 1, 1, 9, 0);
+        for (int i = 0; i < 20; i++) manager.addTask(new Task("Reused " + i, deadline.plusDays(i), i % 2 == 0, deadline));
+        List<Task> all = manager.getAllTasks();
+        assertEquals(21, all.size());
+        for (int i = 0; i < 20; i++) {
+            Task task = manager.getTask(all.get(i + 1).getId());
+            assertEquals("Reused " + i, task.getDescription());
+            assertEquals(deadline.plusDays(i), task.getDeadline());
+            assertEquals(i % 2 == 0, task.isCompleted());
+        }
+        assertEquals("Kept 199", manager.getTask(kept.getId()).getDescription());
+    }
+
+    @Test
+    public void testUndoRedoHistory() throws Exception {
+        File file = File.createTempFile("history", ".ser");
+        file.delete();
+        new File(file.getPath() + ".history").deleteOnExit();
+
+        TaskManager manager = new TaskManager(file.getPath(), 1, Integer.MAX_VALUE);
+        manager.enableHistory(3, 1 << 20); //only three undo steps kept in memory
+        Task task = new Task("Draft", null);
+        manager.addTask(task);
+        long id = task.getId();
+        LocalDateTime afterAdd = LocalDateTime.now();
+        Thread.sleep(5);
+
+        manager.updateTaskById(id, "Final", null);
+        manager.markCompleteById(id);
+        LocalDateTime afterComplete = LocalDateTime.now();
+        Thread.sleep(5);
+        manager.deleteTaskById(id);
+
+        assertNull(manager.getTask(id));
+        assertTrue(manager.undo()); //delete
+        assertEquals("Final", manager.getTask(id).getDescription());
+        assertTrue(manager.getTask(id).isCompleted());
+        assertNull(manager.getTask(id).getDeletionDate());
+        assertTrue(manager.undo()); //complete
+        assertFalse(manager.getTask(id).isCompleted());
+        assertNull(manager.getTask(id).getCompletionDate());
+        assertTrue(manager.undo()); //rename
+        assertEquals("Draft", manager.getTask(id).getDescription());
+        assertFalse(manager.undo()); //the add fell out of the ring
+
+        assertTrue(manager.redo());
+        assertEquals("Final", manager.getTask(id).getDescription());
+        manager.updateTaskById(id, "Other", null); //a new change drops the redo chain
+        assertFalse(manager.canRedo());
+
+        //point in time, undo and redo count as changes of their own
+        assertEquals("Draft", manager.getTaskAt(id, afterAdd).getDescription());
+        assertTrue(manager.getTaskAt(id, afterComplete).isCompleted());
+        assertEquals("Final", manager.getTaskAt(id, afterComplete).getDescription());
+        assertNull(manager.getTaskAt(id, afterAdd.minusDays(1)));
+        assertEquals("Other", manager.getTaskAt(id, LocalDateTime.now()).getDescription());
+        manager.close();
+    }
+
+    @Test
+    public void testHistoryLimitsAndReopen() throws Exception {
+        File file = File.createTempFile("history-limits", ".ser");
+        file.delete();
+        File log = new File(file.getPath() + ".history");
+        try {
+            TaskManager manager = new TaskManager(file.getPath(), 1, Integer.MAX_VALUE);
+            manager.enableHistory(16, 200);
+            Task task = new Task("Short", null);
+            manager.addTask(task);
+            long id = task.getId();
+            manager.updateTaskById(id, "Long ".repeat(100), null); //bigger than the whole window
+            assertFalse(manager.canUndo()); //only logged, nothing before it can be undone either
+            manager.markCompleteById(id); //small again, the text is not in the delta
+            assertTrue(manager.undo());
+            assertFalse(manager.getTask(id).isCompleted());
+            assertFalse(manager.canUndo());
+            LocalDateTime before = LocalDateTime.now();
+            Thread.sleep(5);
+            manager.updateTaskById(id, "Last", null);
+            assertTrue(log.length() > 0); //forced with every step
+            manager.close();
+
+            //a new manager indexes the log it finds and reads the timeline from it
+            TaskManager reopened = new TaskManager(file.getPath(), 1, Integer.MAX_VALUE);
+            reopened.addTask(new Task("Last", null, false, before.minusDays(1))); //the same id as before
+            reopened.enableHistory();
+            assertEquals("Long ".repeat(100), reopened.getTaskAt(id, before).getDescription());
+            reopened.close();
+        } finally {
+            file.delete();
+            log.delete();
+            new File(file.getPath() + ".journal").delete();
+        }
+    }
+
+    @Test
+    public void testBatchIsOneUndoStep() throws Exception {
+        File file = File.createTempFile("history-batch", ".ser");
+        file.delete();
+        new File(file.getPath() + ".history").deleteOnExit();
+
+        TaskManager manager = new TaskManager(file.getPath(), 1, Integer.MAX_VALUE);
+        manager.enableHistory();
+        for (int i = 0; i < 4; i++) manager.addTask(new Task("Task " + i, null));
+        List<Long> ids = manager.getAllTasks().stream().map(Task::getId).collect(java.util.stream.Collectors.toList());
+        manager.beginBatch()
+                .setCompleted(ids.subList(0, 3), true)
+                .update(ids.get(3), "Renamed", null)
+                .delete(List.of(ids.get(0)))
+                .commit();
+        assertEquals(3, manager.getAllTasks().size());
+
+        assertTrue(manager.undo()); //the whole batch at once
+        assertEquals(4, manager.getAllTasks().size());
+        for (long id : ids) assertFalse(manager.getTask(id).isCompleted());
+        assertEquals("Task 3", manager.getTask(ids.get(3)).getDescription());
+
+        assertTrue(manager.redo());
+        assertNull(manager.getTask(ids.get(0)));
+        assertTrue(manager.getTask(ids.get(1)).isCompleted());
+        assertEquals("Renamed", manager.getTask(ids.get(3)).getDescription());
+
+        assertTrue(manager.undo());
+        assertTrue(manager.undo()); //the add before the batch
+        assertEquals(3, manager.getAllTasks().size());
+        manager.close();
+    }
+
+    @Test
+    public void testTaskIds() {
+        TaskManager manager = new TaskManager();
+        for (int i = 0; i < 1000; i++) manager.addTask(new Task("Task " + i, null));
+
+        Task task = manager.getAllTasks().get(501);
+        long firstId = manager.getAllTasks().get(0).getId();
+        assertTrue(task.getId() > 0);
+        assertSame(task, manager.getTask(task.getId()));
+
+        //deleting by id leaves the ids of the other tasks intact
+        for (int i = 0; i < 1000; i += 2) assertTrue(manager.deleteTaskById(firstId + i));
+        assertEquals(500, manager.getAllTasks().size());
+        assertNull(manager.getTask(firstId));
+        assertSame(task, manager.getTask(task.getId()));
+        assertTrue(manager.markCompleteById(task.getId()));
+        assertTrue(manager.getTask(task.getId()).isCompleted());
+        assertFalse(manager.deleteTaskById(firstId));
+        assertEquals("Task 1", manager.getAllTasks().get(0).getDescription());
+    }
+
+    @Test
+    public void testTimedIndexFollowsTheClock() throws InterruptedException {
+        TaskManager manager = new TaskManager();
+        PredicateIndex overdue = manager.registerTimedIndex("overdue", task -> task.getDeadline() != null
+                && task.getDeadline().isBefore(LocalDateTime.now()) && !task.isCompleted());
+        List<Task> view = manager.getIndexedTasks("overdue");
+        manager.addTask(new Task("Soon", LocalDateTime.now().plusNanos(50_000_000)));
+        manager.addTask(new Task("Later", LocalDateTime.now().plusDays(1)));
+        manager.addTask(new Task("Past", LocalDateTime.now().minusDays(1)));
+        assertEquals(1, view.size());
+
+        //no task changes, only the clock moves
+        Thread.sleep(100);
+        assertEquals(2, view.size());
+        assertEquals(2, overdue.size());
+        assertEquals("Soon", view.get(0).getDescription());
+        assertEquals(2, manager.getIndexedTasks("overdue", 0, 10).size());
+    }
+
+    @Test
+    public void testStatusIndexes() {
+        TaskManager manager = new TaskManager();
+        manager.registerTimedIndex("overdue", task -> task.getDeadline() != null
+                && task.getDeadline().isBefore(LocalDateTime.now()) && !task.isCompleted());
+        for (int i = 0; i < 10; i++) manager.addTask(new Task("Task " + i, LocalDateTime.now().plusDays(4 - i).plusHours(1)));
+
+        List<Task> completed = manager.getCompletedTasks();
+        List<Task> pending = manager.getIncompleteTasks();
+        manager.markComplete(1);
+        manager.markComplete(7);
+        manager.deleteTask(0);
+
+        //the views are live, no need to ask again
+        assertEquals(2, completed.size());
+        assertEquals("Task 1", completed.get(0).getDescription());
+        assertEquals(7, pending.size());
+        assertEquals(4, manager.getIndexedTasks("overdue").size()); //tasks 5, 6, 8 and 9
+
+        manager.getAllTasks(); //sweeps the deleted slot, indexes have to follow
+        assertEquals("Task 7", completed.get(1).getDescription());
+        assertEquals("Task 2", pending.get(0).getDescription());
+
+        manager.setCompletedById(completed.get(0).getId(), false);
+        assertEquals(1, completed.size());
+        assertEquals(8, pending.size());
+    }
+
+    @Test
+    public void testIndexViewRandomAccess() {
+        TaskManager manager = new TaskManager();
+        for (int i = 0; i < 5000; i++) manager.addTask(new Task("Task " + i, null));
+        for (int i = 0; i < 5000; i += 3) manager.markComplete(i);
+        for (int i = 4998; i >= 0; i -= 7) manager.deleteTask(i);
+
+        List<Task> completed = manager.getCompletedTasks();
+        assertTrue(completed instanceof java.util.RandomAccess);
+        List<Task> expected = new java.util.ArrayList<>();
+        for (Task task : manager.getTasksView()) if (task.isCompleted()) expected.add(task); //sweeps the deleted slots
+        assertEquals(expected.size(), completed.size());
+        java.util.Random random = new java.util.Random(7);
+        for (int i = 0; i < 2000; i++) {
+            int index = random.nextInt(expected.size());
+            assertEquals(expected.get(index).getId(), completed.get(index).getId());
+        }
+        for (int i = expected.size() - 1; i >= 0; i--) assertEquals(expected.get(i).getId(), completed.get(i).getId());
+
+        manager.setCompletedById(expected.get(100).getId(), false);
+        assertEquals(expected.get(101).getId(), completed.get(100).getId());
+        assertEquals(expected.get(expected.size() - 1).getId(), completed.get(completed.size() - 1).getId());
+    }
+
+    @Test
+    public void testDeadlineQueries() {
+        TaskManager manager = new TaskManager();
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < 20; i++) manager.addTask(new Task("Task " + i, now.plusDays(10 - i).plusHours(1)));
+        manager.addTask(new Task("No deadline", null));
+        manager.markComplete(19);
+
+        List<Task> overdue = manager.getOverdueTasks();
+        assertEquals(8, overdue.size()); //tasks 11 to 18, task 19 is done
+        assertEquals("Task 18", overdue.get(0).getDescription()); //earliest deadline first
+
+        List<Task> dueSoon = manager.getTasksDueBetween(now, now.plusDays(3).plusHours(2));
+        assertEquals(4, dueSoon.size()); //tasks 10, 9, 8 and 7
+
+        manager.updateTask(0, "Task 0", now.minusDays(30));
+        assertEquals("Task 0", manager.getOverdueTasks().get(0).getDescription());
+    }
+
+    @Test
+    public void testDeadlineScheduler() throws InterruptedException {
+        TaskManager manager = new TaskManager();
+        DeadlineIndex index = new DeadlineIndex();
+        manager.registerIndex(index);
+        DeadlineScheduler scheduler = new DeadlineScheduler(index, 10, 8); //80 ms horizon
+
+        java.util.Set<Long> fired = java.util.concurrent.ConcurrentHashMap.newKeySet();
+        java.util.concurrent.CountDownLatch latch = new java.util.concurrent.CountDownLatch(2);
+        scheduler.addListener((id, deadline) -> {
+            fired.add(id);
+            latch.countDown();
+        });
+        scheduler.start();
+
+        LocalDateTime now = LocalDateTime.now();
+        manager.addTask(new Task("Inside the wheel", now.plusNanos(40_000_000)));
+        manager.addTask(new Task("Past the horizon", now.plusNanos(250_000_000)));
+        manager.addTask(new Task("Completed before", now.plusNanos(60_000_000)));
+        manager.markComplete(2);
+
+        assertTrue(latch.await(5, java.util.concurrent.TimeUnit.SECONDS));
+        Thread.sleep(100);
+        scheduler.stop();
+        assertEquals(2, fired.size());
+        assertFalse(fired.contains(manager.getAllTasks().get(2).getId()));
+    }
+
+    @Test
+    public void testDeadlineSchedulerTicks() throws InterruptedException {
+        TaskManager manager = new TaskManager();
+        DeadlineIndex index = new DeadlineIndex();
+        manager.registerIndex(index);
+        DeadlineScheduler scheduler = new DeadlineScheduler(index, 200, 8);
+        List<Long> late = java.util.Collections.synchronizedList(new java.util.ArrayList<>());
+        scheduler.addListener((id, deadline) -> late.add(java.time.Duration.between(deadline, LocalDateTime.now()).toMillis()));
+        scheduler.start();
+        manager.addTask(new Task("Inside the current tick", LocalDateTime.now().plusNanos(30_000_000)));
+        manager.addTask(new Task("Just passed", LocalDateTime.now().minusNanos(1_000_000)));
+        manager.addTask(new Task("Long overdue", LocalDateTime.now().minusDays(1)));
+        Thread.sleep(800);
+        scheduler.stop();
+        assertEquals(2, late.size()); //the one in the current tick is not dropped, the old one is just overdue
+        for (long millis : late) assertTrue(millis >= 0); //never before the deadline
+
+        DeadlineScheduler managed = manager.getDeadlineScheduler();
+        List<Long> fired = java.util.Collections.synchronizedList(new java.util.ArrayList<>());
+        managed.addListener((id, deadline) -> fired.add(id));
+        manager.close(); //stops the scheduler
+        manager.addTask(new Task("After close", LocalDateTime.now().plusNanos(20_000_000)));
+        Thread.sleep(DeadlineScheduler.DEFAULT_TICK_MILLIS * 2 + 200);
+        assertTrue(fired.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentTaskManager() throws InterruptedException {
+        ConcurrentTaskManager manager = new ConcurrentTaskManager();
+        int writers = 4;
+        int perWriter = 2000;
+        java.util.concurrent.atomic.AtomicBoolean failed = new java.util.concurrent.atomic.AtomicBoolean();
+
+        List<Thread> threads = new java.util.ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < perWriter; i++) {
+                    manager.addTask(new Task("Writer " + writer + " task " + i, null));
+                    if (i % 10 == 0) manager.markComplete(0);
+                }
+            }));
+        }
+        threads.add(new Thread(() -> {
+            int last = 0;
+            while (last < writers * perWriter) {
+                List<Task> snapshot = manager.snapshot();
+                if (snapshot.size() < last) failed.set(true); //nothing is deleted so it can only grow
+                last = snapshot.size();
+            }
+        }));
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join(10_000);
+
+        assertFalse(failed.get());
+        assertEquals(writers * perWriter, manager.getAllTasks().size());
+        assertEquals(1, manager.getCompletedTasks().size());
+        assertEquals(writers * perWriter, new java.util.HashSet<>(manager.getAllTasks()).size());
+
+        //reads under the lock hand out copies, a later write does not show through them
+        long id = manager.getAllTasks().get(1).getId();
+        Task found = manager.getTask(id);
+        Task completed = manager.getCompletedTasks().get(0);
+        manager.updateTaskById(id, "Changed", null);
+        manager.setCompletedById(completed.getId(), false);
+        assertNotEquals("Changed", found.getDescription());
+        assertTrue(completed.isCompleted());
+        assertEquals("Changed", manager.getTask(id).getDescription());
+    }
+
+    @Test
+    public void testChangeListenerPositions() {
+        TaskManager manager = new TaskManager();
+        for (int i = 0; i < 5; i++) manager.addTask(new Task("Task " + i, null));
+        List<Task> view = manager.getTasksView();
+        long secondId = view.get(1).getId();
+
+        List<String> events = new java.util.ArrayList<>();
+        manager.addChangeListener(new TaskChangeListener() {
+            public void tasksAdded(int first, int last) { events.add("add " + first + "-" + last); }
+            public void taskUpdated(int position, Task task) { events.add("update " + position); }
+            public void taskDeleted(int position, Task task) { events.add("delete " + position); }
+            public void tasksReloaded() { events.add("reload"); }
+        });
+
+        manager.deleteTaskById(secondId);
+        manager.markCompleteById(view.get(3).getId()); //"Task 4" once "Task 1" is gone
+        manager.addTasks(List.of(new Task("A", null), new Task("B", null)));
+
+        assertEquals(List.of("delete 1", "update 3", "add 4-5"), events);
+        assertEquals(6, view.size());
+        assertEquals("Task 4", view.get(3).getDescription());
+        assertEquals("B", view.get(5).getDescription());
+    }
+
+    @Test
+    public void testBulkAddDuplicateIds() {
+        TaskManager manager = new TaskManager();
+        manager.addTask(new Task("Existing", null));
+        long existingId = manager.getAllTasks().get(0).getId();
+
+        List<Task> added = new java.util.ArrayList<>();
+        for (long id : new long[]{40, 40, existingId, 41, 40}) {
+            Task task = new Task("Id " + id, null);
+            task.setId(id);
+            added.add(task);
+        }
+        manager.addTasks(added);
+
+        java.util.Set<Long> ids = new java.util.HashSet<>();
+        for (Task task : manager.getAllTasks()) assertTrue(ids.add(task.getId()));
+        assertEquals(6, ids.size());
+        assertEquals("Id 40", manager.getTask(40).getDescription());
+        assertEquals("Existing", manager.getTask(existingId).getDescription());
+        for (Task task : manager.getAllTasks()) assertEquals(task.getDescription(), manager.getTask(task.getId()).getDescription());
+    }
+
+    @Test
+    public void testBatchCommit() {
+        TaskManager manager = new TaskManager();
+        for (int i = 0; i < 6; i++) manager.addTask(new Task("Task " + i, LocalDateTime.of(2030, 1, 1 + i, 9, 0)));
+        List<Task> view = manager.getTasksView();
+        long firstId = view.get(0).getId();
+
+        List<String> events = new java.util.ArrayList<>();
+        manager.addChangeListener(new TaskChangeListener() {
+            public void tasksAdded(int first, int last) { events.add("add"); }
+            public void taskUpdated(int position, Task task) { events.add("update"); }
+            public void taskDeleted(int position, Task task) { events.add("delete"); }
+            public void tasksReloaded() { events.add("reload"); }
+            public void batchCommitted() { events.add("batch"); }
+        });
+
+        TaskBatch batch = manager.beginBatch()
+                .completeWhere(task -> task.getDeadline().getDayOfMonth() <= 3)
+                .deleteWhere(Task::isCompleted)
+                .rescheduleWhere(task -> true, deadline -> deadline.plusDays(7))
+                .add(new Task("Added", null))
+                .update(firstId, "Gone already", null);
+        assertEquals(5, batch.size());
+        assertEquals(3 + 3 + 3 + 1, batch.commit());
+
+        assertEquals(List.of("batch"), events);
+        assertEquals(4, view.size());
+        assertEquals("Task 3", view.get(0).getDescription());
+        assertEquals(LocalDateTime.of(2030, 1, 11, 9, 0), view.get(0).getDeadline());
+        assertEquals("Added", view.get(3).getDescription());
+        assertNull(manager.getTask(firstId));
+
+        try {
+            batch.commit();
+            fail("a batch commits once");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testEventBus() throws Exception {
+        TaskManager manager = new TaskManager();
+        TaskEventBus bus = manager.getEventBus();
+
+        List<String> seen = java.util.Collections.synchronizedList(new java.util.ArrayList<>());
+        java.util.concurrent.atomic.AtomicInteger ends = new java.util.concurrent.atomic.AtomicInteger();
+        TaskEventBus.Subscription subscription = manager.getEventBus().subscribe("test", (event, endOfBatch) -> {
+            seen.add(event.getType() + " " + event.getDescription());
+            if (endOfBatch) ends.incrementAndGet();
+        });
+
+        for (int i = 0; i < 50; i++) manager.addTask(new Task("Task " + i, null));
+        long id = manager.getAllTasks().get(0).getId();
+        manager.markCompleteById(id);
+        manager.updateTaskById(id, "Renamed", null);
+        manager.deleteTaskById(id);
+
+        assertTrue(bus.drain(5000));
+        assertEquals(53, seen.size());
+        assertEquals("ADDED Task 49", seen.get(49));
+        assertEquals(List.of("COMPLETED Task 0", "UPDATED Renamed", "DELETED Renamed"), seen.subList(50, 53));
+        assertEquals(52, subscription.getSequence());
+        assertTrue(ends.get() >= 1 && ends.get() == subscription.getBatches());
+
+        subscription.close();
+        manager.addTask(new Task("Nobody listens", null));
+        assertEquals(53, bus.publishedCount()); //no subscribers, nothing published
+    }
+
+    @Test
+    public void testEventConsumerReadsConcurrentManager() throws Exception {
+        ConcurrentTaskManager manager = new ConcurrentTaskManager();
+        java.util.concurrent.atomic.AtomicLong found = new java.util.concurrent.atomic.AtomicLong();
+        manager.getEventBus().subscribe("reader", (event, endOfBatch) -> {
+            if (manager.getTask(event.getTaskId()) != null) found.incrementAndGet(); //takes the manager's lock
+        });
+        int count = TaskEventBus.DEFAULT_RING_SIZE * 2; //the ring fills up while the consumer waits for the lock
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < count; i++) manager.addTask(new Task("Task " + i, null));
+        });
+        writer.start();
+        writer.join(60_000);
+        assertFalse(writer.isAlive()); //no writer waits on the ring while holding the lock
+        assertTrue(manager.getEventBus().drain(10_000));
+        assertEquals(count, found.get());
+    }
+
+    @Test
+    public void testHttpServer() throws Exception {
+        ConcurrentTaskManager manager = new ConcurrentTaskManager();
+        TaskServer server = new TaskServer(manager, 0);
+        server.start();
+        try {
+            java.net.http.HttpClient client = java.net.http.HttpClient.newHttpClient();
+            String base = "http://localhost:" + server.getPort() + "/tasks";
+
+            java.net.http.HttpResponse<String> created = send(client, "POST", base,
+                    "{\"description\": \"Write \\\"report\\\" \u00e9\", \"deadline\": \"2030-01-02T09:00\"}", null);
+            assertEquals(201, created.statusCode());
+            long id = manager.getAllTasks().get(0).getId();
+            assertEquals("Write \"report\" \u00e9", manager.getTask(id).getDescription());
+            assertTrue(created.body().contains("\"deadline\":\"2030-01-02T09:00:00\""));
+
+            java.net.http.HttpResponse<String> list = send(client, "GET", base, null, null);
+            assertEquals(200, list.statusCode());
+            String etag = list.headers().firstValue("ETag").get();
+            assertTrue(list.body().startsWith("[{\"id\":" + id + ",\"description\":\"Write \\\"report\\\" \u00e9\""));
+            assertEquals(304, send(client, "GET", base, null, etag).statusCode());
+
+            assertEquals(200, send(client, "PUT", base + "/" + id, "{\"completed\": true}", null).statusCode());
+            assertTrue(manager.getTask(id).isCompleted());
+            assertEquals(200, send(client, "GET", base, null, etag).statusCode()); //changed, so the old etag no longer holds
+
+            java.net.http.HttpResponse<String> bulk = send(client, "POST", base + "/bulk",
+                    "{\"add\": [{\"description\": \"A\"}, {\"description\": \"B\"}], \"deleteCompleted\": true}", null);
+            assertEquals(200, bulk.statusCode());
+            assertTrue(bulk.body().startsWith("{\"touched\":3,"));
+            assertEquals(2, manager.getAllTasks().size());
+            assertEquals("[]", send(client, "GET", base + "?completed=true", null, null).body());
+            assertTrue(send(client, "GET", base + "?offset=1&limit=1", null, null).body().contains("\"description\":\"B\""));
+            String pending = send(client, "GET", base + "?completed=false&offset=1&limit=5", null, null).body();
+            assertTrue(pending.contains("\"description\":\"B\"") && !pending.contains("\"description\":\"A\""));
+            assertEquals("[]", send(client, "GET", base + "?completed=false&offset=9", null, null).body());
+            assertTrue(send(client, "GET", base + "?q=b&limit=1", null, null).body().contains("\"description\":\"B\""));
+
+            assertEquals(404, send(client, "GET", base + "/" + id, null, null).statusCode());
+            assertEquals(400, send(client, "POST", base, "{\"description\": ", null).statusCode());
+            long a = manager.getAllTasks().get(0).getId();
+            assertEquals(204, send(client, "DELETE", base + "/" + a, null, null).statusCode());
+            assertEquals(1, manager.getAllTasks().size());
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static java.net.http.HttpResponse<String> send(java.net.http.HttpClient client, String method, String uri,
+                                                           String body, String ifNoneMatch) throws Exception {
+        java.net.http.HttpRequest.Builder request = java.net.http.HttpRequest.newBuilder(java.net.URI.create(uri))
+                .method(method, body == null ? java.net.http.HttpRequest.BodyPublishers.noBody()
+                        : java.net.http.HttpRequest.BodyPublishers.ofString(body));
+        if (ifNoneMatch != null) request.header("If-None-Match", ifNoneMatch);
+        return client.send(request.build(), java.net.http.HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        TaskManager manager = new TaskManager();
+        for (int i = 0; i < 100; i++) manager.addTask(new Task("Task " + i, null));
+        manager.markCompleteById(manager.getAllTasks().get(0).getId());
+        manager.deleteTaskById(manager.getAllTasks().get(1).getId());
+        manager.deleteTaskById(-5); //found nothing, not timed
+        manager.beginBatch().deleteWhere(Task::isCompleted).commit();
+
+        TaskMetrics metrics = manager.getMetrics();
+        assertEquals(100, metrics.histogram(TaskMetrics.Operation.ADD).count());
+        assertEquals(1, metrics.histogram(TaskMetrics.Operation.COMPLETE).count());
+        assertEquals(2, metrics.histogram(TaskMetrics.Operation.DELETE).count());
+        assertEquals(1, metrics.histogram(TaskMetrics.Operation.BATCH).count());
+        assertEquals(100, metrics.counter(TaskMetrics.Counter.TASKS_ADDED));
+        assertEquals(2, metrics.counter(TaskMetrics.Counter.TASKS_DELETED));
+        TaskMetrics.LatencyHistogram adds = metrics.histogram(TaskMetrics.Operation.ADD);
+        assertTrue(adds.percentile(50) <= adds.percentile(99) && adds.percentile(99) <= adds.max());
+        assertTrue(metrics.dump().contains("add "));
+
+        metrics.registerMBean("test");
+        javax.management.ObjectName name = new javax.management.ObjectName("ToDoList:type=TaskManager,name=\"test\"");
+        assertEquals(100L, java.lang.management.ManagementFactory.getPlatformMBeanServer().getAttribute(name, "add.count"));
+        metrics.unregisterMBean();
+
+        metrics.reset();
+        assertEquals(0, metrics.histogram(TaskMetrics.Operation.ADD).count());
+    }
+
+    @Test
+    public void testShardedStore() throws Exception {
+        File dir = java.nio.file.Files.createTempDirectory("todo-shards").toFile();
+        try {
+            TaskManager manager = new TaskManager(new ShardedTaskStore(dir));
+            manager.loadFromFile();
+            for (int i = 0; i < 10; i++) manager.addTask(new Task("Task " + i, null));
+            List<Task> all = manager.getAllTasks();
+            for (int i = 0; i < 4; i++) manager.markCompleteById(all.get(i).getId());
+            String done = ShardedTaskStore.shardOf(manager.getTask(all.get(0).getId()));
+            manager.saveToFile();
+            manager.close();
+            assertTrue(new File(dir, "manifest.txt").exists());
+
+            ShardedTaskStore store = new ShardedTaskStore(dir);
+            assertEquals(6, (int) store.manifest().get(ShardedTaskStore.PENDING));
+            assertEquals(4, (int) store.manifest().get(done));
+            TaskManager reopened = new TaskManager(store);
+            reopened.loadFromFile();
+            assertEquals(6, reopened.getAllTasks().size()); //completed months stay on disk
+            assertTrue(reopened.loadShard(done));
+            assertEquals(10, reopened.getAllTasks().size());
+            assertFalse(reopened.loadShard(done));
+
+            reopened.markCompleteById(all.get(9).getId()); //moves from pending into the loaded month
+            assertTrue(reopened.evictShard(done));
+            assertEquals(5, reopened.getAllTasks().size());
+            Task added = new Task("After reopen", null);
+            reopened.addTask(added);
+            assertTrue(added.getId() > all.get(9).getId());
+            reopened.close();
+
+            TaskManager third = new TaskManager(new ShardedTaskStore(dir));
+            third.loadFromFile();
+            assertEquals(6, third.getAllTasks().size());
+            assertEquals(1, third.loadAllShards());
+            assertEquals(11, third.getAllTasks().size());
+            assertTrue(third.getTask(all.get(9).getId()).isCompleted());
+            try {
+                third.evictShard(ShardedTaskStore.PENDING);
+                fail("the pending shard stays loaded");
+            } catch (IllegalArgumentException expected) {
+            }
+            third.close();
+        } finally {
+            for (File file : dir.listFiles()) file.delete();
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testShardedStoreRestartWithoutSave() throws Exception {
+        File dir = java.nio.file.Files.createTempDirectory("todo-shards").toFile();
+        try {
+            TaskManager manager = new TaskManager(new ShardedTaskStore(dir, 1, 1000));
+            manager.loadFromFile();
+            manager.addTask(new Task("Saved", null));
+            manager.saveToFile();
+            Task first = new Task("Before restart", null);
+            manager.addTask(first);
+            manager.markCompleteById(first.getId()); //journaled into a month shard, no save, the manifest never saw it
+            String done = ShardedTaskStore.shardOf(manager.getTask(first.getId()));
+
+            TaskManager restarted = new TaskManager(new ShardedTaskStore(dir, 1, 1000));
+            restarted.loadFromFile();
+            Task second = new Task("After restart", null);
+            restarted.addTask(second);
+            assertTrue(second.getId() > first.getId());
+            assertTrue(restarted.loadShard(done));
+            assertEquals(3, restarted.getAllTasks().size());
+            restarted.close();
+
+            new File(dir, "manifest.txt").delete();
+            TaskManager noManifest = new TaskManager(new ShardedTaskStore(dir, 1, 1000));
+            noManifest.loadFromFile();
+            Task third = new Task("Without manifest", null);
+            noManifest.addTask(third);
+            assertTrue(third.getId() > second.getId());
+            assertTrue(noManifest.loadShard(done));
+            assertEquals(4, noManifest.getAllTasks().size());
+            noManifest.close();
+            manager.close();
+        } finally {
+            for (File file : dir.listFiles()) file.delete();
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testDateFormatCache() {
+        DateFormatCache cache = new DateFormatCache(64);
+        LocalDateTime date = LocalDateTime.of(2030, 3, 4, 9, 5, 7);
+        assertEquals("04/03/2030 09:05", cache.format(date, "dd/MM/yyyy HH:mm"));
+        assertEquals("04/03/2030 09:05", cache.format(date.withSecond(59), "dd/MM/yyyy HH:mm"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals("04-03-2030 09:05:07", cache.format(date, Task.CSV_DATE_PATTERN)); //same minute, other pattern
+        assertEquals("04-03-2030 09:05:59", cache.format(date.withSecond(59), Task.CSV_DATE_PATTERN));
+        assertEquals(2, cache.getMisses());
+        assertEquals("09:05:07.000", cache.format(date, "HH:mm:ss.SSS"));
+        assertEquals(1, cache.getUncached());
+        assertNull(cache.format(null, "dd/MM/yyyy HH:mm"));
+
+        for (int i = 0; i < 1000; i++) cache.format(date.plusMinutes(i), "dd/MM/yyyy HH:mm");
+        assertTrue(cache.size() <= 64);
+        assertEquals(date.plusMinutes(999).format(java.time.format.DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm")),
+                cache.format(date.plusMinutes(999), "dd/MM/yyyy HH:mm"));
+    }
+
+    @Test
+    public void testTaskView() {
+        TaskManager manager = new TaskManager();
+        List<Task> added = new java.util.ArrayList<>();
+        for (int i = 0; i < 3000; i++) added.add(new Task("Task " + i, null));
+        manager.addTasks(added);
+        TaskView before = manager.view();
+        assertEquals(3000, before.size());
+        assertSame(before, manager.view()); //nothing changed, nothing rebuilt
+
+        manager.deleteTaskById(added.get(1500).getId());
+        manager.addTask(new Task("Last", null));
+        TaskView after = manager.view();
+        assertEquals(3000, before.size()); //the old version stays as it was
+        assertEquals("Task 1500", before.get(1500).getDescription());
+        assertEquals(3000, after.size());
+        assertEquals("Task 1501", after.get(1500).getDescription());
+        assertEquals("Last", after.get(2999).getDescription());
+        assertEquals(manager.getVersion(), after.getVersion());
+
+        TaskView.Page page = after.page(10, 5);
+        assertEquals(5, page.getTasks().size());
+        assertEquals("Task 10", page.getTasks().get(0).getDescription());
+        assertEquals(15, page.getNext());
+
+        int seen = 0;
+        java.util.Iterator<TaskView.Page> pages = after.pages(100, task -> task.getDescription().endsWith("7"));
+        while (pages.hasNext()) seen += pages.next().getTasks().size();
+        assertEquals(300, seen);
+        assertEquals(3000, after.parallelStream().count());
+        assertEquals(after.stream().mapToLong(Task::getId).sum(), after.parallelStream().mapToLong(Task::getId).sum());
+
+        manager.beginBatch().deleteWhere(task -> task.getId() % 2 == 0).commit();
+        assertEquals(manager.getTasksView().size(), manager.view().size());
+        assertEquals(manager.getTasksView().stream().map(Task::getId).collect(java.util.stream.Collectors.toList()),
+                manager.view().stream().map(Task::getId).collect(java.util.stream.Collectors.toList())); //copies, not the same objects
+    }
+
+    @Test
+    public void testSortedViews() {
+        TaskManager manager = new TaskManager();
+        java.util.Random random = new java.util.Random(7);
+        List<Task> added = new java.util.ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            LocalDateTime deadline = (i % 10 == 0) ? null : LocalDateTime.of(2030, 1, 1, 0, 0).plusHours(random.nextInt(5000));
+            added.add(new Task("Task " + i, deadline));
+        }
+        manager.addTasks(added);
+        List<Task> byDeadline = manager.getSortedView(SortedTaskIndex.Key.DEADLINE, true);
+        assertSortedByDeadline(byDeadline, manager.getAllTasks().size());
+
+        for (int i = 0; i < 2000; i += 3) manager.deleteTaskById(added.get(i).getId());
+        for (int i = 1; i < 2000; i += 7) manager.updateTaskById(added.get(i).getId(), "Moved", LocalDateTime.of(2029, 6, 1, 0, 0).plusMinutes(i));
+        manager.addTask(new Task("Earliest", LocalDateTime.of(2000, 1, 1, 0, 0)));
+        assertSortedByDeadline(byDeadline, manager.getAllTasks().size()); //the same live view, no re-sort
+        assertEquals("Earliest", byDeadline.get(0).getDescription());
+        assertEquals(0, manager.getSortedRank(SortedTaskIndex.Key.DEADLINE, byDeadline.get(0).getId()));
+        assertEquals(42, manager.getSortedRank(SortedTaskIndex.Key.DEADLINE, byDeadline.get(42).getId()));
+
+        List<Task> newestFirst = manager.getSortedView(SortedTaskIndex.Key.DEADLINE, false);
+        assertNull(newestFirst.get(0).getDeadline()); //no deadline sorts last, so first when reversed
+        assertEquals("Earliest", newestFirst.get(newestFirst.size() - 1).getDescription());
+    }
+
+    @Test
+    public void testConcurrentSortedViewRowGone() {
+        ConcurrentTaskManager manager = new ConcurrentTaskManager();
+        List<Task> sorted = manager.getSortedView(SortedTaskIndex.Key.DEADLINE, true);
+        try {
+            sorted.get(0);
+            fail("an empty view has no row 0");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+        for (int i = 0; i < 3; i++) manager.addTask(new Task("Task " + i, LocalDateTime.of(2030, 1, 1 + i, 0, 0)));
+        assertEquals("Task 2", sorted.get(2).getDescription());
+        manager.deleteTaskById(sorted.get(0).getId());
+        try {
+            sorted.get(2);
+            fail("the last row is gone, not some other task");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+        assertEquals("Task 2", sorted.get(1).getDescription());
+    }
+
+    @Test
+    public void testSnapshotKeepsItsOwnTasks() throws IOException {
+        File file = File.createTempFile("snapshot-copies", ".ser");
+        try {
+            ConcurrentTaskManager manager = new ConcurrentTaskManager(file.getPath(), 64, Integer.MAX_VALUE);
+            for (int i = 0; i < 2500; i++) manager.addTask(new Task("Task " + i, null));
+            manager.saveToFile();
+            manager.close();
+
+            ConcurrentTaskManager reopened = new ConcurrentTaskManager(file.getPath(), 64, Integer.MAX_VALUE);
+            reopened.loadFromFile();
+            List<Task> before = reopened.snapshot();
+            long id = before.get(2100).getId();
+            reopened.updateTaskById(id, "Changed", null);
+            reopened.markCompleteById(before.get(5).getId());
+            assertEquals("Task 2100", before.get(2100).getDescription()); //the writer did not touch the old version
+            assertFalse(before.get(5).isCompleted());
+
+            List<Task> after = reopened.snapshot();
+            assertEquals("Changed", after.get(2100).getDescription());
+            assertTrue(after.get(5).isCompleted());
+            assertEquals("Task 1000", after.get(1000).getDescription()); //a row no one read yet, built from the file
+            assertNotSame(reopened.getTask(id), after.get(2100));
+            reopened.close();
+        } finally {
+            file.delete();
+            new File(file.getPath() + ".journal").delete();
+        }
+    }
+
+    private static void assertSortedByDeadline(List<Task> sorted, int size) {
+        assertEquals(size, sorted.size());
+        for (int i = 1; i < sorted.size(); i++) {
+            LocalDateTime before = sorted.get(i - 1).getDeadline();
+            LocalDateTime after = sorted.get(i).getDeadline();
+            assertTrue(after == null || (before != null && !before.isAfter(after)));
+        }
+    }
+
+    @Test
+    public void testStatistics() {
+        TaskManager manager = new TaskManager();
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime start = now.minusDays(10);
+        List<Task> added = new java.util.ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            Task done = new Task("Done " + i, null, true, start);
+            done.restoreHistory(start, null, start.plusMinutes(i)); //1 to 100 minutes to complete
+            added.add(done);
+        }
+        manager.addTasks(added);
+        TaskStatistics statistics = manager.getStatistics(); //filled from what is already there
+
+        manager.addTask(new Task("Late", now.minusHours(1)));
+        manager.addTask(new Task("Later", now.plusDays(1)));
+        Task open = new Task("Open", null);
+        manager.addTask(open);
+        assertEquals(103, statistics.total());
+        assertEquals(100, statistics.completed());
+        assertEquals(3, statistics.pending());
+        assertEquals(1, statistics.overdue());
+        assertEquals(100, statistics.completedOn(start.toLocalDate()));
+        assertEquals(3, statistics.createdOn(now.toLocalDate()));
+        assertEquals(0, statistics.completedInLast(7));
+        assertEquals(50, statistics.averageTimeToComplete().toMinutes()); //50.5 minutes
+        long median = statistics.timeToCompletePercentile(50).getSeconds();
+        assertTrue(Math.abs(median - 50 * 60) <= 50 * 60 / 16); //one bucket is a sixteenth of its power of two
+        assertEquals(100 * 60, statistics.timeToCompletePercentile(100).getSeconds());
+
+        //every change moves the numbers without a scan
+        manager.markCompleteById(open.getId());
+        assertEquals(101, statistics.completed());
+        assertEquals(1, statistics.completedInLast(7));
+        long late = manager.getOverdueTasks().get(0).getId();
+        manager.markCompleteById(late);
+        assertEquals(0, statistics.overdue());
+        manager.setCompletedById(late, false);
+        assertEquals(1, statistics.overdue());
+        for (int i = 0; i < 1000; i++) manager.updateTaskById(late, "Late " + i, now.minusHours(1)); //same deadline, same entry
+        assertEquals(1, statistics.overdue());
+        long later = manager.getTasksDueBefore(now.plusDays(2)).get(1).getId();
+        for (int i = 0; i < 1000; i++) manager.updateTaskById(later, "Later", now.plusDays(1).plusMinutes(i % 2)); //dead entries get compacted
+        assertEquals(1, statistics.overdue());
+        manager.deleteTaskById(late);
+        assertEquals(0, statistics.overdue());
+        for (int i = 0; i < 50; i++) manager.deleteTaskById(added.get(i).getId());
+        assertEquals(52, statistics.total());
+        assertEquals(51, statistics.completed());
+        assertEquals(50, statistics.completedOn(start.toLocalDate()));
+        assertEquals(74, statistics.averageTimeToComplete().toMinutes()); //51 to 100 minutes and the one just done
+
+        for (Task task : List.copyOf(manager.getCompletedTasks())) manager.deleteTaskById(task.getId());
+        manager.getSortedView(SortedTaskIndex.Key.CREATED, true); //a new index sweeps first, the slots move down
+        assertEquals(1, statistics.total());
+        assertEquals(0, statistics.completed());
+        assertEquals(Duration.ZERO, statistics.averageTimeToComplete());
+        manager.addTask(new Task("After sweep", null));
+        assertEquals(2, statistics.pending());
+    }
+
+    @Test
+    public void testCliBatchMode() throws IOException {
+        TaskManager manager = new TaskManager();
+        StringBuilder input = new StringBuilder("# a script\n\n");
+        for (int i = 0; i < 10; i++) input.append("add 2000-01-01T09:00 Task ").append(i).append('\n');
+        input.append("complete 2\n")
+                .append("delete 3\n")
+                .append("delete 3\n") //already gone
+                .append("update 4 - Renamed\n")
+                .append("query overdue 3\n") //sees every line above
+                .append("frobnicate 4\n")
+                .append("add tomorrow Task\n")
+                .append("reopen 2\n")
+                .append("search renamed\n")
+                .append("stats\n");
+        java.io.StringWriter output = new java.io.StringWriter();
+        TaskCli cli = new TaskCli(manager, 4); //small batches, so the commands span several of them
+        int errors = cli.run(new java.io.StringReader(input.toString()), output);
+
+        List<String> lines = List.of(output.toString().split("\\R"));
+        assertEquals(2, errors);
+        assertEquals(20, cli.getCommandCount());
+        assertEquals("added 1", lines.get(0));
+        assertEquals("added 10", lines.get(9));
+        assertEquals("completed 2", lines.get(10));
+        assertEquals("deleted 3", lines.get(11));
+        assertEquals("missing 3", lines.get(12));
+        assertEquals("updated 4", lines.get(13));
+        assertEquals("1\topen\t2000-01-01T09:00\tTask 0", lines.get(14));
+        assertTrue(lines.get(16).startsWith("6\t")); //2 is done, 3 deleted, 4 has no deadline any more
+        assertEquals("end 3", lines.get(17));
+        assertEquals("error 18: Unknown command frobnicate", lines.get(18));
+        assertTrue(lines.get(19).startsWith("error 19: Bad date tomorrow"));
+        assertEquals("reopened 2", lines.get(20));
+        assertEquals("4\topen\t-\tRenamed", lines.get(21));
+        assertEquals("end 1", lines.get(22));
+        assertTrue(lines.get(23).startsWith("stats tasks 9, completed 0"));
+        assertEquals(9, manager.getAllTasks().size());
+
+        //a second input only reports its own errors
+        assertEquals(1, cli.run(new java.io.StringReader("complete 1\nfrobnicate\n"), new java.io.StringWriter()));
+        assertEquals(0, cli.run(new java.io.StringReader("reopen 1\n"), new java.io.StringWriter()));
+
+        //a bad line between two changes is answered in its place without splitting their batch
+        long batches = manager.getMetrics().histogram(TaskMetrics.Operation.BATCH).count();
+        output = new java.io.StringWriter();
+        assertEquals(1, cli.run(new java.io.StringReader("add - Before\nfrobnicate\nadd - After\n"), output));
+        assertEquals(List.of("added 11", "error 2: Unknown command frobnicate", "added 12"),
+                List.of(output.toString().split("\\R")));
+        assertEquals(batches + 1, manager.getMetrics().histogram(TaskMetrics.Operation.BATCH).count());
+    }
+
+    @Test
+    public void testArchive() throws Exception {
+        File dir = java.nio.file.Files.createTempDirectory("todo-archive").toFile();
+        File file = new File(dir, "todo.ser");
+        try {
+            TaskManager manager = new TaskManager(file.getPath(), 64, Integer.MAX_VALUE);
+            manager.enableArchive();
+            LocalDateTime old = LocalDateTime.now().minusDays(90);
+            long firstId = -1;
+            for (int i = 0; i < 1200; i++) {
+                Task task = new Task("Task " + i, null, i % 2 == 0, old.minusDays(1));
+                if (i % 2 == 0) task.restoreHistory(old, null, old.plusHours(i % 24));
+                manager.addTask(task);
+                if (i == 0) firstId = task.getId();
+            }
+            Task fresh = new Task("Done today", null);
+            manager.addTask(fresh);
+            manager.markCompleteById(fresh.getId());
+            manager.saveToFile();
+            long doomed = manager.getAllTasks().get(1).getId();
+            manager.deleteTaskById(doomed);
+
+            assertEquals(600, manager.archiveCompleted(30));
+            assertEquals(600, manager.getAllTasks().size()); //599 pending + the one completed today
+            TaskArchive archive = manager.getArchive();
+            assertEquals(601, archive.size());
+            assertTrue(archive.blockCount() >= 2);
+            assertTrue(archive.compressedBytes() < archive.rawBytes());
+            Task deleted = archive.get(doomed);
+            assertNotNull(deleted.getDeletionDate());
+            assertEquals("Task 0", archive.get(firstId).getDescription());
+            assertEquals(600, archive.archivedBetween(old.minusDays(1), old.plusDays(2)).size());
+            assertEquals(1, archive.search(task -> task.getDescription().equals("Task 42"), 10).size());
+            manager.close();
+
+            TaskManager reopened = new TaskManager(file.getPath(), 64, Integer.MAX_VALUE);
+            reopened.loadFromFile();
+            assertEquals(600, reopened.getAllTasks().size()); //archived tasks left the task file
+            reopened.enableArchive();
+            assertEquals(601, reopened.getArchive().size());
+            assertEquals("Task 1", reopened.getArchive().get(doomed).getDescription());
+            reopened.close();
+        } finally {
+            for (File f : dir.listFiles()) {
+                if (f.isDirectory()) for (File inner : f.listFiles()) inner.delete();
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testArchiveDeletesAndUndo() throws Exception {
+        File dir = java.nio.file.Files.createTempDirectory("todo-archive-undo").toFile();
+        File file = new File(dir, "todo.ser");
+        try {
+            TaskManager manager = new TaskManager(file.getPath(), 64, Integer.MAX_VALUE);
+            manager.enableArchive();
+            manager.enableHistory();
+            LocalDateTime old = LocalDateTime.now().minusDays(90);
+            for (int i = 0; i < 5; i++) {
+                Task task = new Task("Task " + i, null, i < 3, old);
+                if (i < 3) task.restoreHistory(old, null, old);
+                manager.addTask(task);
+            }
+            long doomed = manager.getAllTasks().get(4).getId();
+            manager.deleteTaskById(doomed);
+            TaskArchive reopened = new TaskArchive(new File(file.getPath() + ".archive")); //as after a crash, nothing flushed
+            assertEquals("Task 4", reopened.get(doomed).getDescription());
+            reopened.close();
+
+            manager.undo(); //the delete is taken back, the task is no longer archived
+            assertNotNull(manager.getTask(doomed));
+            assertNull(manager.getArchive().get(doomed));
+            assertTrue(manager.getArchive().search(task -> task.getId() == doomed, 10).isEmpty());
+
+            List<String> seen = java.util.Collections.synchronizedList(new java.util.ArrayList<>());
+            manager.getEventBus().subscribe("test", (event, endOfBatch) -> seen.add(event.getType() + " " + event.getDescription()));
+            assertEquals(3, manager.archiveCompleted(30));
+            assertTrue(manager.getEventBus().drain(5000));
+            assertEquals(List.of("DELETED Task 0", "DELETED Task 1", "DELETED Task 2"), seen);
+            assertTrue(manager.undo()); //archiving is undone task by task
+            assertEquals(3, manager.getAllTasks().size());
+            assertNull(manager.getArchive().get(manager.getAllTasks().get(2).getId()));
+
+            List<Long> ids = new java.util.ArrayList<>();
+            for (Task task : manager.getAllTasks()) ids.add(task.getId());
+            assertEquals(3, manager.beginBatch().delete(ids.subList(0, 3)).commit()); //archived in one write at the end
+            reopened = new TaskArchive(new File(file.getPath() + ".archive"));
+            for (long id : ids.subList(0, 3)) assertNotNull(reopened.get(id));
+            reopened.close();
+            manager.close();
+        } finally {
+            for (File f : dir.listFiles()) {
+                if (f.isDirectory()) for (File inner : f.listFiles()) inner.delete();
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
     @Test
     public void testInvalidIndexHandling() {
         TaskManager manager = new TaskManager();
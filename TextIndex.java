@@ -0,0 +1,344 @@
+/* data-layer */
+package TaskManager;
+
+import Task.Task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+
+//inverted index over the words of the task descriptions, term -> sorted ids of the tasks that contain it
+//every query word is matched as a prefix ("rep" finds "report"), several words must all match (AND)
+//the word with the fewest postings drives the query, the other words are checked against the terms of each candidate
+//so a query costs O(smallest posting list), not O(tasks)
+public class TextIndex implements TaskIndex {
+
+    //sorted ids of the tasks that contain one term, ids grow so adds are appends
+    //a remove only marks the id, the marked ones are dropped in one pass once they are half of the list, so deleting
+    //every task of a common word costs O(postings) in total instead of one shift per delete
+    private static final class Postings {
+        long[] ids = new long[4];
+        int size; //ids in use, removed ones included
+        int removed;
+        BitSet dead; //positions of the removed ids, null while there are none
+
+        int live() {
+            return size - removed;
+        }
+
+        void add(long id) {
+            int at = (size == 0 || ids[size - 1] < id) ? size : insertionPoint(id);
+            if (at < size && ids[at] == id) { //removed and added again, e.g. an edit or an undo
+                if (dead != null && dead.get(at)) {
+                    dead.clear(at);
+                    removed--;
+                }
+                return;
+            }
+            if (at < size && removed > 0) { //the marks would have to shift with the ids
+                compact();
+                at = insertionPoint(id);
+            }
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+        }
+
+        void remove(long id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at < 0 || (dead != null && dead.get(at))) return;
+            if (dead == null) dead = new BitSet();
+            dead.set(at);
+            removed++;
+            if (removed * 2 > size) compact();
+        }
+
+        //drops the removed ids, the rest keep their order
+        void compact() {
+            if (removed == 0) return;
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (!dead.get(i)) ids[kept++] = ids[i];
+            }
+            size = kept;
+            removed = 0;
+            dead = null;
+        }
+
+        private int insertionPoint(long id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            return (at < 0) ? -at - 1 : at;
+        }
+    }
+
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private String[][] termsBySlot = new String[16][]; //distinct terms of every slot, shared with the dictionary keys
+    private long[] idBySlot = new long[16];
+    private int slotCount;
+    private final TaskIdIndex slotById = new TaskIdIndex();
+
+    //search as you type: a longer query can only match a subset of the last one, so it filters that instead
+    private int version;
+    private int cachedVersion = -1;
+    private String[] cachedTokens;
+    private long[] cachedCandidates;
+
+    @Override
+    public void taskAdded(int slot, Task task) {
+        ensureSlots(slot + 1);
+        slotCount = Math.max(slotCount, slot + 1);
+        put(slot, task.getId(), task.getDescription());
+        version++;
+    }
+
+    @Override
+    public void taskChanged(int slot, Task task) {
+        String[] old = termsBySlot[slot];
+        String[] now = tokens(task.getDescription());
+        if (old != null && Arrays.equals(old, now)) return; //completing a task does not touch the words
+        clear(slot);
+        put(slot, task.getId(), task.getDescription());
+        version++;
+    }
+
+    @Override
+    public void taskRemoved(int slot) {
+        clear(slot);
+        version++;
+    }
+
+    @Override
+    public void slotsSwept(BitSet removed) {
+        int kept = 0;
+        for (int i = 0; i < slotCount; i++) {
+            if (removed.get(i)) continue;
+            termsBySlot[kept] = termsBySlot[i];
+            idBySlot[kept] = idBySlot[i];
+            kept++;
+        }
+        Arrays.fill(termsBySlot, kept, slotCount, null);
+        Arrays.fill(idBySlot, kept, slotCount, 0L);
+        slotCount = kept;
+        slotById.clear();
+        for (int i = 0; i < slotCount; i++) {
+            if (termsBySlot[i] != null) slotById.put(idBySlot[i], i);
+        }
+        version++;
+    }
+
+    @Override
+    public void rebuild(TaskList tasks) {
+        terms.clear();
+        slotById.clear();
+        termsBySlot = new String[Math.max(16, tasks.size())][];
+        idBySlot = new long[termsBySlot.length];
+        slotCount = tasks.size();
+        for (int i = 0; i < tasks.size(); i++) {
+            put(i, tasks.idAt(i), tasks.descriptionAt(i)); //straight from the snapshot, no tasks get built
+        }
+        version++;
+    }
+
+    private void put(int slot, long id, String description) {
+        String[] tokens = tokens(description);
+        for (int i = 0; i < tokens.length; i++) {
+            Map.Entry<String, Postings> entry = terms.ceilingEntry(tokens[i]);
+            Postings postings;
+            if (entry != null && entry.getKey().equals(tokens[i])) {
+                tokens[i] = entry.getKey(); //one String per term, no matter how many tasks use it
+                postings = entry.getValue();
+            } else {
+                postings = new Postings();
+                terms.put(tokens[i], postings);
+            }
+            postings.add(id);
+        }
+        termsBySlot[slot] = tokens;
+        idBySlot[slot] = id;
+        slotById.put(id, slot);
+    }
+
+    private void clear(int slot) {
+        String[] old = termsBySlot[slot];
+        if (old == null) return;
+        long id = idBySlot[slot];
+        for (String term : old) {
+            Postings postings = terms.get(term);
+            postings.remove(id);
+            if (postings.live() == 0) terms.remove(term);
+        }
+        termsBySlot[slot] = null;
+        slotById.remove(id);
+    }
+
+    private void ensureSlots(int capacity) {
+        if (capacity > termsBySlot.length) {
+            int grown = Math.max(capacity, termsBySlot.length * 2);
+            termsBySlot = Arrays.copyOf(termsBySlot, grown);
+            idBySlot = Arrays.copyOf(idBySlot, grown);
+        }
+    }
+
+    //lower case words split on anything that is not a letter or a digit, duplicates dropped
+    static String[] tokens(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) return new String[0];
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) start = i;
+            if (!word && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    //QUERIES
+    //ids of the tasks that match every word of the query, best match first, at most limit of them
+    //a word that is a whole term scores more than one that is only a prefix, short descriptions win ties
+    public List<Long> search(String query, int limit) {
+        String[] tokens = tokens(query);
+        List<Long> ids = new ArrayList<>();
+        if (tokens.length == 0 || limit <= 0) return ids;
+
+        long[] candidates = candidates(tokens);
+        cachedVersion = version;
+        cachedTokens = tokens;
+        cachedCandidates = candidates;
+
+        //top k by score, the heap keeps the worst of the best on top
+        PriorityQueue<double[]> best = new PriorityQueue<>(Math.min(limit, candidates.length) + 1,
+                (a, b) -> (a[0] != b[0]) ? Double.compare(a[0], b[0]) : Double.compare(b[1], a[1]));
+        for (long id : candidates) {
+            double[] hit = {score(termsBySlot[slotById.get(id)], tokens), id};
+            best.add(hit);
+            if (best.size() > limit) best.poll();
+        }
+        Long[] ranked = new Long[best.size()];
+        for (int i = ranked.length - 1; i >= 0; i--) ranked[i] = (long) best.poll()[1];
+        ids.addAll(Arrays.asList(ranked));
+        return ids;
+    }
+
+    //number of tasks that match, without ranking them
+    public int count(String query) {
+        String[] tokens = tokens(query);
+        return (tokens.length == 0) ? 0 : candidates(tokens).length;
+    }
+
+    public int termCount() {
+        return terms.size();
+    }
+
+    //sorted ids of every task that matches all tokens
+    private long[] candidates(String[] tokens) {
+        long[] from;
+        if (cachedVersion == version && refines(tokens, cachedTokens)) {
+            from = cachedCandidates; //nothing changed since the last query and this one is narrower
+        } else {
+            from = postingsOf(smallest(tokens));
+        }
+        long[] matches = new long[from.length];
+        int count = 0;
+        for (long id : from) {
+            if (matchesAll(termsBySlot[slotById.get(id)], tokens)) matches[count++] = id;
+        }
+        return (count == matches.length) ? matches : Arrays.copyOf(matches, count);
+    }
+
+    //every old token is still a prefix of the token at the same place in the new query, and none were dropped
+    private static boolean refines(String[] tokens, String[] previous) {
+        if (previous == null || tokens.length < previous.length) return false;
+        for (int i = 0; i < previous.length; i++) {
+            if (!tokens[i].startsWith(previous[i])) return false;
+        }
+        return true;
+    }
+
+    //the token whose prefix range holds the fewest postings, counting stops once it is worse than the best so far
+    private String smallest(String[] tokens) {
+        String best = tokens[0];
+        long bestSize = Long.MAX_VALUE;
+        for (String token : tokens) {
+            long size = 0;
+            for (Postings postings : prefixRange(token).values()) {
+                size += postings.live();
+                if (size >= bestSize) break;
+            }
+            if (size < bestSize) {
+                best = token;
+                bestSize = size;
+            }
+        }
+        return best;
+    }
+
+    //union of the postings of every term that starts with the prefix, sorted and without duplicates
+    private long[] postingsOf(String prefix) {
+        NavigableMap<String, Postings> range = prefixRange(prefix);
+        for (Postings postings : range.values()) postings.compact(); //paid for by the copy below
+        if (range.size() == 1) {
+            Postings only = range.firstEntry().getValue();
+            return Arrays.copyOf(only.ids, only.size);
+        }
+        int total = 0;
+        for (Postings postings : range.values()) total += postings.size;
+        long[] ids = new long[total];
+        int at = 0;
+        for (Postings postings : range.values()) {
+            System.arraycopy(postings.ids, 0, ids, at, postings.size);
+            at += postings.size;
+        }
+        Arrays.sort(ids);
+        int unique = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) ids[unique++] = ids[i];
+        }
+        return Arrays.copyOf(ids, unique);
+    }
+
+    private NavigableMap<String, Postings> prefixRange(String prefix) {
+        return terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private static boolean matchesAll(String[] taskTerms, String[] tokens) {
+        for (String token : tokens) {
+            boolean found = false;
+            for (String term : taskTerms) {
+                if (term.startsWith(token)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+
+    private static double score(String[] taskTerms, String[] tokens) {
+        double score = 0;
+        for (String token : tokens) {
+            double tokenScore = 0;
+            for (String term : taskTerms) {
+                if (term.equals(token)) {
+                    tokenScore = 2;
+                    break;
+                }
+                if (term.startsWith(token)) tokenScore = Math.max(tokenScore, 1 + (double) token.length() / term.length());
+            }
+            score += tokenScore;
+        }
+        return score / (1 + 0.05 * taskTerms.length);
+    }
+}
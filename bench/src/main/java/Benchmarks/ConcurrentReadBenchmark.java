@@ -0,0 +1,82 @@
+/* benchmarks */
+package Benchmarks;
+
+import Task.Task;
+import TaskManager.ConcurrentTaskManager;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//how ConcurrentTaskManager reads scale with threads, with and without a writer making the snapshot stale
+//reader scaling: run the read benchmarks with -t 1, -t 2, -t 4 ... and compare the totals
+//the readWrite group runs three readers against one writer, change the split with -tg
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class ConcurrentReadBenchmark {
+
+    @Param({"100000"})
+    int size;
+
+    private File store;
+    private ConcurrentTaskManager manager;
+    private long[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        store = Fixtures.newStore();
+        List<Task> tasks = Fixtures.tasks(size);
+        manager = new ConcurrentTaskManager(store.getPath(), 1024, Integer.MAX_VALUE);
+        manager.addTasks(tasks);
+        ids = new long[size];
+        for (int i = 0; i < size; i++) ids[i] = tasks.get(i).getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        manager.close();
+        Fixtures.delete(store);
+    }
+
+    //lock-free path, one volatile read as long as nobody writes
+    @Benchmark
+    public Task snapshotRead() {
+        List<Task> snapshot = manager.snapshot();
+        return snapshot.get(ThreadLocalRandom.current().nextInt(snapshot.size()));
+    }
+
+    //goes through the lock every time
+    @Benchmark
+    public Task getTaskById() {
+        return manager.getTask(ids[ThreadLocalRandom.current().nextInt(size)]);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public Task readWhileWriting() {
+        return snapshotRead();
+    }
+
+    //every write makes the next reader rebuild the snapshot
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public boolean writer() {
+        long id = ids[ThreadLocalRandom.current().nextInt(size)];
+        return manager.setCompletedById(id, ThreadLocalRandom.current().nextBoolean());
+    }
+
+    @Benchmark
+    public void completedTasks(Blackhole blackhole) {
+        blackhole.consume(manager.getCompletedTasks());
+    }
+}
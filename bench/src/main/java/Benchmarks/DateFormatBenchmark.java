@@ -0,0 +1,73 @@
+/* benchmarks */
+package Benchmarks;
+
+import Task.DateFormatCache;
+import Task.Task;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//formatting the dates of one table row, with a DateTimeFormatter as the table did before and through DateFormatCache
+//the fixture tasks share their creation minute and have about a year of deadline minutes,
+//so the deadline column is the part that misses once per minute
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DateFormatBenchmark {
+
+    private static final String PATTERN = "dd/MM/yyyy HH:mm";
+
+    @Param({"10000"})
+    int size;
+
+    private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern(PATTERN);
+    private final DateFormatCache cache = new DateFormatCache(1 << 16);
+    private List<Task> tasks;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        tasks = Fixtures.tasks(size);
+        for (Task task : tasks) { //warm the cache like a table that was scrolled through once
+            cache.format(task.getDeadline(), PATTERN);
+            cache.format(task.getCreationDate(), PATTERN);
+        }
+    }
+
+    @Benchmark
+    public void formatter(Blackhole hole) {
+        Task task = tasks.get(next++ % size);
+        hole.consume(format(task.getDeadline()));
+        hole.consume(format(task.getCreationDate()));
+        hole.consume(format(task.getModificationDate()));
+        hole.consume(format(task.getCompletionDate()));
+        hole.consume(format(task.getDeletionDate()));
+    }
+
+    @Benchmark
+    public void cached(Blackhole hole) {
+        Task task = tasks.get(next++ % size);
+        hole.consume(cache.format(task.getDeadline(), PATTERN));
+        hole.consume(cache.format(task.getCreationDate(), PATTERN));
+        hole.consume(cache.format(task.getModificationDate(), PATTERN));
+        hole.consume(cache.format(task.getCompletionDate(), PATTERN));
+        hole.consume(cache.format(task.getDeletionDate(), PATTERN));
+    }
+
+    //Task.toCSV, seconds appended to the cached minute
+    @Benchmark
+    public String toCsv() {
+        return tasks.get(next++ % size).toCSV();
+    }
+
+    private String format(LocalDateTime date) {
+        return (date != null) ? date.format(formatter) : "-";
+    }
+}
@@ -0,0 +1,55 @@
+/* benchmarks */
+package Benchmarks;
+
+import Task.Task;
+import TaskManager.TaskManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+//shared setup, same tasks for every run so numbers from different commits can be compared
+final class Fixtures {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2025, 1, 1, 9, 0);
+
+    private Fixtures() {
+    }
+
+    //every other task is completed, one in four has no deadline, deadlines spread over a year
+    static List<Task> tasks(int size) {
+        List<Task> tasks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            LocalDateTime deadline = (i % 4 == 0) ? null : BASE.plusMinutes((i * 7919L) % 525_600);
+            Task task = new Task("Task " + i + (i % 10 == 0 ? ", with \"quotes\"" : ""), deadline);
+            if (i % 2 == 0) task.setCompleted(true);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    //managers write their journal next to the snapshot file, so each one gets its own folder
+    static File newStore() throws IOException {
+        return new File(Files.createTempDirectory("todo-bench").toFile(), "todo.ser");
+    }
+
+    static TaskManager manager(File store, List<Task> tasks) {
+        TaskManager manager = new TaskManager(store.getPath(), 1024, Integer.MAX_VALUE);
+        manager.addTasks(tasks);
+        return manager;
+    }
+
+    static void delete(File store) throws IOException {
+        File dir = store.getParentFile();
+        try (Stream<java.nio.file.Path> files = Files.walk(dir.toPath())) {
+            for (java.nio.file.Path path : (Iterable<java.nio.file.Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/* benchmarks */
+package Benchmarks;
+
+import Server.TaskServer;
+import TaskManager.ConcurrentTaskManager;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+//load test for TaskServer over localhost, not a jmh benchmark: it needs real sockets and many client threads
+//  java -cp benchmarks.jar Benchmarks.HttpLoadTest [tasks] [clients] [seconds] [url]
+//without a url it starts a server in this process with that many tasks, with one it only sends requests to it
+//every client loops over a fixed mix: 60% single GET, 15% filtered list page, 10% full list with If-None-Match,
+//10% PUT, 5% POST, and the report gives requests per second and latency percentiles per kind
+public class HttpLoadTest {
+
+    private static final String[] KINDS = {"get", "page", "list", "put", "post"};
+    private static final int[] MIX = {60, 15, 10, 10, 5}; //percent
+
+    public static void main(String[] args) throws Exception {
+        int tasks = (args.length > 0) ? Integer.parseInt(args[0]) : 10_000;
+        int clients = (args.length > 1) ? Integer.parseInt(args[1]) : 64;
+        int seconds = (args.length > 2) ? Integer.parseInt(args[2]) : 20;
+
+        File store = null;
+        ConcurrentTaskManager manager = null;
+        TaskServer server = null;
+        String base;
+        if (args.length > 3) {
+            base = args[3];
+        } else {
+            store = Fixtures.newStore();
+            manager = new ConcurrentTaskManager(store.getPath(), 1024, Integer.MAX_VALUE);
+            manager.addTasks(Fixtures.tasks(tasks));
+            manager.saveToFile(); //changes from the test go to the journal like in a real server
+            server = new TaskServer(manager, 0);
+            server.start();
+            base = "http://localhost:" + server.getPort() + "/tasks";
+        }
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        long[][][] latencies = new long[clients][KINDS.length][];
+        int[][] counts = new int[clients][KINDS.length];
+        AtomicLong errors = new AtomicLong();
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        CountDownLatch done = new CountDownLatch(clients);
+
+        System.out.printf("%d clients for %d s against %s%n", clients, seconds, base);
+        for (int c = 0; c < clients; c++) {
+            int me = c;
+            for (int k = 0; k < KINDS.length; k++) latencies[me][k] = new long[1 << 12];
+            Thread thread = new Thread(() -> {
+                try {
+                    run(client, base, tasks, end, latencies[me], counts[me], errors);
+                } finally {
+                    done.countDown();
+                }
+            }, "load-" + c);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+
+        System.out.printf("%-6s %10s %10s %10s %10s %10s %10s%n", "kind", "requests", "req/s", "p50 us", "p90 us", "p99 us", "max us");
+        long total = 0;
+        for (int k = 0; k < KINDS.length; k++) {
+            int n = 0;
+            for (int c = 0; c < clients; c++) n += counts[c][k];
+            long[] all = new long[n];
+            int at = 0;
+            for (int c = 0; c < clients; c++) {
+                System.arraycopy(latencies[c][k], 0, all, at, counts[c][k]);
+                at += counts[c][k];
+            }
+            Arrays.sort(all);
+            total += n;
+            System.out.printf("%-6s %10d %10.0f %10d %10d %10d %10d%n", KINDS[k], n, n / (double) seconds,
+                    percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99), n == 0 ? 0 : all[n - 1] / 1000);
+        }
+        System.out.printf("total  %10d %10.0f, %d errors%n", total, total / (double) seconds, errors.get());
+
+        if (server != null) {
+            server.stop();
+            manager.close();
+            Fixtures.delete(store);
+        }
+    }
+
+    private static void run(HttpClient client, String base, int tasks, long end, long[][] latencies, int[] counts, AtomicLong errors) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String etag = null;
+        while (System.nanoTime() < end) {
+            int kind = pick(random.nextInt(100));
+            long id = 1 + random.nextInt(tasks);
+            HttpRequest.Builder request;
+            switch (kind) {
+                case 0: request = HttpRequest.newBuilder(URI.create(base + "/" + id)).GET(); break;
+                case 1: request = HttpRequest.newBuilder(URI.create(base + "?completed=false&offset=" + random.nextInt(1000) + "&limit=50")).GET(); break;
+                case 2:
+                    request = HttpRequest.newBuilder(URI.create(base)).GET();
+                    if (etag != null) request.header("If-None-Match", etag);
+                    break;
+                case 3: request = HttpRequest.newBuilder(URI.create(base + "/" + id))
+                        .PUT(HttpRequest.BodyPublishers.ofString("{\"completed\": " + random.nextBoolean() + "}")); break;
+                default: request = HttpRequest.newBuilder(URI.create(base))
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"description\": \"Load test " + id + "\", \"deadline\": \"2030-01-01T09:00\"}"));
+            }
+            long start = System.nanoTime();
+            try {
+                HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+                if (response.statusCode() >= 500) errors.incrementAndGet();
+                if (kind == 2) etag = response.headers().firstValue("ETag").orElse(null);
+            } catch (Exception e) {
+                errors.incrementAndGet();
+                continue;
+            }
+            long nanos = System.nanoTime() - start;
+            if (counts[kind] == latencies[kind].length) latencies[kind] = Arrays.copyOf(latencies[kind], counts[kind] * 2);
+            latencies[kind][counts[kind]++] = nanos;
+        }
+    }
+
+    private static int pick(int percent) {
+        for (int k = 0; k < MIX.length; k++) {
+            if (percent < MIX[k]) return k;
+            percent -= MIX[k];
+        }
+        return MIX.length - 1;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1000;
+    }
+}
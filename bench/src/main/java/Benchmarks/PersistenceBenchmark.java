@@ -0,0 +1,127 @@
+/* benchmarks */
+package Benchmarks;
+
+import Task.Task;
+import TaskManager.CsvExporter;
+import TaskManager.ImportReport;
+import TaskManager.TaskManager;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//file operations at every size, each invocation gets a fresh manager so a save really writes the whole snapshot
+//single calls take milliseconds to seconds, so the per invocation setup does not skew the numbers
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class PersistenceBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    private List<Task> tasks;
+    private File savedStore; //already holds a snapshot with size tasks, for the load benchmarks
+    private File csv;
+    private File gzipCsv;
+
+    private File store; //per invocation
+    private TaskManager manager;
+    private TaskManager importer; //the import benchmarks' target, closed after the invocation so close is not timed
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        tasks = Fixtures.tasks(size);
+
+        savedStore = Fixtures.newStore();
+        TaskManager saved = Fixtures.manager(savedStore, tasks);
+        saved.saveToFile();
+        csv = new File(savedStore.getParentFile(), "tasks.csv");
+        gzipCsv = new File(savedStore.getParentFile(), "tasks.csv.gz");
+        saved.exportUsingCSV(csv);
+        saved.exportUsingCSV(gzipCsv);
+        saved.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws IOException {
+        Fixtures.delete(savedStore);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() throws IOException {
+        store = Fixtures.newStore();
+        manager = Fixtures.manager(store, tasks);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownInvocation() throws IOException {
+        manager.close();
+        if (importer != null) importer.close();
+        importer = null;
+        Fixtures.delete(store);
+    }
+
+    //first save of a list that did not come from the file, writes the full mapped snapshot
+    @Benchmark
+    public void saveToFile() {
+        manager.saveToFile();
+    }
+
+    //maps the snapshot, tasks stay unbuilt until they are read
+    @Benchmark
+    public void loadFromFile(Blackhole blackhole) {
+        TaskManager loaded = new TaskManager(savedStore.getPath(), 1024, Integer.MAX_VALUE);
+        loaded.loadFromFile();
+        blackhole.consume(loaded.getCompletedTasks().size());
+        loaded.close();
+    }
+
+    //load plus building every task, what a full table scan costs right after start up
+    @Benchmark
+    public void loadFromFileAndReadAll(Blackhole blackhole) {
+        TaskManager loaded = new TaskManager(savedStore.getPath(), 1024, Integer.MAX_VALUE);
+        loaded.loadFromFile();
+        blackhole.consume(loaded.getAllTasks());
+        loaded.close();
+    }
+
+    @Benchmark
+    public int exportCsv() {
+        return manager.exportUsingCSV(new File(store.getParentFile(), "out.csv"), CsvExporter.ALL);
+    }
+
+    @Benchmark
+    public int exportGzipCsv() {
+        return manager.exportUsingCSV(new File(store.getParentFile(), "out.csv.gz"), CsvExporter.ALL);
+    }
+
+    @Benchmark
+    public ImportReport importCsv() {
+        return importer().importFromCSV(csv);
+    }
+
+    @Benchmark
+    public ImportReport importGzipCsv() {
+        return importer().importFromCSV(gzipCsv);
+    }
+
+    //export and read back into an empty manager, the whole round trip
+    @Benchmark
+    public ImportReport csvRoundTrip() {
+        File out = new File(store.getParentFile(), "roundtrip.csv");
+        manager.exportUsingCSV(out, CsvExporter.ALL);
+        return importer().importFromCSV(out);
+    }
+
+    private TaskManager importer() {
+        importer = new TaskManager(store.getPath() + ".import", 1024, Integer.MAX_VALUE);
+        return importer;
+    }
+}
@@ -0,0 +1,95 @@
+/* benchmarks */
+package Benchmarks;
+
+import Task.Task;
+import TaskManager.TaskManager;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//in memory operations, the list is rebuilt before every iteration so adds and deletes do not pile up
+//throughput plus sampled latency (p50..p99.99), run through BenchmarkRunner for the allocation rate
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class TaskManagerBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    private File store;
+    private TaskManager manager;
+    private long[] ids;
+    private int cursor;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        store = Fixtures.newStore();
+        List<Task> tasks = Fixtures.tasks(size);
+        manager = Fixtures.manager(store, tasks);
+        ids = new long[size];
+        for (int i = 0; i < size; i++) ids[i] = tasks.get(i).getId();
+        cursor = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        manager.close();
+        Fixtures.delete(store);
+    }
+
+    @Benchmark
+    public void addTask() {
+        manager.addTask(new Task("New task", null));
+    }
+
+    //deletes by id and puts a task back so the size stays the same, the slot id changes every time
+    @Benchmark
+    public void deleteTaskById() {
+        int i = cursor++ % size;
+        manager.deleteTaskById(ids[i]);
+        Task task = new Task("Replacement", null);
+        manager.addTask(task);
+        ids[i] = task.getId();
+    }
+
+    //the old positional api, pays for the tombstone sweep and the shift of the list behind it
+    @Benchmark
+    public void deleteTaskByPosition() {
+        manager.deleteTask(0);
+        manager.addTask(new Task("Replacement", null));
+    }
+
+    @Benchmark
+    public void markCompleteById() {
+        long id = ids[cursor++ % size];
+        manager.setCompletedById(id, (cursor & 1) == 0); //flip back and forth so the index keeps changing
+    }
+
+    @Benchmark
+    public void completedTasks(Blackhole blackhole) {
+        for (Task task : manager.getCompletedTasks()) blackhole.consume(task);
+    }
+
+    @Benchmark
+    public void incompleteTasks(Blackhole blackhole) {
+        for (Task task : manager.getIncompleteTasks()) blackhole.consume(task);
+    }
+
+    @Benchmark
+    public int completedCount() {
+        return manager.getCompletedTasks().size();
+    }
+
+    @Benchmark
+    public List<Task> allTasks() {
+        return manager.getAllTasks();
+    }
+}